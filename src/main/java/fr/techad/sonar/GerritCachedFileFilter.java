@@ -0,0 +1,70 @@
+package fr.techad.sonar;
+
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.api.batch.AnalysisMode;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFileFilter;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.ReviewLineComment;
+
+/**
+ * Exclude from the analysis the reviewed files found in the issue cache. Their
+ * cached comments are added to the review instead. Never excludes anything
+ * when the analysis is published, as the server would close the issues of the
+ * excluded files.
+ */
+public class GerritCachedFileFilter implements InputFileFilter {
+    private static final Logger LOG = Loggers.get(GerritCachedFileFilter.class);
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritFacade gerritFacade;
+    private final GerritIssueCache gerritIssueCache;
+    private final AnalysisMode analysisMode;
+
+    public GerritCachedFileFilter(GerritConfiguration gerritConfiguration, GerritFacade gerritFacade,
+            GerritIssueCache gerritIssueCache, AnalysisMode analysisMode) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritCachedFileFilter");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritFacade = gerritFacade;
+        this.gerritIssueCache = gerritIssueCache;
+        this.analysisMode = analysisMode;
+    }
+
+    @Override
+    public boolean accept(InputFile inputFile) {
+        if (!gerritConfiguration.shouldSkipCachedFiles() || !gerritIssueCache.isEnabled()
+                || analysisMode.isPublish() || !gerritConfiguration.isEnabled()) {
+            return true;
+        }
+
+        Map<String, String> gerritModifiedFiles;
+        try {
+            gerritModifiedFiles = gerritFacade.listFiles();
+        } catch (GerritPluginException e) {
+            LOG.error("[GERRIT PLUGIN] Error getting Gerrit datas", e);
+            return true;
+        }
+
+        String gerritFileName = gerritModifiedFiles.get(inputFile.relativePath());
+        if (gerritFileName == null) {
+            return true;
+        }
+
+        List<ReviewLineComment> cached = gerritIssueCache.get(inputFile);
+        if (cached == null) {
+            return true;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] File {} found in issue cache, skipping its analysis", inputFile.relativePath());
+        }
+        if (!cached.isEmpty()) {
+            ReviewHolder.getReviewInput().addComments(gerritFileName, cached);
+        }
+        return false;
+    }
+}
@@ -1,5 +1,10 @@
 package fr.techad.sonar;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,12 +17,28 @@ import org.sonar.api.utils.log.Loggers;
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class GerritConfiguration implements BatchComponent {
     private static final Logger LOG = Loggers.get(GerritConfiguration.class);
+    private static final String PROJECT_BASE_DIR = "sonar.projectBaseDir";
+    private static final String SONAR_HOST_URL = "sonar.host.url";
+    private static final String SONAR_LOGIN = "sonar.login";
+    private static final String SONAR_PASSWORD = "sonar.password";
 
     private boolean enabled;
     private boolean valid;
     private boolean anonymous;
     private boolean forceBranch;
     private boolean commentNewIssuesOnly;
+    private String commentMinSeverity;
+    private List<String> commentRuleInclusions;
+    private List<String> commentRuleExclusions;
+    private List<String> commentPathInclusions;
+    private List<String> commentPathExclusions;
+    private boolean skipUnchangedModules;
+    private boolean skipCachedFiles;
+    private boolean skipUnanalyzableChanges;
+    private boolean copyTrivialRebaseReviews;
+    private boolean omitDuplicateComments;
+    private boolean groupIssues;
+    private boolean softDisableLogged;
 
     private String scheme;
     private String host;
@@ -26,6 +47,24 @@ public class GerritConfiguration implements BatchComponent {
     private String httpPassword;
     private String authScheme;
     private String basePath;
+    private String issueCacheDir;
+    private String shardFile;
+    private String preflightMode;
+    private String transport;
+    private List<String> readReplicas;
+    private boolean changeQuery;
+    private String fileListSource;
+    private String gitBaseCommit;
+    private File projectBaseDir;
+    private boolean readHedging;
+    private String staleRevisionPolicy;
+    private int requestsPerMinute;
+    private int maxConcurrentRequests;
+    private int adaptiveConcurrency;
+    private String rateLimitStateFile;
+    private int timeBudget;
+    private int degradedMaxComments;
+    private int spillThreshold;
 
     private String label;
     private String message;
@@ -33,6 +72,18 @@ public class GerritConfiguration implements BatchComponent {
     private int voteNoIssue;
     private int voteBelowThreshold;
     private int voteAboveThreshold;
+    private String notify;
+    private String notifyInProgress;
+    private String notifyDetails;
+    private String tag;
+    private boolean serverPosting;
+    private String postingToken;
+    private String sonarHostUrl;
+    private String sonarLogin;
+    private String sonarPassword;
+    private int logLimit;
+    private int logSampleRate;
+    private int logPayloadMaxLength;
 
     private String projectName;
     private String branchName;
@@ -44,6 +95,11 @@ public class GerritConfiguration implements BatchComponent {
 
         this.enable(settings.getBoolean(PropertyKey.GERRIT_ENABLED));
         this.commentNewIssuesOnly(settings.getBoolean(PropertyKey.GERRIT_COMMENT_NEW_ISSUES_ONLY));
+        this.setCommentMinSeverity(settings.getString(PropertyKey.GERRIT_COMMENT_MIN_SEVERITY));
+        this.setCommentRuleInclusions(settings.getStringArray(PropertyKey.GERRIT_COMMENT_RULE_INCLUSIONS));
+        this.setCommentRuleExclusions(settings.getStringArray(PropertyKey.GERRIT_COMMENT_RULE_EXCLUSIONS));
+        this.setCommentPathInclusions(settings.getStringArray(PropertyKey.GERRIT_COMMENT_PATH_INCLUSIONS));
+        this.setCommentPathExclusions(settings.getStringArray(PropertyKey.GERRIT_COMMENT_PATH_EXCLUSIONS));
 
         this.setScheme(settings.getString(PropertyKey.GERRIT_SCHEME));
         this.setHost(settings.getString(PropertyKey.GERRIT_HOST));
@@ -52,6 +108,22 @@ public class GerritConfiguration implements BatchComponent {
         this.setHttpPassword(settings.getString(PropertyKey.GERRIT_HTTP_PASSWORD));
         this.setHttpAuthScheme(settings.getString(PropertyKey.GERRIT_HTTP_AUTH_SCHEME));
         this.setBasePath(settings.getString(PropertyKey.GERRIT_BASE_PATH));
+        this.setPreflightMode(settings.getString(PropertyKey.GERRIT_PREFLIGHT_MODE));
+        this.setStaleRevisionPolicy(settings.getString(PropertyKey.GERRIT_STALE_REVISION_POLICY));
+        this.setTransport(settings.getString(PropertyKey.GERRIT_TRANSPORT));
+        this.setReadReplicas(settings.getStringArray(PropertyKey.GERRIT_READ_REPLICAS));
+        this.queryChange(settings.getBoolean(PropertyKey.GERRIT_CHANGE_QUERY));
+        this.setFileListSource(settings.getString(PropertyKey.GERRIT_FILE_LIST_SOURCE));
+        this.setGitBaseCommit(settings.getString(PropertyKey.GERRIT_GIT_BASE_COMMIT));
+        this.setProjectBaseDir(settings.getString(PROJECT_BASE_DIR));
+        this.hedgeReads(settings.getBoolean(PropertyKey.GERRIT_READ_HEDGING));
+        this.setRequestsPerMinute(settings.getInt(PropertyKey.GERRIT_REQUESTS_PER_MINUTE));
+        this.setMaxConcurrentRequests(settings.getInt(PropertyKey.GERRIT_MAX_CONCURRENT_REQUESTS));
+        this.setAdaptiveConcurrency(settings.getInt(PropertyKey.GERRIT_ADAPTIVE_CONCURRENCY));
+        this.setRateLimitStateFile(settings.getString(PropertyKey.GERRIT_RATE_LIMIT_STATE_FILE));
+        this.setTimeBudget(settings.getInt(PropertyKey.GERRIT_TIME_BUDGET));
+        this.setDegradedMaxComments(settings.getInt(PropertyKey.GERRIT_DEGRADED_MAX_COMMENTS));
+        this.setSpillThreshold(settings.getInt(PropertyKey.GERRIT_SPILL_THRESHOLD));
 
         this.setLabel(settings.getString(PropertyKey.GERRIT_LABEL));
         this.setMessage(settings.getString(PropertyKey.GERRIT_MESSAGE));
@@ -59,12 +131,32 @@ public class GerritConfiguration implements BatchComponent {
         this.setVoteNoIssue(settings.getInt(PropertyKey.GERRIT_VOTE_NO_ISSUE));
         this.setVoteBelowThreshold(settings.getInt(PropertyKey.GERRIT_VOTE_ISSUE_BELOW_THRESHOLD));
         this.setVoteAboveThreshold(settings.getInt(PropertyKey.GERRIT_VOTE_ISSUE_ABOVE_THRESHOLD));
+        this.setNotify(settings.getString(PropertyKey.GERRIT_NOTIFY));
+        this.setNotifyInProgress(settings.getString(PropertyKey.GERRIT_NOTIFY_IN_PROGRESS));
+        this.setNotifyDetails(settings.getString(PropertyKey.GERRIT_NOTIFY_DETAILS));
+        this.omitDuplicateComments(settings.getBoolean(PropertyKey.GERRIT_OMIT_DUPLICATE_COMMENTS));
+        this.groupIssues(settings.getBoolean(PropertyKey.GERRIT_GROUP_ISSUES));
+        this.setTag(settings.getString(PropertyKey.GERRIT_TAG));
+        this.postFromServer(settings.getBoolean(PropertyKey.GERRIT_SERVER_POSTING));
+        this.setPostingToken(settings.getString(PropertyKey.GERRIT_POSTING_TOKEN));
+        this.setSonarHostUrl(settings.getString(SONAR_HOST_URL));
+        this.setSonarLogin(settings.getString(SONAR_LOGIN));
+        this.setSonarPassword(settings.getString(SONAR_PASSWORD));
+        this.setLogLimit(settings.getInt(PropertyKey.GERRIT_LOG_LIMIT));
+        this.setLogSampleRate(settings.getInt(PropertyKey.GERRIT_LOG_SAMPLE_RATE));
+        this.setLogPayloadMaxLength(settings.getInt(PropertyKey.GERRIT_LOG_PAYLOAD_MAX_LENGTH));
 
         this.setProjectName(settings.getString(PropertyKey.GERRIT_PROJECT));
         this.setBranchName(settings.getString(PropertyKey.GERRIT_BRANCH));
         this.setChangeId(settings.getString(PropertyKey.GERRIT_CHANGE_ID));
         this.setRevisionId(settings.getString(PropertyKey.GERRIT_REVISION_ID));
         this.setForceBranch(settings.getBoolean(PropertyKey.GERRIT_FORCE_BRANCH));
+        this.skipUnchangedModules(settings.getBoolean(PropertyKey.GERRIT_SKIP_UNCHANGED_MODULES));
+        this.skipUnanalyzableChanges(settings.getBoolean(PropertyKey.GERRIT_SKIP_UNANALYZABLE_CHANGES));
+        this.copyTrivialRebaseReviews(settings.getBoolean(PropertyKey.GERRIT_COPY_TRIVIAL_REBASE_REVIEWS));
+        this.setIssueCacheDir(settings.getString(PropertyKey.GERRIT_ISSUE_CACHE_DIR));
+        this.skipCachedFiles(settings.getBoolean(PropertyKey.GERRIT_ISSUE_CACHE_SKIP_ANALYSIS));
+        this.setShardFile(settings.getString(PropertyKey.GERRIT_SHARD_FILE));
 
         this.assertGerritConfiguration();
     }
@@ -82,7 +174,11 @@ public class GerritConfiguration implements BatchComponent {
     public boolean isEnabled() {
         boolean ret = enabled;
         if (StringUtils.isEmpty(changeId) || StringUtils.isEmpty(revisionId)) {
-            LOG.info("[GERRIT PLUGIN] changeId or revisionId is empty. Not called from Gerrit ? Soft-disabling myself.");
+            if (!softDisableLogged) {
+                LOG.info(
+                        "[GERRIT PLUGIN] changeId or revisionId is empty. Not called from Gerrit ? Soft-disabling myself.");
+                softDisableLogged = true;
+            }
             ret = false;
         }
         return ret;
@@ -105,6 +201,132 @@ public class GerritConfiguration implements BatchComponent {
         return commentNewIssuesOnly;
     }
 
+    /**
+     * @return the lowest severity of the issues to comment, null to comment
+     *         every severity
+     */
+    @Nullable
+    public String getCommentMinSeverity() {
+        return commentMinSeverity;
+    }
+
+    public GerritConfiguration setCommentMinSeverity(@Nullable String commentMinSeverity) {
+        this.commentMinSeverity = StringUtils.trimToNull(commentMinSeverity);
+        return this;
+    }
+
+    /**
+     * @return the patterns of the rule keys to comment, e.g.
+     *         <code>squid:*</code>, empty to comment every rule
+     */
+    @NotNull
+    public List<String> getCommentRuleInclusions() {
+        return commentRuleInclusions;
+    }
+
+    public GerritConfiguration setCommentRuleInclusions(@Nullable String... commentRuleInclusions) {
+        this.commentRuleInclusions = nonBlankValues(commentRuleInclusions);
+        return this;
+    }
+
+    @NotNull
+    public List<String> getCommentRuleExclusions() {
+        return commentRuleExclusions;
+    }
+
+    public GerritConfiguration setCommentRuleExclusions(@Nullable String... commentRuleExclusions) {
+        this.commentRuleExclusions = nonBlankValues(commentRuleExclusions);
+        return this;
+    }
+
+    /**
+     * @return the patterns of the file paths to comment, relative to the
+     *         module as the analysis exclusions, empty to comment every file
+     */
+    @NotNull
+    public List<String> getCommentPathInclusions() {
+        return commentPathInclusions;
+    }
+
+    public GerritConfiguration setCommentPathInclusions(@Nullable String... commentPathInclusions) {
+        this.commentPathInclusions = nonBlankValues(commentPathInclusions);
+        return this;
+    }
+
+    @NotNull
+    public List<String> getCommentPathExclusions() {
+        return commentPathExclusions;
+    }
+
+    public GerritConfiguration setCommentPathExclusions(@Nullable String... commentPathExclusions) {
+        this.commentPathExclusions = nonBlankValues(commentPathExclusions);
+        return this;
+    }
+
+    public GerritConfiguration skipUnchangedModules(boolean skipModules) {
+        skipUnchangedModules = skipModules;
+        return this;
+    }
+
+    public boolean shouldSkipUnchangedModules() {
+        return skipUnchangedModules;
+    }
+
+    public GerritConfiguration skipUnanalyzableChanges(boolean skipChanges) {
+        skipUnanalyzableChanges = skipChanges;
+        return this;
+    }
+
+    public boolean shouldSkipUnanalyzableChanges() {
+        return skipUnanalyzableChanges;
+    }
+
+    public GerritConfiguration copyTrivialRebaseReviews(boolean copyReviews) {
+        copyTrivialRebaseReviews = copyReviews;
+        return this;
+    }
+
+    public boolean shouldCopyTrivialRebaseReviews() {
+        return copyTrivialRebaseReviews;
+    }
+
+    public GerritConfiguration skipCachedFiles(boolean skipFiles) {
+        skipCachedFiles = skipFiles;
+        return this;
+    }
+
+    public boolean shouldSkipCachedFiles() {
+        return skipCachedFiles;
+    }
+
+    @Nullable
+    public String getIssueCacheDir() {
+        return issueCacheDir;
+    }
+
+    public GerritConfiguration setIssueCacheDir(@Nullable String issueCacheDir) {
+        this.issueCacheDir = issueCacheDir;
+        return this;
+    }
+
+    /**
+     * @return the file where the partial review of a shard is written, or
+     *         null when the analysis is not sharded
+     */
+    @Nullable
+    public String getShardFile() {
+        return shardFile;
+    }
+
+    public GerritConfiguration setShardFile(@Nullable String shardFile) {
+        this.shardFile = StringUtils.trimToNull(shardFile);
+        return this;
+    }
+
+    public boolean isSharded() {
+        return shardFile != null;
+    }
+
     @NotNull
     public String getScheme() {
         return scheme;
@@ -196,6 +418,195 @@ public class GerritConfiguration implements BatchComponent {
         return this;
     }
 
+    @Nullable
+    public String getPreflightMode() {
+        return preflightMode;
+    }
+
+    public GerritConfiguration setPreflightMode(@Nullable String preflightMode) {
+        this.preflightMode = StringUtils.defaultIfBlank(preflightMode, "off");
+        return this;
+    }
+
+    @NotNull
+    public String getStaleRevisionPolicy() {
+        return staleRevisionPolicy;
+    }
+
+    public GerritConfiguration setStaleRevisionPolicy(@Nullable String staleRevisionPolicy) {
+        this.staleRevisionPolicy = StringUtils.defaultIfBlank(staleRevisionPolicy, "off");
+        return this;
+    }
+
+    @NotNull
+    public String getTransport() {
+        return transport;
+    }
+
+    public GerritConfiguration setTransport(@Nullable String transport) {
+        this.transport = StringUtils.defaultIfBlank(transport, "blocking");
+        return this;
+    }
+
+    /**
+     * @return the base URLs of the Gerrit replicas serving the reads, empty
+     *         when every request goes to the primary
+     */
+    @NotNull
+    public List<String> getReadReplicas() {
+        return readReplicas;
+    }
+
+    public GerritConfiguration setReadReplicas(@Nullable String... readReplicas) {
+        this.readReplicas = nonBlankValues(readReplicas);
+        return this;
+    }
+
+    private static List<String> nonBlankValues(String... values) {
+        List<String> nonBlank = new ArrayList<String>();
+        if (values != null) {
+            for (String value : values) {
+                if (StringUtils.isNotBlank(value)) {
+                    nonBlank.add(value.trim());
+                }
+            }
+        }
+        return Collections.unmodifiableList(nonBlank);
+    }
+
+    public GerritConfiguration queryChange(boolean changeQuery) {
+        this.changeQuery = changeQuery;
+        return this;
+    }
+
+    public boolean shouldQueryChange() {
+        return changeQuery;
+    }
+
+    @NotNull
+    public String getFileListSource() {
+        return fileListSource;
+    }
+
+    public GerritConfiguration setFileListSource(@Nullable String fileListSource) {
+        this.fileListSource = StringUtils.defaultIfBlank(fileListSource, "rest");
+        return this;
+    }
+
+    /**
+     * @return the commit the reviewed revision is diffed against when its
+     *         files are listed from git, null for its first parent
+     */
+    @Nullable
+    public String getGitBaseCommit() {
+        return gitBaseCommit;
+    }
+
+    public GerritConfiguration setGitBaseCommit(@Nullable String gitBaseCommit) {
+        this.gitBaseCommit = StringUtils.trimToNull(gitBaseCommit);
+        return this;
+    }
+
+    @NotNull
+    public File getProjectBaseDir() {
+        return projectBaseDir;
+    }
+
+    /**
+     * @param projectBaseDir
+     *            the base directory of the analysis, the working directory
+     *            when blank
+     */
+    public GerritConfiguration setProjectBaseDir(@Nullable String projectBaseDir) {
+        this.projectBaseDir = new File(StringUtils.defaultIfBlank(projectBaseDir, System.getProperty("user.dir")));
+        return this;
+    }
+
+    public GerritConfiguration hedgeReads(boolean readHedging) {
+        this.readHedging = readHedging;
+        return this;
+    }
+
+    public boolean shouldHedgeReads() {
+        return readHedging;
+    }
+
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public GerritConfiguration setRequestsPerMinute(int requestsPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        return this;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public GerritConfiguration setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * @return the highest adaptive limit of the requests in flight, 0 for no
+     *         adaptive limit
+     */
+    public int getAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public GerritConfiguration setAdaptiveConcurrency(int adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        return this;
+    }
+
+    @Nullable
+    public String getRateLimitStateFile() {
+        return rateLimitStateFile;
+    }
+
+    public GerritConfiguration setRateLimitStateFile(@Nullable String rateLimitStateFile) {
+        this.rateLimitStateFile = rateLimitStateFile;
+        return this;
+    }
+
+    /**
+     * @return the overall time budget of the Gerrit requests, in seconds. 0
+     *         for none.
+     */
+    public int getTimeBudget() {
+        return timeBudget;
+    }
+
+    public GerritConfiguration setTimeBudget(int timeBudget) {
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    public int getDegradedMaxComments() {
+        return degradedMaxComments;
+    }
+
+    public GerritConfiguration setDegradedMaxComments(int degradedMaxComments) {
+        this.degradedMaxComments = degradedMaxComments;
+        return this;
+    }
+
+    /**
+     * @return the number of comments kept in memory before they are spilled
+     *         to disk, 0 to keep them all in memory
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public GerritConfiguration setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
     @NotNull
     public String getLabel() {
         return label;
@@ -215,6 +626,145 @@ public class GerritConfiguration implements BatchComponent {
         return this;
     }
 
+    @Nullable
+    public String getNotify() {
+        return notify;
+    }
+
+    public GerritConfiguration setNotify(@Nullable String notify) {
+        this.notify = notify;
+        return this;
+    }
+
+    @Nullable
+    public String getNotifyInProgress() {
+        return notifyInProgress;
+    }
+
+    public GerritConfiguration setNotifyInProgress(@Nullable String notifyInProgress) {
+        this.notifyInProgress = notifyInProgress;
+        return this;
+    }
+
+    @Nullable
+    public String getNotifyDetails() {
+        return notifyDetails;
+    }
+
+    public GerritConfiguration setNotifyDetails(@Nullable String notifyDetails) {
+        this.notifyDetails = notifyDetails;
+        return this;
+    }
+
+    public GerritConfiguration omitDuplicateComments(boolean omitDuplicateComments) {
+        this.omitDuplicateComments = omitDuplicateComments;
+        return this;
+    }
+
+    public boolean shouldOmitDuplicateComments() {
+        return omitDuplicateComments;
+    }
+
+    public GerritConfiguration groupIssues(boolean groupIssues) {
+        this.groupIssues = groupIssues;
+        return this;
+    }
+
+    public boolean shouldGroupIssues() {
+        return groupIssues;
+    }
+
+    @Nullable
+    public String getTag() {
+        return tag;
+    }
+
+    public GerritConfiguration setTag(@Nullable String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    /**
+     * @return true if the review is handed to the SonarQube server, which
+     *         sends it to Gerrit, instead of being sent by the analysis
+     */
+    public boolean shouldPostFromServer() {
+        return serverPosting;
+    }
+
+    public GerritConfiguration postFromServer(boolean serverPosting) {
+        this.serverPosting = serverPosting;
+        return this;
+    }
+
+    @Nullable
+    public String getPostingToken() {
+        return postingToken;
+    }
+
+    public GerritConfiguration setPostingToken(@Nullable String postingToken) {
+        this.postingToken = postingToken;
+        return this;
+    }
+
+    @NotNull
+    public String getSonarHostUrl() {
+        return sonarHostUrl;
+    }
+
+    public GerritConfiguration setSonarHostUrl(@Nullable String sonarHostUrl) {
+        this.sonarHostUrl = StringUtils.removeEnd(StringUtils.defaultIfBlank(sonarHostUrl, "http://localhost:9000"),
+                "/");
+        return this;
+    }
+
+    @Nullable
+    public String getSonarLogin() {
+        return sonarLogin;
+    }
+
+    public GerritConfiguration setSonarLogin(@Nullable String sonarLogin) {
+        this.sonarLogin = sonarLogin;
+        return this;
+    }
+
+    @Nullable
+    public String getSonarPassword() {
+        return sonarPassword;
+    }
+
+    public GerritConfiguration setSonarPassword(@Nullable String sonarPassword) {
+        this.sonarPassword = sonarPassword;
+        return this;
+    }
+
+    public int getLogLimit() {
+        return logLimit;
+    }
+
+    public GerritConfiguration setLogLimit(int logLimit) {
+        this.logLimit = logLimit;
+        return this;
+    }
+
+    public int getLogSampleRate() {
+        return logSampleRate;
+    }
+
+    public GerritConfiguration setLogSampleRate(int logSampleRate) {
+        this.logSampleRate = logSampleRate;
+        return this;
+    }
+
+    public int getLogPayloadMaxLength() {
+        return logPayloadMaxLength;
+    }
+
+    public GerritConfiguration setLogPayloadMaxLength(int logPayloadMaxLength) {
+        this.logPayloadMaxLength = logPayloadMaxLength;
+        return this;
+    }
+
     public String getThreshold() {
         return threshold;
     }
@@ -322,10 +872,27 @@ public class GerritConfiguration implements BatchComponent {
         return "GerritConfiguration [valid=" + valid + ", enabled=" + enabled + ", scheme=" + scheme + ", host=" + host
                 + ", httpPort=" + httpPort + ", anonymous=" + anonymous + ", httpUsername=" + httpUsername
                 + ", httpPassword=" + (StringUtils.isBlank(httpPassword) ? "blank" : "*obfuscated*") + ", authScheme="
-                + authScheme + ", basePath=" + basePath + ", label=" + label + ", message=" + message + ", threshold="
-                + threshold + ", voteNoIssue=" + voteNoIssue + ",voteBelowThreshold=" + voteBelowThreshold
-                + ",voteAboveThreshold=" + voteAboveThreshold + ",commentNewIssuesOnly=" + commentNewIssuesOnly
-                + ", projectName=" + projectName + ", branchName=" + branchName + ", changeId=" + changeId
-                + ", revisionId=" + revisionId + ", 'forceBranch=" + forceBranch + "]";
+                + authScheme + ", basePath=" + basePath + ", preflightMode=" + preflightMode + ", staleRevisionPolicy="
+                + staleRevisionPolicy + ", transport=" + transport + ", readReplicas=" + readReplicas
+                + ", readHedging=" + readHedging + ", changeQuery=" + changeQuery + ", fileListSource="
+                + fileListSource + ", gitBaseCommit=" + gitBaseCommit + ", requestsPerMinute=" + requestsPerMinute
+                + ", maxConcurrentRequests=" + maxConcurrentRequests + ", adaptiveConcurrency=" + adaptiveConcurrency
+                + ", rateLimitStateFile=" + rateLimitStateFile + ", timeBudget=" + timeBudget
+                + ", degradedMaxComments=" + degradedMaxComments + ", spillThreshold=" + spillThreshold + ", label="
+                + label + ", message=" + message + ", threshold=" + threshold + ", voteNoIssue=" + voteNoIssue
+                + ",voteBelowThreshold=" + voteBelowThreshold + ",voteAboveThreshold=" + voteAboveThreshold
+                + ", notify=" + notify + ", notifyInProgress=" + notifyInProgress + ", notifyDetails=" + notifyDetails
+                + ", omitDuplicateComments=" + omitDuplicateComments + ", groupIssues=" + groupIssues + ", tag=" + tag
+                + ", serverPosting=" + serverPosting + ", sonarHostUrl=" + sonarHostUrl + ", logLimit=" + logLimit
+                + ", logSampleRate=" + logSampleRate + ", logPayloadMaxLength=" + logPayloadMaxLength
+                + ",commentNewIssuesOnly=" + commentNewIssuesOnly + ", commentMinSeverity=" + commentMinSeverity
+                + ", commentRuleInclusions=" + commentRuleInclusions + ", commentRuleExclusions="
+                + commentRuleExclusions + ", commentPathInclusions=" + commentPathInclusions
+                + ", commentPathExclusions=" + commentPathExclusions + ", projectName=" + projectName + ", branchName="
+                + branchName + ", changeId=" + changeId + ", revisionId=" + revisionId + ", 'forceBranch="
+                + forceBranch + ", skipUnchangedModules=" + skipUnchangedModules + ", skipUnanalyzableChanges="
+                + skipUnanalyzableChanges + ", copyTrivialRebaseReviews=" + copyTrivialRebaseReviews
+                + ", issueCacheDir=" + issueCacheDir + ", skipCachedFiles=" + skipCachedFiles + ", shardFile="
+                + shardFile + "]";
     }
 }
@@ -0,0 +1,137 @@
+package fr.techad.sonar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Languages;
+import org.sonar.api.utils.WildcardPattern;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Classify the Gerrit file names against the file suffixes of the installed
+ * languages and the inclusion/exclusion patterns. When in doubt, a file is
+ * considered analyzable.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritFileClassifier implements BatchComponent {
+    private static final Logger LOG = Loggers.get(GerritFileClassifier.class);
+    private static final char SEPARATOR = '/';
+    private final Settings settings;
+    private final Languages languages;
+    private List<String> suffixes;
+
+    public GerritFileClassifier(Settings settings, Languages languages) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritFileClassifier");
+        this.settings = settings;
+        this.languages = languages;
+    }
+
+    public boolean hasAnalyzableFiles(@NotNull Collection<String> gerritFiles) {
+        if (fileSuffixes().isEmpty()) {
+            LOG.debug("[GERRIT PLUGIN] No language suffix known, considering every file as analyzable");
+            return true;
+        }
+        for (String gerritFile : gerritFiles) {
+            if (isAnalyzable(gerritFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isAnalyzable(@NotNull String gerritFile) {
+        if (!hasLanguageSuffix(gerritFile)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] {} matches no language suffix", gerritFile);
+            }
+            return false;
+        }
+        boolean main = isIncluded(gerritFile, CoreProperties.PROJECT_INCLUSIONS_PROPERTY)
+                && !isExcluded(gerritFile, CoreProperties.PROJECT_EXCLUSIONS_PROPERTY,
+                        CoreProperties.GLOBAL_EXCLUSIONS_PROPERTY);
+        boolean test = isIncluded(gerritFile, CoreProperties.PROJECT_TEST_INCLUSIONS_PROPERTY)
+                && !isExcluded(gerritFile, CoreProperties.PROJECT_TEST_EXCLUSIONS_PROPERTY,
+                        CoreProperties.GLOBAL_TEST_EXCLUSIONS_PROPERTY);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] {} is {}analyzable", gerritFile, main || test ? "" : "not ");
+        }
+        return main || test;
+    }
+
+    @NotNull
+    protected List<String> fileSuffixes() {
+        if (suffixes == null) {
+            suffixes = new ArrayList<String>();
+            String forcedLanguage = settings.getString(CoreProperties.PROJECT_LANGUAGE_PROPERTY);
+            for (Language language : languages.all()) {
+                if (StringUtils.isBlank(forcedLanguage) || forcedLanguage.equals(language.getKey())) {
+                    for (String suffix : language.getFileSuffixes()) {
+                        if (StringUtils.isNotBlank(suffix)) {
+                            suffixes.add("." + StringUtils.removeStart(suffix.trim(), ".").toLowerCase(Locale.ENGLISH));
+                        }
+                    }
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Analyzable file suffixes : {}", suffixes);
+            }
+        }
+        return suffixes;
+    }
+
+    private boolean hasLanguageSuffix(String gerritFile) {
+        String lowerCaseFile = gerritFile.toLowerCase(Locale.ENGLISH);
+        for (String suffix : fileSuffixes()) {
+            if (lowerCaseFile.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inclusion patterns are relative to the module, so they are matched
+     * against every sub path of the Gerrit file name.
+     */
+    private boolean isIncluded(String gerritFile, String inclusionsKey) {
+        String[] inclusions = settings.getStringArray(inclusionsKey);
+        if (inclusions.length == 0) {
+            return true;
+        }
+        WildcardPattern[] patterns = WildcardPattern.create(inclusions);
+        String subPath = gerritFile;
+        while (true) {
+            if (WildcardPattern.match(patterns, subPath)) {
+                return true;
+            }
+            int index = subPath.indexOf(SEPARATOR);
+            if (index < 0) {
+                return false;
+            }
+            subPath = subPath.substring(index + 1);
+        }
+    }
+
+    /**
+     * Exclusion patterns are only matched against the full Gerrit file name,
+     * so a file is never wrongly reported as excluded.
+     */
+    private boolean isExcluded(String gerritFile, String... exclusionsKeys) {
+        for (String exclusionsKey : exclusionsKeys) {
+            if (WildcardPattern.match(WildcardPattern.create(settings.getStringArray(exclusionsKey)), gerritFile)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,34 +2,51 @@ package fr.techad.sonar;
 
 import org.sonar.api.batch.Initializer;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritPreflight;
 
 public class GerritInitializer extends Initializer {
     private static final Logger LOG = Loggers.get(GerritInitializer.class);
     private final GerritConfiguration gerritConfiguration;
+    private final GerritReviewReport gerritReviewReport;
+    private final GerritPreflight gerritPreflight;
     private GerritFacade gerritFacade;
 
-    public GerritInitializer(GerritConfiguration gerritConfiguration, GerritFacade gerritFacade) {
+    public GerritInitializer(GerritConfiguration gerritConfiguration, GerritFacade gerritFacade,
+            GerritReviewReport gerritReviewReport, GerritPreflight gerritPreflight) {
         LOG.debug("[GERRIT PLUGIN] Instanciating GerritInitializer");
         this.gerritConfiguration = gerritConfiguration;
         this.gerritFacade = gerritFacade;
+        this.gerritReviewReport = gerritReviewReport;
+        this.gerritPreflight = gerritPreflight;
     }
 
+    /**
+     * In fail mode, the analysis waits for the preflight checks so that it
+     * stops before any analyzer runs when Gerrit refuses the review.
+     */
     @Override
     public void execute(Project project) {
+        if (gerritPreflight.shouldFailFast() && gerritPreflight.await() == GerritPreflight.Status.FATAL) {
+            throw MessageException.of("[GERRIT PLUGIN] Preflight checks failed: " + gerritPreflight.getReason());
+        }
+
+        long start = gerritReviewReport.start();
         if (gerritConfiguration.forceBranch()) {
             LOG.debug("[GERRIT PLUGIN] Force project branch to {}", gerritConfiguration.getBranchName());
             project.setBranch(gerritConfiguration.getBranchName());
         }
-        
+
         try {
             gerritFacade.listFiles();
         } catch (GerritPluginException e) {
             LOG.error("[GERRIT PLUGIN] Error getting Gerrit datas", e);
         }
+        gerritReviewReport.stop(GerritReviewReport.PHASE_INITIALIZER, start);
     }
 
     @Override
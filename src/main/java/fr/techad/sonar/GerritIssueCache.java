@@ -0,0 +1,224 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.fs.InputPath;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import fr.techad.sonar.gerrit.ReviewLineComment;
+
+/**
+ * Local cache of the comments computed for a file. Entries are keyed by the
+ * file path, the file content and the active quality profile, so a file left
+ * untouched between two patch sets gets the same comments without converting
+ * its issues again.
+ */
+public class GerritIssueCache implements BatchComponent {
+    private static final Logger LOG = Loggers.get(GerritIssueCache.class);
+    private static final String FORMAT_VERSION = "2";
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final char KEY_SEPARATOR = '\0';
+    private static final long ENTRY_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+    private final GerritConfiguration gerritConfiguration;
+    private final ActiveRules activeRules;
+    private final GerritLogPolicy gerritLogPolicy;
+    private ObjectMapper objectMapper;
+    private CollectionType entryType;
+    private String profileFingerprint;
+    private boolean pruned;
+
+    public GerritIssueCache(GerritConfiguration gerritConfiguration, ActiveRules activeRules,
+            GerritLogPolicy gerritLogPolicy) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritIssueCache");
+        this.gerritConfiguration = gerritConfiguration;
+        this.activeRules = activeRules;
+        this.gerritLogPolicy = gerritLogPolicy;
+    }
+
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(gerritConfiguration.getIssueCacheDir());
+    }
+
+    /**
+     * Hash the file once, so the same key serves the lookup and the store.
+     *
+     * @return the key of the file entry, null if the cache is disabled or the
+     *         file cannot be read
+     */
+    @Nullable
+    public String key(@NotNull InputPath resource) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return entryKey(resource);
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to compute issue cache key for " + resource.relativePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the cached comments of the file, or null on cache miss
+     */
+    @Nullable
+    public List<ReviewLineComment> get(@NotNull InputPath resource) {
+        return get(resource, key(resource));
+    }
+
+    /**
+     * @param key
+     *            the key of the file, from {@link #key(InputPath)}
+     * @return the cached comments of the file, or null on cache miss
+     */
+    @Nullable
+    public List<ReviewLineComment> get(@NotNull InputPath resource, @Nullable String key) {
+        if (key == null) {
+            return null;
+        }
+        try {
+            File entry = entryFile(key);
+            if (!entry.isFile()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("[GERRIT PLUGIN] Issue cache miss for {}", resource.relativePath());
+                }
+                return null;
+            }
+            List<ReviewLineComment> comments = objectMapper().readValue(entry, entryType);
+            entry.setLastModified(System.currentTimeMillis());
+            gerritLogPolicy.info(LOG, GerritLogPolicy.CATEGORY_ISSUE_CACHE,
+                    "[GERRIT PLUGIN] Issue cache hit for {} ({} comments)", resource.relativePath(), comments.size());
+            return comments;
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to read issue cache entry for " + resource.relativePath(), e);
+            return null;
+        }
+    }
+
+    public void put(@NotNull InputPath resource, @NotNull List<ReviewLineComment> comments) {
+        put(resource, key(resource), comments);
+    }
+
+    /**
+     * @param key
+     *            the key of the file, from {@link #key(InputPath)}
+     */
+    public void put(@NotNull InputPath resource, @Nullable String key, @NotNull List<ReviewLineComment> comments) {
+        if (key == null) {
+            return;
+        }
+        try {
+            pruneOnce();
+            File entry = entryFile(key);
+            File tmp = new File(entry.getParentFile(), entry.getName() + "." + System.nanoTime() + TMP_SUFFIX);
+            objectMapper().writeValue(tmp, new ArrayList<ReviewLineComment>(comments));
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Issue cache stored {} comments for {}", comments.size(),
+                        resource.relativePath());
+            }
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to write issue cache entry for " + resource.relativePath(), e);
+        }
+    }
+
+    @NotNull
+    protected File entryFile(@NotNull String key) throws IOException {
+        File dir = new File(gerritConfiguration.getIssueCacheDir());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create issue cache directory " + dir);
+        }
+        return new File(dir, key + ENTRY_SUFFIX);
+    }
+
+    @NotNull
+    protected String entryKey(@NotNull InputPath resource) throws IOException {
+        String contentHash;
+        InputStream content = new FileInputStream(resource.file());
+        try {
+            contentHash = DigestUtils.sha1Hex(content);
+        } finally {
+            content.close();
+        }
+        return DigestUtils.sha1Hex(resource.relativePath() + KEY_SEPARATOR + contentHash + KEY_SEPARATOR
+                + profileFingerprint());
+    }
+
+    /**
+     * The fingerprint covers the active rules with their severity and
+     * parameters, and the settings changing which comments are produced.
+     */
+    @NotNull
+    protected String profileFingerprint() {
+        if (profileFingerprint == null) {
+            Map<String, String> rules = new TreeMap<String, String>();
+            for (ActiveRule activeRule : activeRules.findAll()) {
+                rules.put(activeRule.ruleKey().toString(),
+                        activeRule.severity() + new TreeMap<String, String>(activeRule.params()));
+            }
+            profileFingerprint = DigestUtils.sha1Hex(FORMAT_VERSION + KEY_SEPARATOR
+                    + gerritConfiguration.shouldCommentNewIssuesOnly() + KEY_SEPARATOR
+                    + gerritConfiguration.getCommentMinSeverity() + KEY_SEPARATOR
+                    + gerritConfiguration.getCommentRuleInclusions() + gerritConfiguration.getCommentRuleExclusions()
+                    + KEY_SEPARATOR + gerritConfiguration.getCommentPathInclusions()
+                    + gerritConfiguration.getCommentPathExclusions() + KEY_SEPARATOR
+                    + gerritConfiguration.shouldGroupIssues() + KEY_SEPARATOR + rules);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Quality profile fingerprint {} ({} active rules)", profileFingerprint,
+                        rules.size());
+            }
+        }
+        return profileFingerprint;
+    }
+
+    /**
+     * Jackson is only loaded once the cache is actually used.
+     */
+    private synchronized ObjectMapper objectMapper() {
+        if (objectMapper == null) {
+            objectMapper = new ObjectMapper();
+            entryType = objectMapper.getTypeFactory().constructCollectionType(List.class, ReviewLineComment.class);
+        }
+        return objectMapper;
+    }
+
+    private void pruneOnce() {
+        if (pruned) {
+            return;
+        }
+        pruned = true;
+        File[] entries = new File(gerritConfiguration.getIssueCacheDir()).listFiles();
+        if (entries == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - ENTRY_MAX_AGE;
+        for (File entry : entries) {
+            if (entry.lastModified() < oldest && !entry.delete()) {
+                LOG.debug("[GERRIT PLUGIN] Unable to prune issue cache entry {}", entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package fr.techad.sonar;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputPath;
+import org.sonar.api.batch.postjob.issue.Issue;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.WildcardPattern;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Select the issues to comment by rule, severity, file and newness. It is
+ * applied to the issues as they come out of the analysis, so a rejected issue
+ * is never grouped, rendered or serialized, nor counted in the vote.
+ *
+ * The settings are compiled on the first issue. The rule and path patterns
+ * are then matched once per rule and per file: the rule or file gets an
+ * ordinal and its verdict is kept in a bit set, so the next issues of the same
+ * rule or file cost a map lookup and a bit test each.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritIssueFilter implements BatchComponent {
+    private static final Logger LOG = Loggers.get(GerritIssueFilter.class);
+
+    private final GerritConfiguration gerritConfiguration;
+    private boolean compiled;
+    private boolean enabled;
+    private boolean newIssuesOnly;
+    private int minSeverity;
+    private WildcardPattern[] ruleInclusions;
+    private WildcardPattern[] ruleExclusions;
+    private WildcardPattern[] pathInclusions;
+    private WildcardPattern[] pathExclusions;
+    private final Map<RuleKey, Integer> ruleOrdinals = new HashMap<RuleKey, Integer>();
+    private final BitSet acceptedRules = new BitSet();
+    private final Map<InputComponent, Integer> pathOrdinals = new HashMap<InputComponent, Integer>();
+    private final BitSet acceptedPaths = new BitSet();
+
+    public GerritIssueFilter(GerritConfiguration gerritConfiguration) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritIssueFilter");
+        this.gerritConfiguration = gerritConfiguration;
+    }
+
+    /**
+     * @return true if the issue should be commented
+     */
+    public boolean accept(@NotNull Issue issue) {
+        if (!compiled) {
+            compile();
+        }
+        if (!enabled) {
+            return true;
+        }
+        if (newIssuesOnly && !issue.isNew()) {
+            return false;
+        }
+        Severity severity = issue.severity();
+        if (severity != null && severity.ordinal() < minSeverity) {
+            return false;
+        }
+        return acceptRule(issue.ruleKey()) && acceptPath(issue.inputComponent());
+    }
+
+    private void compile() {
+        compiled = true;
+        newIssuesOnly = gerritConfiguration.shouldCommentNewIssuesOnly();
+        minSeverity = minSeverity(gerritConfiguration.getCommentMinSeverity());
+        ruleInclusions = patterns(gerritConfiguration.getCommentRuleInclusions());
+        ruleExclusions = patterns(gerritConfiguration.getCommentRuleExclusions());
+        pathInclusions = patterns(gerritConfiguration.getCommentPathInclusions());
+        pathExclusions = patterns(gerritConfiguration.getCommentPathExclusions());
+        enabled = newIssuesOnly || minSeverity > 0 || ruleInclusions.length > 0 || ruleExclusions.length > 0
+                || pathInclusions.length > 0 || pathExclusions.length > 0;
+        if (enabled && LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] Issue filter: newIssuesOnly={}, minSeverity={}, rules={} minus {}, "
+                    + "paths={} minus {}", new Object[] { newIssuesOnly, Severity.values()[minSeverity],
+                    gerritConfiguration.getCommentRuleInclusions(), gerritConfiguration.getCommentRuleExclusions(),
+                    gerritConfiguration.getCommentPathInclusions(), gerritConfiguration.getCommentPathExclusions() });
+        }
+    }
+
+    private boolean acceptRule(RuleKey ruleKey) {
+        if (ruleKey == null || (ruleInclusions.length == 0 && ruleExclusions.length == 0)) {
+            return true;
+        }
+        Integer ordinal = ruleOrdinals.get(ruleKey);
+        if (ordinal == null) {
+            ordinal = ruleOrdinals.size();
+            ruleOrdinals.put(ruleKey, ordinal);
+            acceptedRules.set(ordinal, matches(ruleKey.toString(), ruleInclusions, ruleExclusions));
+        }
+        return acceptedRules.get(ordinal);
+    }
+
+    /**
+     * Issues on a module or project are not on a path, the path patterns do
+     * not apply to them.
+     */
+    private boolean acceptPath(InputComponent inputComponent) {
+        if (!(inputComponent instanceof InputPath) || (pathInclusions.length == 0 && pathExclusions.length == 0)) {
+            return true;
+        }
+        Integer ordinal = pathOrdinals.get(inputComponent);
+        if (ordinal == null) {
+            ordinal = pathOrdinals.size();
+            pathOrdinals.put(inputComponent, ordinal);
+            acceptedPaths.set(ordinal, matches(((InputPath) inputComponent).relativePath(), pathInclusions,
+                    pathExclusions));
+        }
+        return acceptedPaths.get(ordinal);
+    }
+
+    private static boolean matches(String value, WildcardPattern[] inclusions, WildcardPattern[] exclusions) {
+        return (inclusions.length == 0 || WildcardPattern.match(inclusions, value))
+                && !WildcardPattern.match(exclusions, value);
+    }
+
+    private static WildcardPattern[] patterns(List<String> values) {
+        return WildcardPattern.create(values.toArray(new String[values.size()]));
+    }
+
+    private static int minSeverity(String severity) {
+        if (severity == null) {
+            return 0;
+        }
+        try {
+            return Severity.valueOf(severity).ordinal();
+        } catch (IllegalArgumentException e) {
+            LOG.warn("[GERRIT PLUGIN] Unknown minimum severity {}, every severity is commented", severity);
+            return 0;
+        }
+    }
+}
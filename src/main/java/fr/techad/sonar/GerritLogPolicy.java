@@ -0,0 +1,162 @@
+package fr.techad.sonar;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Keep the INFO logs of the hot paths bounded. For each category, the first
+ * messages are logged at INFO, then one message out of the sample rate. The
+ * other messages are only logged at DEBUG. Payloads larger than the limit are
+ * logged at INFO as their size and SHA-1 digest. A negative limit means no
+ * limit.
+ *
+ * The number of messages of each category is logged at the end of the
+ * analysis.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritLogPolicy implements BatchComponent {
+    public static final String CATEGORY_ISSUE = "issue";
+    public static final String CATEGORY_FILE_MATCH = "fileMatch";
+    public static final String CATEGORY_ALERT = "alert";
+    public static final String CATEGORY_ISSUE_CACHE = "issueCache";
+    public static final String CATEGORY_PAYLOAD = "payload";
+
+    private static final Logger LOG = Loggers.get(GerritLogPolicy.class);
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritReviewReport gerritReviewReport;
+    private final Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+
+    public GerritLogPolicy(GerritConfiguration gerritConfiguration, GerritReviewReport gerritReviewReport) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritLogPolicy");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritReviewReport = gerritReviewReport;
+    }
+
+    public void info(@NotNull Logger log, @NotNull String category, @NotNull String format, Object arg) {
+        if (shouldLog(category)) {
+            log.info(format, arg);
+        } else if (log.isDebugEnabled()) {
+            log.debug(format, arg);
+        }
+    }
+
+    public void info(@NotNull Logger log, @NotNull String category, @NotNull String format, Object arg1,
+            Object arg2) {
+        if (shouldLog(category)) {
+            log.info(format, arg1, arg2);
+        } else if (log.isDebugEnabled()) {
+            log.debug(format, arg1, arg2);
+        }
+    }
+
+    /**
+     * Log a payload at INFO, or its size and digest if it is too large. The
+     * full payload is always logged at DEBUG.
+     *
+     * @param format
+     *            the message, with a first argument identifying the payload
+     *            and a second one for the payload itself
+     */
+    public void payload(@NotNull Logger log, @NotNull String format, Object id, String payload) {
+        count(CATEGORY_PAYLOAD, true);
+        if (log.isDebugEnabled()) {
+            log.debug(format, id, payload);
+            return;
+        }
+        int maxLength = gerritConfiguration.getLogPayloadMaxLength();
+        if (payload == null || maxLength < 0 || payload.length() <= maxLength) {
+            log.info(format, id, payload);
+        } else {
+            count(CATEGORY_PAYLOAD, false);
+            log.info(format, id, digest(payload));
+        }
+    }
+
+    /**
+     * Same as {@link #payload(Logger, String, Object, String)} for a UTF-8
+     * payload, only decoded when it is logged as is. The maximum length is
+     * then compared to its size in bytes.
+     */
+    public void payload(@NotNull Logger log, @NotNull String format, Object id, @NotNull byte[] payload) {
+        count(CATEGORY_PAYLOAD, true);
+        if (log.isDebugEnabled()) {
+            log.debug(format, id, new String(payload, StandardCharsets.UTF_8));
+            return;
+        }
+        int maxLength = gerritConfiguration.getLogPayloadMaxLength();
+        if (maxLength < 0 || payload.length <= maxLength) {
+            log.info(format, id, new String(payload, StandardCharsets.UTF_8));
+        } else {
+            count(CATEGORY_PAYLOAD, false);
+            log.info(format, id, digest(payload));
+        }
+    }
+
+    /**
+     * Count a message of the category.
+     *
+     * @return true if it should be logged at INFO
+     */
+    public boolean shouldLog(@NotNull String category) {
+        long count = count(category, true);
+        int limit = gerritConfiguration.getLogLimit();
+        int sampleRate = gerritConfiguration.getLogSampleRate();
+        boolean log = limit < 0 || count <= limit || (sampleRate > 0 && (count - limit) % sampleRate == 0);
+        if (!log) {
+            count(category, false);
+        }
+        return log;
+    }
+
+    /**
+     * Log the number of messages and suppressed messages of each category,
+     * and add the suppressed ones to the review report.
+     */
+    public synchronized void summarize() {
+        if (counts.isEmpty()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder("[GERRIT PLUGIN] Log summary:");
+        long suppressed = 0;
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            long[] values = entry.getValue();
+            summary.append(' ').append(entry.getKey()).append('=').append(values[0]);
+            if (values[1] > 0) {
+                summary.append(" (").append(values[1]).append(" not logged at INFO)");
+            }
+            suppressed += values[1];
+        }
+        LOG.info(summary.toString());
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_LOGS_SUPPRESSED, suppressed);
+    }
+
+    @NotNull
+    protected String digest(@NotNull String payload) {
+        return digest(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected String digest(@NotNull byte[] payload) {
+        return "<" + payload.length + " bytes, sha1=" + DigestUtils.sha1Hex(payload) + ">";
+    }
+
+    /**
+     * @return the new count of the messages of the category, or of the
+     *         suppressed ones
+     */
+    private synchronized long count(String category, boolean total) {
+        long[] values = counts.get(category);
+        if (values == null) {
+            values = new long[2];
+            counts.put(category, values);
+        }
+        return total ? ++values[0] : ++values[1];
+    }
+}
@@ -9,8 +9,17 @@ import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.rule.Severity;
 
+import fr.techad.sonar.gerrit.GerritChangeQuery;
+import fr.techad.sonar.gerrit.GerritConcurrencyLimiter;
 import fr.techad.sonar.gerrit.GerritConnector;
 import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritPreflight;
+import fr.techad.sonar.gerrit.GerritRateLimiter;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
+import fr.techad.sonar.gerrit.GerritTimeBudget;
+import fr.techad.sonar.gerrit.GerritTransportProvider;
+import fr.techad.sonar.server.GerritReviewQueue;
+import fr.techad.sonar.server.GerritReviewWebService;
 
 public final class GerritPlugin extends SonarPlugin {
     private static final String GERRIT_CATEGORY = "Gerrit";
@@ -23,6 +32,29 @@ public final class GerritPlugin extends SonarPlugin {
     private static final String AUTH_BASIC = "basic";
     private static final String AUTH_DIGEST = "digest";
     private static final String GERRIT_COMMENT_NEW_ISSUES_ONLY = "false";
+    private static final String GERRIT_SKIP_UNCHANGED_MODULES_DEFAULT = "false";
+    private static final String GERRIT_SKIP_UNANALYZABLE_CHANGES_DEFAULT = "false";
+    private static final String GERRIT_COPY_TRIVIAL_REBASE_REVIEWS_DEFAULT = "false";
+    private static final String GERRIT_ISSUE_CACHE_SKIP_ANALYSIS_DEFAULT = "false";
+    private static final String GERRIT_CHANGE_QUERY_DEFAULT = "true";
+    private static final String GERRIT_READ_HEDGING_DEFAULT = "false";
+    private static final String GERRIT_REQUESTS_PER_MINUTE_DEFAULT = "0";
+    private static final String GERRIT_MAX_CONCURRENT_REQUESTS_DEFAULT = "0";
+    private static final String GERRIT_ADAPTIVE_CONCURRENCY_DEFAULT = "0";
+    private static final String GERRIT_TIME_BUDGET_DEFAULT = "0";
+    private static final String GERRIT_DEGRADED_MAX_COMMENTS_DEFAULT = "50";
+    private static final String GERRIT_SPILL_THRESHOLD_DEFAULT = "0";
+    private static final String NOTIFY_NONE = "NONE";
+    private static final String NOTIFY_OWNER = "OWNER";
+    private static final String NOTIFY_OWNER_REVIEWERS = "OWNER_REVIEWERS";
+    private static final String NOTIFY_ALL = "ALL";
+    private static final String GERRIT_OMIT_DUPLICATE_COMMENTS_DEFAULT = "true";
+    private static final String GERRIT_GROUP_ISSUES_DEFAULT = "true";
+    private static final String GERRIT_SERVER_POSTING_DEFAULT = "false";
+    private static final String GERRIT_TAG_DEFAULT = "autogenerated:sonar";
+    private static final String GERRIT_LOG_LIMIT_DEFAULT = "20";
+    private static final String GERRIT_LOG_SAMPLE_RATE_DEFAULT = "1000";
+    private static final String GERRIT_LOG_PAYLOAD_MAX_LENGTH_DEFAULT = "2048";
     private static final String GERRIT_VOTE_NO_ISSUE_DEFAULT = "+1";
     private static final String GERRIT_VOTE_ISSUE_BELOW_THRESHOLD_DEFAULT = "+1";
     private static final String GERRIT_VOTE_ISSUE_ABOVE_THRESHOLD_DEFAULT = "-1";
@@ -61,6 +93,63 @@ public final class GerritPlugin extends SonarPlugin {
                 .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).defaultValue("/")
                 .index(serverBaseIndex++).build();
 
+        PropertyDefinition preflightMode = PropertyDefinition.builder(PropertyKey.GERRIT_PREFLIGHT_MODE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(GerritPreflight.MODE_OFF, GerritPreflight.MODE_DEGRADE, GerritPreflight.MODE_FAIL)
+                .defaultValue(GerritPreflight.MODE_OFF).index(serverBaseIndex++).build();
+
+        PropertyDefinition staleRevisionPolicy = PropertyDefinition
+                .builder(PropertyKey.GERRIT_STALE_REVISION_POLICY).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(GerritRevisionChecker.POLICY_OFF, GerritRevisionChecker.POLICY_SKIP,
+                        GerritRevisionChecker.POLICY_FAIL)
+                .defaultValue(GerritRevisionChecker.POLICY_OFF).index(serverBaseIndex++).build();
+
+        PropertyDefinition transport = PropertyDefinition.builder(PropertyKey.GERRIT_TRANSPORT)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(GerritTransportProvider.TRANSPORT_BLOCKING, GerritTransportProvider.TRANSPORT_CONCURRENT)
+                .defaultValue(GerritTransportProvider.TRANSPORT_BLOCKING).index(serverBaseIndex++).build();
+
+        PropertyDefinition changeQuery = PropertyDefinition.builder(PropertyKey.GERRIT_CHANGE_QUERY)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_CHANGE_QUERY_DEFAULT).index(serverBaseIndex++).build();
+
+        PropertyDefinition fileListSource = PropertyDefinition.builder(PropertyKey.GERRIT_FILE_LIST_SOURCE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(GerritFacade.FILE_LIST_REST, GerritFacade.FILE_LIST_GIT)
+                .defaultValue(GerritFacade.FILE_LIST_REST).index(serverBaseIndex++).build();
+
+        PropertyDefinition gitBaseCommit = PropertyDefinition.builder(PropertyKey.GERRIT_GIT_BASE_COMMIT)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).index(serverBaseIndex++).build();
+
+        PropertyDefinition readReplicas = PropertyDefinition.builder(PropertyKey.GERRIT_READ_REPLICAS)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).index(serverBaseIndex++).build();
+
+        PropertyDefinition readHedging = PropertyDefinition.builder(PropertyKey.GERRIT_READ_HEDGING)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_READ_HEDGING_DEFAULT).index(serverBaseIndex++).build();
+
+        PropertyDefinition requestsPerMinute = PropertyDefinition.builder(PropertyKey.GERRIT_REQUESTS_PER_MINUTE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_REQUESTS_PER_MINUTE_DEFAULT).index(serverBaseIndex++).build();
+
+        PropertyDefinition maxConcurrentRequests = PropertyDefinition
+                .builder(PropertyKey.GERRIT_MAX_CONCURRENT_REQUESTS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_MAX_CONCURRENT_REQUESTS_DEFAULT).index(serverBaseIndex++).build();
+
+        PropertyDefinition adaptiveConcurrency = PropertyDefinition
+                .builder(PropertyKey.GERRIT_ADAPTIVE_CONCURRENCY).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_ADAPTIVE_CONCURRENCY_DEFAULT).index(serverBaseIndex++).build();
+
+        PropertyDefinition rateLimitStateFile = PropertyDefinition.builder(PropertyKey.GERRIT_RATE_LIMIT_STATE_FILE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).index(serverBaseIndex++).build();
+
+        PropertyDefinition timeBudget = PropertyDefinition.builder(PropertyKey.GERRIT_TIME_BUDGET)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_SERVER).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_TIME_BUDGET_DEFAULT).index(serverBaseIndex++).build();
+
         PropertyDefinition label = PropertyDefinition.builder(PropertyKey.GERRIT_LABEL).category(GERRIT_CATEGORY)
                 .subCategory(GERRIT_SUBCATEGORY_REVIEW).defaultValue("Code-Review").index(reviewBaseIndex++).build();
 
@@ -77,6 +166,116 @@ public final class GerritPlugin extends SonarPlugin {
                 .defaultValue(GERRIT_COMMENT_NEW_ISSUES_ONLY).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
                 .index(reviewBaseIndex++).build();
 
+        PropertyDefinition commentMinSeverity = PropertyDefinition.builder(PropertyKey.GERRIT_COMMENT_MIN_SEVERITY)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(Severity.ALL).defaultValue(Severity.INFO).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition commentRuleInclusions = PropertyDefinition
+                .builder(PropertyKey.GERRIT_COMMENT_RULE_INCLUSIONS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition commentRuleExclusions = PropertyDefinition
+                .builder(PropertyKey.GERRIT_COMMENT_RULE_EXCLUSIONS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition commentPathInclusions = PropertyDefinition
+                .builder(PropertyKey.GERRIT_COMMENT_PATH_INCLUSIONS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition commentPathExclusions = PropertyDefinition
+                .builder(PropertyKey.GERRIT_COMMENT_PATH_EXCLUSIONS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition skipUnchangedModules = PropertyDefinition
+                .builder(PropertyKey.GERRIT_SKIP_UNCHANGED_MODULES).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_SKIP_UNCHANGED_MODULES_DEFAULT).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition skipUnanalyzableChanges = PropertyDefinition
+                .builder(PropertyKey.GERRIT_SKIP_UNANALYZABLE_CHANGES).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_SKIP_UNANALYZABLE_CHANGES_DEFAULT).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition copyTrivialRebaseReviews = PropertyDefinition
+                .builder(PropertyKey.GERRIT_COPY_TRIVIAL_REBASE_REVIEWS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_COPY_TRIVIAL_REBASE_REVIEWS_DEFAULT)
+                .onQualifiers(Arrays.asList(Qualifiers.PROJECT)).index(reviewBaseIndex++).build();
+
+        PropertyDefinition issueCacheDir = PropertyDefinition.builder(PropertyKey.GERRIT_ISSUE_CACHE_DIR)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).index(reviewBaseIndex++).build();
+
+        PropertyDefinition issueCacheSkipAnalysis = PropertyDefinition
+                .builder(PropertyKey.GERRIT_ISSUE_CACHE_SKIP_ANALYSIS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_ISSUE_CACHE_SKIP_ANALYSIS_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition shardFile = PropertyDefinition.builder(PropertyKey.GERRIT_SHARD_FILE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).index(reviewBaseIndex++).build();
+
+        PropertyDefinition notify = PropertyDefinition.builder(PropertyKey.GERRIT_NOTIFY).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(NOTIFY_NONE, NOTIFY_OWNER, NOTIFY_OWNER_REVIEWERS, NOTIFY_ALL).defaultValue(NOTIFY_ALL)
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition notifyInProgress = PropertyDefinition.builder(PropertyKey.GERRIT_NOTIFY_IN_PROGRESS)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.SINGLE_SELECT_LIST)
+                .options(NOTIFY_NONE, NOTIFY_OWNER, NOTIFY_OWNER_REVIEWERS, NOTIFY_ALL).defaultValue(NOTIFY_NONE)
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition notifyDetails = PropertyDefinition.builder(PropertyKey.GERRIT_NOTIFY_DETAILS)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).index(reviewBaseIndex++).build();
+
+        PropertyDefinition omitDuplicateComments = PropertyDefinition
+                .builder(PropertyKey.GERRIT_OMIT_DUPLICATE_COMMENTS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_OMIT_DUPLICATE_COMMENTS_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition groupIssues = PropertyDefinition.builder(PropertyKey.GERRIT_GROUP_ISSUES)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_GROUP_ISSUES_DEFAULT).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition tag = PropertyDefinition.builder(PropertyKey.GERRIT_TAG).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).defaultValue(GERRIT_TAG_DEFAULT).index(reviewBaseIndex++)
+                .build();
+
+        PropertyDefinition serverPosting = PropertyDefinition.builder(PropertyKey.GERRIT_SERVER_POSTING)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.BOOLEAN)
+                .defaultValue(GERRIT_SERVER_POSTING_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition postingToken = PropertyDefinition.builder(PropertyKey.GERRIT_POSTING_TOKEN)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.PASSWORD)
+                .index(reviewBaseIndex++).build();
+
+        PropertyDefinition logLimit = PropertyDefinition.builder(PropertyKey.GERRIT_LOG_LIMIT)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_LOG_LIMIT_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition logSampleRate = PropertyDefinition.builder(PropertyKey.GERRIT_LOG_SAMPLE_RATE)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_LOG_SAMPLE_RATE_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition logPayloadMaxLength = PropertyDefinition.builder(PropertyKey.GERRIT_LOG_PAYLOAD_MAX_LENGTH)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_LOG_PAYLOAD_MAX_LENGTH_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition degradedMaxComments = PropertyDefinition
+                .builder(PropertyKey.GERRIT_DEGRADED_MAX_COMMENTS).category(GERRIT_CATEGORY)
+                .subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_DEGRADED_MAX_COMMENTS_DEFAULT).index(reviewBaseIndex++).build();
+
+        PropertyDefinition spillThreshold = PropertyDefinition.builder(PropertyKey.GERRIT_SPILL_THRESHOLD)
+                .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.INTEGER)
+                .defaultValue(GERRIT_SPILL_THRESHOLD_DEFAULT).index(reviewBaseIndex++).build();
+
         PropertyDefinition threshold = PropertyDefinition.builder(PropertyKey.GERRIT_THRESHOLD)
                 .category(GERRIT_CATEGORY).subCategory(GERRIT_SUBCATEGORY_REVIEW).type(PropertyType.SINGLE_SELECT_LIST)
                 .options(Severity.ALL).defaultValue(Severity.INFO).onQualifiers(Arrays.asList(Qualifiers.PROJECT))
@@ -99,9 +298,21 @@ public final class GerritPlugin extends SonarPlugin {
                 .defaultValue(GERRIT_VOTE_ISSUE_ABOVE_THRESHOLD_DEFAULT)
                 .onQualifiers(Arrays.asList(Qualifiers.PROJECT)).index(reviewBaseIndex++).build();
 
-        return Arrays.asList(GerritConfiguration.class, GerritConnector.class, GerritFacade.class,
-                GerritInitializer.class, GerritProjectBuilder.class, GerritPostJob.class, enabled, scheme, host, port,
-                username, password, authScheme, basePath, label, message, forceBranch, newIssuesOnly, threshold,
-                voteNoIssue, voteIssueBelowThreshold, voteIssueAboveThreshold);
+        return Arrays.asList(GerritConfiguration.class, GerritReviewReport.class, GerritLogPolicy.class,
+                GerritTimeBudget.class, GerritRateLimiter.class, GerritConcurrencyLimiter.class, GerritConnector.class,
+                GerritTransportProvider.class, GerritChangeQuery.class, GerritPreflight.class,
+                GerritRevisionChecker.class, GerritFacade.class,
+                GerritInitializer.class, GerritFileClassifier.class, GerritIssueFilter.class,
+                GerritProjectBuilder.class, GerritIssueCache.class, GerritCachedFileFilter.class, GerritPostJob.class,
+                GerritReviewQueue.class, GerritReviewWebService.class, enabled, scheme, host, port, username, password,
+                authScheme, basePath, preflightMode, staleRevisionPolicy, transport, changeQuery, fileListSource,
+                gitBaseCommit, readReplicas, readHedging, requestsPerMinute, maxConcurrentRequests, adaptiveConcurrency,
+                rateLimitStateFile, timeBudget, label, message, forceBranch, newIssuesOnly, commentMinSeverity,
+                commentRuleInclusions, commentRuleExclusions, commentPathInclusions, commentPathExclusions,
+                skipUnchangedModules, skipUnanalyzableChanges, copyTrivialRebaseReviews, issueCacheDir,
+                issueCacheSkipAnalysis, shardFile, notify, notifyInProgress, notifyDetails, omitDuplicateComments,
+                groupIssues, tag, serverPosting, postingToken, logLimit, logSampleRate, logPayloadMaxLength,
+                degradedMaxComments, spillThreshold, threshold, voteNoIssue, voteIssueBelowThreshold,
+                voteIssueAboveThreshold);
     }
 }
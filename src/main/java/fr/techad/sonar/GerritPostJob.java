@@ -1,17 +1,23 @@
 package fr.techad.sonar;
 
 import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritPreflight;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
+import fr.techad.sonar.gerrit.GerritTimeBudget;
+import fr.techad.sonar.gerrit.ReviewCommentStore;
 import fr.techad.sonar.gerrit.ReviewFileComment;
 import fr.techad.sonar.gerrit.ReviewInput;
 import fr.techad.sonar.gerrit.ReviewLineComment;
+import fr.techad.sonar.gerrit.ReviewShard;
 import fr.techad.sonar.gerrit.ReviewUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.sonar.api.batch.DecoratorBarriers;
 import org.sonar.api.batch.DependsUpon;
 import org.sonar.api.batch.PostJob;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputPath;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.issue.Issue;
@@ -21,34 +27,59 @@ import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MeasuresFilters;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @DependsUpon(DecoratorBarriers.ISSUES_TRACKED)
 public class GerritPostJob implements PostJob {
     private static final Logger LOG = Loggers.get(GerritPostJob.class);
-    private static final String ISSUE_FORMAT = "[%s] New: %s Severity: %s, Message: %s";
     private static final String ALERT_FORMAT = "[ALERT] Severity: %s, Message: %s";
+    private static final String SPILL_FILE_NAME = "gerrit-review-spill.json";
     private final Settings settings;
     private final GerritConfiguration gerritConfiguration;
     private final PostJobContext postJobContext;
     private Map<String, String> gerritModifiedFiles;
+    private final GerritIssueCache gerritIssueCache;
+    private final FileSystem fileSystem;
+    private final GerritReviewReport gerritReviewReport;
+    private final GerritPreflight gerritPreflight;
+    private final GerritLogPolicy gerritLogPolicy;
+    private final GerritRevisionChecker gerritRevisionChecker;
+    private final GerritTimeBudget gerritTimeBudget;
+    private final GerritIssueFilter gerritIssueFilter;
     private GerritFacade gerritFacade;
-    private ReviewInput reviewInput = ReviewHolder.getReviewInput();
+    private ReviewInput reviewInput;
 
     public GerritPostJob(Settings settings, GerritFacade gerritFacade, GerritConfiguration gerritConfiguration,
-            PostJobContext postJobContext) {
+            PostJobContext postJobContext, GerritIssueCache gerritIssueCache, FileSystem fileSystem,
+            GerritReviewReport gerritReviewReport, GerritPreflight gerritPreflight, GerritLogPolicy gerritLogPolicy,
+            GerritRevisionChecker gerritRevisionChecker, GerritTimeBudget gerritTimeBudget,
+            GerritIssueFilter gerritIssueFilter) {
         LOG.debug("[GERRIT PLUGIN] Instanciating GerritPostJob");
         this.settings = settings;
         this.gerritFacade = gerritFacade;
         this.gerritConfiguration = gerritConfiguration;
         this.postJobContext = postJobContext;
+        this.gerritIssueCache = gerritIssueCache;
+        this.fileSystem = fileSystem;
+        this.gerritReviewReport = gerritReviewReport;
+        this.gerritPreflight = gerritPreflight;
+        this.gerritLogPolicy = gerritLogPolicy;
+        this.gerritRevisionChecker = gerritRevisionChecker;
+        this.gerritTimeBudget = gerritTimeBudget;
+        this.gerritIssueFilter = gerritIssueFilter;
     }
 
     @Override
@@ -58,8 +89,35 @@ public class GerritPostJob implements PostJob {
             return;
         }
 
+        reviewInput = ReviewHolder.getReviewInput();
+        long start = gerritReviewReport.start();
+        try {
+            if (ReviewHolder.isReviewSent()) {
+                LOG.info("[GERRIT PLUGIN] PostJob : review has already been sent. No actions taken.");
+            } else {
+                sendReview(context);
+            }
+        } finally {
+            if (reviewInput.getCommentStore().isSpilled()) {
+                reviewInput.getCommentStore().clear();
+            }
+            gerritReviewReport.stop(GerritReviewReport.PHASE_POST_JOB, start);
+            gerritLogPolicy.summarize();
+            gerritReviewReport.publish(fileSystem.workDir());
+        }
+    }
+
+    private void sendReview(SensorContext context) {
+        long start = gerritReviewReport.start();
+        int issueCount = 0;
+        int filteredCount = 0;
         Map<InputPath,List<Issue>> issueMap = new HashMap<>();
         for (Issue i : postJobContext.issues()) {
+            issueCount++;
+            if (!gerritIssueFilter.accept(i)) {
+                filteredCount++;
+                continue;
+            }
             InputComponent inputComponent = i.inputComponent();
             if(inputComponent instanceof InputPath){
                 InputPath inputPath=(InputPath)inputComponent;
@@ -71,14 +129,33 @@ public class GerritPostJob implements PostJob {
                 l.add(i);
             }
         }
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_ISSUES, issueCount);
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_ISSUES_FILTERED, filteredCount);
+        if (filteredCount > 0) {
+            LOG.info("[GERRIT PLUGIN] {} of {} issues filtered out", filteredCount, issueCount);
+        }
+        gerritReviewReport.stop(GerritReviewReport.PHASE_GROUP_ISSUES, start);
 
+        start = gerritReviewReport.start();
         for (Map.Entry<InputPath, List<Issue>> e : issueMap.entrySet()) {
             decorate(e.getKey(), context, e.getValue());
+            // The issues of the file are now comments
+            e.setValue(Collections.<Issue> emptyList());
+            spillIfNeeded();
+        }
+        cacheFilesWithoutIssues(issueMap.keySet());
+        gerritReviewReport.stop(GerritReviewReport.PHASE_CONVERT_COMMENTS, start);
+
+        if (gerritConfiguration.isSharded()) {
+            writeShard();
+            return;
         }
 
         try {
             LOG.info("[GERRIT PLUGIN] Analysis has finished. Sending results to Gerrit.");
+            start = gerritReviewReport.start();
             reviewInput.setMessage(ReviewUtils.substituteProperties(gerritConfiguration.getMessage(), settings));
+            ReviewUtils.setServerOptions(reviewInput, gerritConfiguration, false);
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("[GERRIT PLUGIN] Define message : {}", reviewInput.getMessage());
@@ -91,40 +168,137 @@ public class GerritPostJob implements PostJob {
                         gerritConfiguration.getThreshold(), ReviewUtils.valueToThreshold(maxLevel));
             }
 
-            if (ReviewUtils.isEmpty(reviewInput)) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("[GERRIT PLUGIN] No issues ! Vote {} for the label : {}",
-                            gerritConfiguration.getVoteNoIssue(), gerritConfiguration.getLabel());
-                }
-                reviewInput.setValueAndLabel(gerritConfiguration.getVoteNoIssue(), gerritConfiguration.getLabel());
-            } else if (maxLevel < ReviewUtils.thresholdToValue(gerritConfiguration.getThreshold())) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("[GERRIT PLUGIN] Issues below threshold. Vote {} for the label : {}",
-                            gerritConfiguration.getVoteBelowThreshold(), gerritConfiguration.getLabel());
-                }
-                reviewInput.setValueAndLabel(gerritConfiguration.getVoteBelowThreshold(),
-                        gerritConfiguration.getLabel());
-            } else {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("[GERRIT PLUGIN] Issues above threshold. Vote {} for the label : {}",
-                            gerritConfiguration.getVoteAboveThreshold(), gerritConfiguration.getLabel());
-                }
-                reviewInput.setValueAndLabel(gerritConfiguration.getVoteAboveThreshold(),
-                        gerritConfiguration.getLabel());
-            }
+            reviewInput.setValueAndLabel(
+                    ReviewUtils.vote(gerritConfiguration, ReviewUtils.isEmpty(reviewInput), maxLevel),
+                    gerritConfiguration.getLabel());
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("[GERRIT PLUGIN] Send review for ChangeId={}, RevisionId={}",
                         gerritConfiguration.getChangeId(), gerritConfiguration.getRevisionId());
             }
+            gerritReviewReport.stop(GerritReviewReport.PHASE_COMPUTE_VOTE, start);
 
-            gerritFacade.setReview(reviewInput);
+            if (applyPreflight() && !isSuperseded()) {
+                sendWithinBudget();
+            }
 
         } catch (GerritPluginException e) {
             LOG.error("[GERRIT PLUGIN] Error sending review to Gerrit", e);
         }
     }
 
+    /**
+     * Wait for the preflight checks and adapt the review to their result. The
+     * vote is dropped when Gerrit does not permit it on the label.
+     *
+     * @return false if the review cannot be sent
+     */
+    protected boolean applyPreflight() {
+        GerritPreflight.Status status = gerritPreflight.await();
+        if (status == GerritPreflight.Status.FATAL) {
+            if (gerritPreflight.shouldFailFast()) {
+                throw MessageException.of("[GERRIT PLUGIN] Preflight checks failed: " + gerritPreflight.getReason());
+            }
+            LOG.error("[GERRIT PLUGIN] Review not sent: {}", gerritPreflight.getReason());
+            return false;
+        }
+        if (status == GerritPreflight.Status.NO_VOTE) {
+            LOG.warn("[GERRIT PLUGIN] Review sent without vote: {}", gerritPreflight.getReason());
+            reviewInput.emptyLabels();
+            return true;
+        }
+        Integer vote = reviewInput.getLabels().get(gerritConfiguration.getLabel());
+        if (vote != null && !gerritPreflight.isVotePermitted(vote)) {
+            LOG.warn("[GERRIT PLUGIN] Review sent without vote: vote {} on label {} is not permitted", vote,
+                    gerritConfiguration.getLabel());
+            reviewInput.emptyLabels();
+        }
+        return true;
+    }
+
+    /**
+     * Send the review, degraded as the Gerrit time budget runs out. After a
+     * timeout before the review was sent, a smaller review is tried while some
+     * budget is left. Any other failure, a socket timeout included, is final:
+     * Gerrit may still apply the review. The vote
+     * only review may use the whole remaining budget.
+     */
+    protected void sendWithinBudget() throws GerritPluginException {
+        String message = reviewInput.getMessage();
+        GerritTimeBudget.Level level = gerritTimeBudget.level();
+        while (true) {
+            degrade(level, message);
+            if (level == GerritTimeBudget.Level.VOTE_ONLY) {
+                gerritTimeBudget.releaseReserve();
+            }
+            try {
+                gerritFacade.setReview(reviewInput);
+                return;
+            } catch (GerritPluginException e) {
+                if (level == GerritTimeBudget.Level.VOTE_ONLY || !GerritTimeBudget.isUnsentTimeout(e)
+                        || gerritTimeBudget.remainingMillis() == 0) {
+                    throw e;
+                }
+                LOG.warn("[GERRIT PLUGIN] Gerrit could not be reached in time, sending a smaller review", e);
+                level = GerritTimeBudget.Level.values()[level.ordinal() + 1];
+            }
+        }
+    }
+
+    private void degrade(GerritTimeBudget.Level level, String message) {
+        ReviewCommentStore commentStore = reviewInput.getCommentStore();
+        int removed = 0;
+        if (level == GerritTimeBudget.Level.CAPPED) {
+            removed = commentStore.retainTop(gerritConfiguration.getDegradedMaxComments());
+            if (removed > 0) {
+                reviewInput.setMessage(message + "\n\n" + removed
+                        + " comments with lower severities not sent: Gerrit is too slow.");
+            }
+        } else if (level == GerritTimeBudget.Level.VOTE_ONLY && !commentStore.isEmpty()) {
+            Map<String, Integer> severities = commentStore.severityCounts();
+            removed = commentStore.size();
+            commentStore.clear();
+            reviewInput.setMessage(message + "\n\n" + removed
+                    + " comments not sent: Gerrit is too slow. Comments by severity: " + severities);
+        }
+        if (removed > 0) {
+            LOG.warn("[GERRIT PLUGIN] Gerrit time budget running out ({} ms left): {} comments not sent",
+                    gerritTimeBudget.remainingMillis(), removed);
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_COMMENTS_DROPPED, removed);
+        }
+    }
+
+    /**
+     * Write the comments as a partial review, to be merged with the other
+     * shards by {@link GerritShardMerger}.
+     */
+    protected void writeShard() {
+        File shardFile = new File(gerritConfiguration.getShardFile());
+        try {
+            ReviewShard.write(shardFile, shardFile.getName(), gerritConfiguration, reviewInput);
+            LOG.info("[GERRIT PLUGIN] Analysis has finished. Partial review written to {}", shardFile);
+        } catch (IOException e) {
+            LOG.error("[GERRIT PLUGIN] Error writing partial review to " + shardFile, e);
+        }
+    }
+
+    /**
+     * @return true if a newer patch set has been uploaded, in which case the
+     *         review is not sent
+     */
+    protected boolean isSuperseded() {
+        if (!gerritRevisionChecker.isSuperseded()) {
+            return false;
+        }
+        if (gerritRevisionChecker.shouldFail()) {
+            throw MessageException.of("[GERRIT PLUGIN] Revision " + gerritConfiguration.getRevisionId()
+                    + " has been superseded by a newer patch set");
+        }
+        LOG.info("[GERRIT PLUGIN] Review not sent: revision {} has been superseded",
+                gerritConfiguration.getRevisionId());
+        return true;
+    }
+
     @DependsUpon
     public String dependsOnViolations() {
         return DecoratorBarriers.ISSUES_ADDED;
@@ -157,8 +331,10 @@ public class GerritPostJob implements PostJob {
                     resource.relativePath());
         }
         if (gerritModifiedFiles.containsKey(resource.relativePath())) {
-            LOG.info("[GERRIT PLUGIN] File in Sonar {} matches file in Gerrit {}", resource.relativePath(),
+            gerritLogPolicy.info(LOG, GerritLogPolicy.CATEGORY_FILE_MATCH,
+                    "[GERRIT PLUGIN] File in Sonar {} matches file in Gerrit {}", resource.relativePath(),
                     gerritModifiedFiles.get(resource.relativePath()));
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_FILES_MATCHED, 1);
             processFileResource(resource, context, issues);
         } else {
             if (LOG.isDebugEnabled()) {
@@ -178,18 +354,6 @@ public class GerritPostJob implements PostJob {
         }
     }
 
-    protected ReviewLineComment issueToComment(Issue issue) {
-        ReviewLineComment result = new ReviewLineComment();
-
-        result.setLine(issue.line());
-        result.setMessage(String.format(ISSUE_FORMAT, issue.isNew(),
-                StringUtils.capitalize(issue.ruleKey().toString()), issue.severity(), issue.message()));
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("[GERRIT PLUGIN] issueToComment {}", result.toString());
-        }
-        return result;
-    }
-
     protected ReviewFileComment measureToComment(Measure<?> measure) {
         ReviewFileComment result = new ReviewFileComment();
         result.setMessage(String.format(ALERT_FORMAT, measure.getAlertStatus().toString(), measure.getAlertText()));
@@ -201,28 +365,88 @@ public class GerritPostJob implements PostJob {
     }
 
     protected void processFileResource(@NotNull InputPath resource, @NotNull SensorContext context, Collection<Issue> issuable) {
-        List<ReviewFileComment> comments = new ArrayList<ReviewFileComment>();
-        commentIssues(issuable, comments);
-        commentAlerts(context, comments);
-        if (!comments.isEmpty()) {
-            reviewInput.addComments(gerritModifiedFiles.get(resource.relativePath()), comments);
+        String gerritFile = gerritModifiedFiles.get(resource.relativePath());
+        ReviewCommentStore commentStore = reviewInput.getCommentStore();
+        int before = commentStore.size();
+
+        String cacheKey = gerritIssueCache.key(resource);
+        List<ReviewLineComment> cachedComments = gerritIssueCache.get(resource, cacheKey);
+        if (cachedComments == null) {
+            commentIssues(issuable, gerritFile, commentStore);
+            if (gerritConfiguration.shouldGroupIssues()) {
+                gerritReviewReport.increment(GerritReviewReport.COUNTER_COMMENTS_GROUPED, commentStore.group(before));
+            }
+            if (cacheKey != null) {
+                gerritIssueCache.put(resource, cacheKey, commentStore.toLineComments(before, commentStore.size()));
+            }
+        } else {
+            reviewInput.addComments(gerritFile, cachedComments);
+        }
+
+        List<ReviewFileComment> alerts = new ArrayList<ReviewFileComment>();
+        commentAlerts(context, alerts);
+        reviewInput.addComments(gerritFile, alerts);
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_COMMENTS, commentStore.size() - before);
+    }
+
+    /**
+     * Move the comments to the spill file once the threshold is reached, so
+     * that the heap does not grow with the review.
+     */
+    protected void spillIfNeeded() {
+        ReviewCommentStore commentStore = reviewInput.getCommentStore();
+        int threshold = gerritConfiguration.getSpillThreshold();
+        if (threshold <= 0 || commentStore.bufferedSize() < threshold) {
+            return;
+        }
+        try {
+            int spilled = commentStore.spill(new File(fileSystem.workDir(), SPILL_FILE_NAME));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] {} comments spilled to disk", spilled);
+            }
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to spill the comments to disk, they are kept in memory", e);
         }
     }
 
-    private void commentIssues(Collection<Issue> issues, List<ReviewFileComment> comments) {
+    /**
+     * Store an empty cache entry for the reviewed files without any issue, so
+     * the next patch sets can skip them too.
+     */
+    protected void cacheFilesWithoutIssues(Collection<InputPath> filesWithIssues) {
+        if (!gerritIssueCache.isEnabled()) {
+            return;
+        }
+        try {
+            assertOrFetchGerritModifiedFiles();
+        } catch (GerritPluginException e) {
+            LOG.error("[GERRIT PLUGIN] Error getting Gerrit datas", e);
+            return;
+        }
+        Set<String> relativePaths = new HashSet<String>();
+        for (InputPath inputPath : filesWithIssues) {
+            relativePaths.add(inputPath.relativePath());
+        }
+        for (String relativePath : gerritModifiedFiles.keySet()) {
+            if (relativePaths.contains(relativePath)) {
+                continue;
+            }
+            InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasRelativePath(relativePath));
+            if (inputFile != null) {
+                gerritIssueCache.put(inputFile, Collections.<ReviewLineComment> emptyList());
+            }
+        }
+    }
+
+    private void commentIssues(Collection<Issue> issues, String gerritFile, ReviewCommentStore commentStore) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("[GERRIT PLUGIN] Found {} issues", issues.size());
         }
         for (Issue issue : issues) {
-            LOG.info("[GERRIT PLUGIN] Issue found: {}", issue.toString());
-
-            if (gerritConfiguration.shouldCommentNewIssuesOnly() && !issue.isNew()) {
-                LOG.info("[GERRIT PLUGIN] Issue is not new and only new one should be commented. Will not push back to Gerrit.");
-            /*} else if (StringUtils.equals(issue.resolution(), Issue.RESOLUTION_FALSE_POSITIVE)) {
-                LOG.info("[GERRIT PLUGIN] Issue marked as false-positive. Will not push back to Gerrit.");*/
-            } else {
-                comments.add(issueToComment(issue));
-            }
+            gerritLogPolicy.info(LOG, GerritLogPolicy.CATEGORY_ISSUE, "[GERRIT PLUGIN] Issue found: {}", issue);
+            // The issue filter already rejected the issues not to comment
+            commentStore.addIssue(gerritFile, issue.line() == null ? 0 : issue.line(), issue.isNew(),
+                    issue.ruleKey(), String.valueOf(issue.severity()), issue.message());
         }
     }
 
@@ -236,7 +460,7 @@ public class GerritPostJob implements PostJob {
                 }
                 continue;
             }
-            LOG.info("[GERRIT PLUGIN] Alert found: {}", level.toString());
+            gerritLogPolicy.info(LOG, GerritLogPolicy.CATEGORY_ALERT, "[GERRIT PLUGIN] Alert found: {}", level);
             comments.add(measureToComment(measure));
         }
     }
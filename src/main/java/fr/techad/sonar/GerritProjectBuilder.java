@@ -1,21 +1,65 @@
 package fr.techad.sonar;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.AnalysisMode;
 import org.sonar.api.batch.bootstrap.ProjectBuilder;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import fr.techad.sonar.gerrit.GerritChangeQuery;
+import fr.techad.sonar.gerrit.GerritChangeSnapshot;
+import fr.techad.sonar.gerrit.GerritChangeSnapshot.ChangeMessage;
 import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritPreflight;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
 import fr.techad.sonar.gerrit.ReviewInput;
+import fr.techad.sonar.gerrit.ReviewUtils;
 
 public class GerritProjectBuilder extends ProjectBuilder {
 	private static final Logger LOG = Loggers.get(GerritProjectBuilder.class);
+	private static final char SEPARATOR = '/';
+	private static final String EXCLUDE_ALL = "**/*";
+	private static final String IN_PROGRESS_MESSAGE = "Sonar review in progress …";
+	// Patch set kinds whose code is the one of the previous patch set
+	private static final List<String> TRIVIAL_KINDS = Arrays.asList("TRIVIAL_REBASE", "NO_CODE_CHANGE",
+			"NO_CHANGE");
+	private final Settings settings;
 	private final GerritConfiguration gerritConfiguration;
 	private final GerritFacade gerritFacade;
+	private final GerritFileClassifier gerritFileClassifier;
+	private final GerritReviewReport gerritReviewReport;
+	private final GerritPreflight gerritPreflight;
+	private final GerritRevisionChecker gerritRevisionChecker;
+	private final GerritChangeQuery gerritChangeQuery;
+	private final AnalysisMode analysisMode;
 
-	public GerritProjectBuilder(GerritConfiguration gerritConfiguration, GerritFacade gerritFacade) {
+	public GerritProjectBuilder(Settings settings, GerritConfiguration gerritConfiguration, GerritFacade gerritFacade,
+			GerritFileClassifier gerritFileClassifier, GerritReviewReport gerritReviewReport,
+			GerritPreflight gerritPreflight, GerritRevisionChecker gerritRevisionChecker,
+			GerritChangeQuery gerritChangeQuery, AnalysisMode analysisMode) {
 		LOG.debug("[GERRIT PLUGIN] Instanciating GerritProjectBuilder");
+		this.settings = settings;
 		this.gerritConfiguration = gerritConfiguration;
 		this.gerritFacade = gerritFacade;
+		this.gerritFileClassifier = gerritFileClassifier;
+		this.gerritReviewReport = gerritReviewReport;
+		this.gerritPreflight = gerritPreflight;
+		this.gerritRevisionChecker = gerritRevisionChecker;
+		this.gerritChangeQuery = gerritChangeQuery;
+		this.analysisMode = analysisMode;
 	}
 
 	@Override
@@ -24,14 +68,253 @@ public class GerritProjectBuilder extends ProjectBuilder {
 			return;
 		}
 
+		long start = gerritReviewReport.start();
+		try {
+			doBuild(context);
+		} finally {
+			gerritReviewReport.stop(GerritReviewReport.PHASE_PROJECT_BUILDER, start);
+		}
+	}
+
+	private void doBuild(Context context) {
+		gerritPreflight.start();
+
+		if (gerritRevisionChecker.isSuperseded()) {
+			skipSupersededRevision(context);
+			return;
+		}
+
+		// A shard neither votes nor posts, the merge of the shards does
+		if (!gerritConfiguration.isSharded()) {
+			if (gerritConfiguration.shouldCopyTrivialRebaseReviews() && copyTrivialRebaseReview(context)) {
+				return;
+			}
+			if (gerritConfiguration.shouldSkipUnanalyzableChanges() && skipUnanalyzableChange(context)) {
+				return;
+			}
+			sendInProgressReview();
+		}
+
+		if (gerritConfiguration.shouldSkipUnchangedModules()) {
+			try {
+				skipUnchangedModules(context.projectReactor().getRoot(), gerritFacade.listFiles().values());
+			} catch (GerritPluginException e) {
+				LOG.error("[GERRIT PLUGIN] Error getting Gerrit datas, all modules will be analyzed", e);
+			}
+		}
+	}
+
+	private void sendInProgressReview() {
 		ReviewInput ri = new ReviewInput();
 		ri.setValueAndLabel(0, gerritConfiguration.getLabel());
-		ri.setMessage("Sonar review in progress …");
-		
+		ri.setMessage(IN_PROGRESS_MESSAGE);
+		ReviewUtils.setServerOptions(ri, gerritConfiguration, true);
+
 		try {
 			gerritFacade.setReview(ri);
 		} catch (GerritPluginException e) {
 			LOG.error("[GERRIT PLUGIN] Sending initial status failed", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * When no file of the change can be analyzed, vote right away and empty the
+	 * reactor so the analysis ends early.
+	 *
+	 * @return true if the review has been sent
+	 */
+	protected boolean skipUnanalyzableChange(Context context) {
+		if (analysisMode.isPublish()) {
+			LOG.debug("[GERRIT PLUGIN] Publish mode, the change will be analyzed");
+			return false;
+		}
+		try {
+			if (gerritFileClassifier.hasAnalyzableFiles(gerritFacade.listFiles().values())) {
+				return false;
+			}
+		} catch (GerritPluginException e) {
+			LOG.error("[GERRIT PLUGIN] Error getting Gerrit datas, the change will be analyzed", e);
+			return false;
+		}
+
+		LOG.info("[GERRIT PLUGIN] No analyzable file in the change. Vote {} for the label {} and skip the analysis.",
+				gerritConfiguration.getVoteNoIssue(), gerritConfiguration.getLabel());
+		ReviewInput ri = new ReviewInput();
+		ri.setValueAndLabel(gerritConfiguration.getVoteNoIssue(), gerritConfiguration.getLabel());
+		ri.setMessage(ReviewUtils.substituteProperties(gerritConfiguration.getMessage(), settings));
+		ReviewUtils.setServerOptions(ri, gerritConfiguration, false);
+		try {
+			gerritFacade.setReview(ri);
+		} catch (GerritPluginException e) {
+			LOG.error("[GERRIT PLUGIN] Error sending review to Gerrit, the change will be analyzed", e);
+			return false;
+		}
+		ReviewHolder.setReviewSent(true);
+
+		emptyReactor(context);
+		return true;
+	}
+
+	/**
+	 * When the patch set is a trivial rebase, or only changes the commit
+	 * message, of a patch set already reviewed, send the vote and the message
+	 * of that review again on the new revision and empty the reactor.
+	 *
+	 * @return true if the review has been sent
+	 */
+	protected boolean copyTrivialRebaseReview(Context context) {
+		if (analysisMode.isPublish()) {
+			return false;
+		}
+		GerritChangeSnapshot snapshot = gerritChangeQuery.snapshot();
+		if (snapshot == null || !snapshot.isCurrent(gerritConfiguration.getRevisionId())
+				|| !TRIVIAL_KINDS.contains(snapshot.getCurrentKind())) {
+			return false;
+		}
+		String tag = StringUtils.trimToNull(gerritConfiguration.getTag());
+		if (tag == null) {
+			LOG.debug("[GERRIT PLUGIN] No review tag, the previous review cannot be found");
+			return false;
+		}
+		int previousPatchSet = NumberUtils.toInt(snapshot.getCurrentPatchSet()) - 1;
+		ChangeMessage previousReview = snapshot.getLastMessage(tag, previousPatchSet);
+		if (previousReview == null || IN_PROGRESS_MESSAGE.equals(previousReview.getSummary())) {
+			LOG.info("[GERRIT PLUGIN] Patch set {} is a {} but patch set {} has no review, the change will be analyzed",
+					new Object[] { snapshot.getCurrentPatchSet(), snapshot.getCurrentKind(), previousPatchSet });
+			return false;
+		}
+
+		String label = gerritConfiguration.getLabel();
+		int vote = previousReview.getVote(label);
+		LOG.info("[GERRIT PLUGIN] Patch set {} is a {}. Copy the vote {} for the label {} of patch set {} "
+				+ "and skip the analysis.", new Object[] { snapshot.getCurrentPatchSet(), snapshot.getCurrentKind(),
+				vote, label, previousPatchSet });
+		ReviewInput ri = new ReviewInput();
+		ri.setValueAndLabel(vote, label);
+		ri.setMessage(previousReview.getSummary());
+		ReviewUtils.setServerOptions(ri, gerritConfiguration, false);
+		try {
+			gerritFacade.setReview(ri);
+		} catch (GerritPluginException e) {
+			LOG.error("[GERRIT PLUGIN] Error sending review to Gerrit, the change will be analyzed", e);
+			return false;
+		}
+		ReviewHolder.setReviewSent(true);
+
+		emptyReactor(context);
+		return true;
+	}
+
+	/**
+	 * A newer patch set has been uploaded: fail, or end the analysis early
+	 * without sending anything, depending on the policy. In publish mode the
+	 * analysis still runs, only the review is not sent.
+	 */
+	protected void skipSupersededRevision(Context context) {
+		if (gerritRevisionChecker.shouldFail()) {
+			throw MessageException.of("[GERRIT PLUGIN] Revision " + gerritConfiguration.getRevisionId()
+					+ " has been superseded by a newer patch set");
+		}
+		if (analysisMode.isPublish()) {
+			LOG.info("[GERRIT PLUGIN] Revision {} has been superseded. Publish mode, the analysis goes on.",
+					gerritConfiguration.getRevisionId());
+			return;
+		}
+		LOG.info("[GERRIT PLUGIN] Revision {} has been superseded. Skip the analysis.",
+				gerritConfiguration.getRevisionId());
+		emptyReactor(context);
+	}
+
+	/**
+	 * Never call it in publish mode: the empty analysis would be published and
+	 * close every issue of the project on the server.
+	 */
+	private void emptyReactor(Context context) {
+		ProjectDefinition root = context.projectReactor().getRoot();
+		for (ProjectDefinition module : new ArrayList<ProjectDefinition>(root.getSubProjects())) {
+			module.remove();
+		}
+		root.setProperty(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY, EXCLUDE_ALL);
+		root.setProperty(CoreProperties.PROJECT_TEST_EXCLUSIONS_PROPERTY, EXCLUDE_ALL);
+	}
+
+	/**
+	 * Remove from the reactor every sub module whose base directory contains
+	 * none of the given Gerrit files. The root project is always kept. Nothing
+	 * is removed in publish mode, the server would close the issues of the
+	 * removed modules.
+	 *
+	 * @param root
+	 *            the root project definition
+	 * @param gerritFiles
+	 *            the Gerrit file names, relative to the root base directory
+	 * @return the number of removed modules
+	 */
+	protected int skipUnchangedModules(@NotNull ProjectDefinition root, @NotNull Collection<String> gerritFiles) {
+		if (analysisMode.isPublish()) {
+			LOG.info("[GERRIT PLUGIN] Publish mode, unchanged modules are analyzed so that their issues are kept");
+			return 0;
+		}
+		int removed = removeUnchangedModules(root.getBaseDir(), root, gerritFiles);
+		if (removed > 0) {
+			LOG.info("[GERRIT PLUGIN] {} unchanged module(s) removed from the analysis", removed);
+		}
+		return removed;
+	}
+
+	private int removeUnchangedModules(File rootDir, ProjectDefinition parent, Collection<String> gerritFiles) {
+		int removed = 0;
+		List<ProjectDefinition> modules = new ArrayList<ProjectDefinition>(parent.getSubProjects());
+
+		for (ProjectDefinition module : modules) {
+			String modulePath = relativeModulePath(rootDir, module.getBaseDir());
+			if (modulePath == null || containsAny(modulePath, gerritFiles)) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("[GERRIT PLUGIN] Module {} ({}) is under review", module.getKey(), modulePath);
+				}
+				removed += removeUnchangedModules(rootDir, module, gerritFiles);
+			} else {
+				LOG.info("[GERRIT PLUGIN] Module {} has no modified file, removing it from the analysis",
+						module.getKey());
+				module.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the module path relative to the root, ending with a separator, an
+	 *         empty string for the root itself, or null if the module is not
+	 *         located under the root.
+	 */
+	protected String relativeModulePath(File rootDir, File moduleDir) {
+		if (rootDir == null || moduleDir == null) {
+			return null;
+		}
+		String rootPath = rootDir.getAbsoluteFile().toPath().normalize().toString().replace(File.separatorChar,
+				SEPARATOR);
+		String modulePath = moduleDir.getAbsoluteFile().toPath().normalize().toString()
+				.replace(File.separatorChar, SEPARATOR);
+
+		if (modulePath.equals(rootPath)) {
+			return "";
+		}
+		if (!rootPath.endsWith(String.valueOf(SEPARATOR))) {
+			rootPath = rootPath + SEPARATOR;
+		}
+		if (!modulePath.startsWith(rootPath)) {
+			return null;
+		}
+		return modulePath.substring(rootPath.length()) + SEPARATOR;
+	}
+
+	private boolean containsAny(String modulePath, Collection<String> gerritFiles) {
+		for (String gerritFile : gerritFiles) {
+			if (gerritFile.startsWith(modulePath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
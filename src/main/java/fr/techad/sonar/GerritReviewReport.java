@@ -0,0 +1,132 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Collect the time spent in each phase of the review and a few counters, to
+ * be logged and written as a JSON report at the end of the analysis.
+ * Durations are measured with {@link System#nanoTime()}.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritReviewReport implements BatchComponent {
+    public static final String PHASE_PROJECT_BUILDER = "projectBuilder";
+    public static final String PHASE_INITIALIZER = "initializer";
+    public static final String PHASE_CHANGE_QUERY = "changeQuery";
+    public static final String PHASE_LIST_FILES = "listFiles";
+    public static final String PHASE_GROUP_ISSUES = "groupIssues";
+    public static final String PHASE_CONVERT_COMMENTS = "convertComments";
+    public static final String PHASE_COMPUTE_VOTE = "computeVote";
+    public static final String PHASE_SERIALIZE = "serialize";
+    public static final String PHASE_SET_REVIEW = "setReview";
+    public static final String PHASE_POST_JOB = "postJob";
+
+    public static final String COUNTER_ISSUES = "issues";
+    public static final String COUNTER_ISSUES_FILTERED = "issuesFiltered";
+    public static final String COUNTER_FILES_MATCHED = "filesMatched";
+    public static final String COUNTER_COMMENTS = "comments";
+    public static final String COUNTER_PAYLOAD_BYTES = "payloadBytes";
+    public static final String COUNTER_REQUESTS = "requests";
+    public static final String COUNTER_LOGS_SUPPRESSED = "logsSuppressed";
+    public static final String COUNTER_COMMENTS_DROPPED = "commentsDropped";
+    public static final String COUNTER_COMMENTS_GROUPED = "commentsGrouped";
+    public static final String COUNTER_CONCURRENCY_LIMIT = "concurrencyLimit";
+    public static final String COUNTER_CONCURRENCY_INCREASES = "concurrencyIncreases";
+    public static final String COUNTER_CONCURRENCY_DECREASES = "concurrencyDecreases";
+
+    public static final String REPORT_FILE_NAME = "gerrit-review-report.json";
+
+    private static final Logger LOG = Loggers.get(GerritReviewReport.class);
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+    public GerritReviewReport() {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritReviewReport");
+    }
+
+    /**
+     * @return a start time to be given back to {@link #stop(String, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public synchronized void stop(@NotNull String phase, long start) {
+        add(phases, phase, System.nanoTime() - start);
+    }
+
+    public synchronized void increment(@NotNull String counter, long delta) {
+        add(counters, counter, delta);
+    }
+
+    /**
+     * Replace the value of a counter, for the values that are not sums.
+     */
+    public synchronized void set(@NotNull String counter, long value) {
+        counters.put(counter, value);
+    }
+
+    public synchronized long getPhaseMillis(@NotNull String phase) {
+        Long nanos = phases.get(phase);
+        return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public synchronized long getCounter(@NotNull String counter) {
+        Long value = counters.get(counter);
+        return value == null ? 0 : value;
+    }
+
+    @NotNull
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder("[GERRIT PLUGIN] Review report:");
+        for (String phase : phases.keySet()) {
+            summary.append(' ').append(phase).append('=').append(getPhaseMillis(phase)).append("ms");
+        }
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            summary.append(' ').append(counter.getKey()).append('=').append(counter.getValue());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Log the summary line and write the JSON report into the given directory.
+     */
+    public void publish(@NotNull File directory) {
+        LOG.info(summary());
+        File reportFile = new File(directory, REPORT_FILE_NAME);
+        try {
+            new ObjectMapper().writeValue(reportFile, toMap());
+            LOG.debug("[GERRIT PLUGIN] Review report written to {}", reportFile);
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to write review report to " + reportFile, e);
+        }
+    }
+
+    @NotNull
+    protected synchronized Map<String, Object> toMap() {
+        Map<String, Long> phasesMillis = new LinkedHashMap<String, Long>();
+        for (String phase : phases.keySet()) {
+            phasesMillis.put(phase, getPhaseMillis(phase));
+        }
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("phasesMs", phasesMillis);
+        report.put("counters", new LinkedHashMap<String, Long>(counters));
+        return report;
+    }
+
+    private static void add(Map<String, Long> values, String key, long delta) {
+        Long value = values.get(key);
+        values.put(key, value == null ? delta : value + delta);
+    }
+}
@@ -0,0 +1,142 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.gerrit.GerritChangeQuery;
+import fr.techad.sonar.gerrit.GerritConcurrencyLimiter;
+import fr.techad.sonar.gerrit.GerritConnector;
+import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritRateLimiter;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
+import fr.techad.sonar.gerrit.GerritTimeBudget;
+import fr.techad.sonar.gerrit.GerritTransportProvider;
+import fr.techad.sonar.gerrit.ReviewFileComment;
+import fr.techad.sonar.gerrit.ReviewInput;
+import fr.techad.sonar.gerrit.ReviewShard;
+import fr.techad.sonar.gerrit.ReviewUtils;
+
+/**
+ * Merge the partial reviews written by the shards of an analysis (see
+ * {@link PropertyKey#GERRIT_SHARD_FILE}) and send them as a single review,
+ * with a single vote computed from the severities of all the shards.
+ *
+ * Run once every shard has ended, with the same Gerrit settings as the
+ * analysis given as system properties or environment variables:
+ *
+ * <pre>
+ * java -DGERRIT_HOST=... -cp ... fr.techad.sonar.GerritShardMerger core.json web.json
+ * </pre>
+ */
+public class GerritShardMerger {
+    private static final Logger LOG = Loggers.get(GerritShardMerger.class);
+    private final Settings settings;
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritFacade gerritFacade;
+    private final GerritRevisionChecker gerritRevisionChecker;
+
+    public GerritShardMerger(Settings settings, GerritConfiguration gerritConfiguration, GerritFacade gerritFacade,
+            GerritRevisionChecker gerritRevisionChecker) {
+        this.settings = settings;
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritFacade = gerritFacade;
+        this.gerritRevisionChecker = gerritRevisionChecker;
+    }
+
+    public static void main(String[] args) throws IOException, GerritPluginException {
+        if (args.length == 0) {
+            System.err.println("Usage: GerritShardMerger <shard file>...");
+            System.exit(1);
+        }
+        Settings settings = new Settings(new PropertyDefinitions(new GerritPlugin().getExtensions().toArray()));
+        settings.addEnvironmentVariables().addSystemProperties();
+        GerritConfiguration gerritConfiguration = new GerritConfiguration(settings);
+        GerritReviewReport gerritReviewReport = new GerritReviewReport();
+        GerritConnector gerritConnector = new GerritConnector(gerritConfiguration,
+                new GerritRateLimiter(gerritConfiguration), new GerritLogPolicy(gerritConfiguration,
+                        gerritReviewReport), new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, gerritReviewReport));
+        GerritTransportProvider gerritTransportProvider = new GerritTransportProvider(gerritConfiguration,
+                gerritConnector);
+        GerritChangeQuery gerritChangeQuery = new GerritChangeQuery(gerritConfiguration, gerritTransportProvider,
+                gerritReviewReport);
+        GerritShardMerger merger = new GerritShardMerger(settings, gerritConfiguration, new GerritFacade(
+                gerritTransportProvider, gerritConfiguration, gerritReviewReport, gerritChangeQuery),
+                new GerritRevisionChecker(gerritConfiguration, gerritTransportProvider, gerritChangeQuery));
+
+        List<File> files = new ArrayList<File>();
+        for (String arg : args) {
+            files.add(new File(arg));
+        }
+        merger.send(merger.merge(files));
+    }
+
+    /**
+     * Merge the shards into one review and compute its vote.
+     *
+     * @throws GerritPluginException
+     *             if the shards are not about the configured revision
+     */
+    @NotNull
+    public ReviewInput merge(@NotNull List<File> shardFiles) throws IOException, GerritPluginException {
+        ReviewInput reviewInput = new ReviewInput();
+        Map<String, Integer> severityCounts = new LinkedHashMap<String, Integer>();
+        Set<String> shards = new HashSet<String>();
+        for (File shardFile : shardFiles) {
+            ReviewShard reviewShard = ReviewShard.read(shardFile);
+            if (!StringUtils.equals(reviewShard.getChangeId(), gerritConfiguration.getChangeId())
+                    || !StringUtils.equals(reviewShard.getRevisionId(), gerritConfiguration.getRevisionId())) {
+                throw new GerritPluginException("Shard " + reviewShard.getShard() + " is about change "
+                        + reviewShard.getChangeId() + " revision " + reviewShard.getRevisionId() + ", not "
+                        + gerritConfiguration.getChangeId() + " revision " + gerritConfiguration.getRevisionId());
+            }
+            if (!shards.add(reviewShard.getShard())) {
+                LOG.warn("[GERRIT PLUGIN] Shard {} given twice, {} ignored", reviewShard.getShard(), shardFile);
+                continue;
+            }
+            LOG.info("[GERRIT PLUGIN] Merging {}", reviewShard);
+            for (Map.Entry<String, List<ReviewFileComment>> file : reviewShard.getComments().entrySet()) {
+                reviewInput.addComments(file.getKey(), file.getValue());
+            }
+            for (Map.Entry<String, Integer> count : reviewShard.getSeverityCounts().entrySet()) {
+                Integer total = severityCounts.get(count.getKey());
+                severityCounts.put(count.getKey(), total == null ? count.getValue() : total + count.getValue());
+            }
+        }
+
+        int maxLevel = -1;
+        for (String severity : severityCounts.keySet()) {
+            maxLevel = Math.max(maxLevel, ReviewUtils.thresholdToValue(severity));
+        }
+        LOG.info("[GERRIT PLUGIN] {} shards merged: {} comments, severities {}", shards.size(), reviewInput
+                .getCommentStore().size(), severityCounts);
+
+        reviewInput.setMessage(ReviewUtils.substituteProperties(gerritConfiguration.getMessage(), settings));
+        ReviewUtils.setServerOptions(reviewInput, gerritConfiguration, false);
+        reviewInput.setValueAndLabel(ReviewUtils.vote(gerritConfiguration, ReviewUtils.isEmpty(reviewInput), maxLevel),
+                gerritConfiguration.getLabel());
+        return reviewInput;
+    }
+
+    public void send(@NotNull ReviewInput reviewInput) throws GerritPluginException {
+        if (gerritRevisionChecker.isSuperseded()) {
+            LOG.info("[GERRIT PLUGIN] Review not sent: revision {} has been superseded",
+                    gerritConfiguration.getRevisionId());
+            return;
+        }
+        gerritFacade.setReview(reviewInput);
+    }
+}
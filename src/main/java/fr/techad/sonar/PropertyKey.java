@@ -18,9 +18,46 @@ public final class PropertyKey {
     public static final String GERRIT_THRESHOLD = "GERRIT_THRESHOLD";
     public static final String GERRIT_FORCE_BRANCH = "GERRIT_FORCE_BRANCH";
     public static final String GERRIT_COMMENT_NEW_ISSUES_ONLY = "GERRIT_COMMENT_NEW_ISSUES_ONLY";
+    public static final String GERRIT_COMMENT_MIN_SEVERITY = "GERRIT_COMMENT_MIN_SEVERITY";
+    public static final String GERRIT_COMMENT_RULE_INCLUSIONS = "GERRIT_COMMENT_RULE_INCLUSIONS";
+    public static final String GERRIT_COMMENT_RULE_EXCLUSIONS = "GERRIT_COMMENT_RULE_EXCLUSIONS";
+    public static final String GERRIT_COMMENT_PATH_INCLUSIONS = "GERRIT_COMMENT_PATH_INCLUSIONS";
+    public static final String GERRIT_COMMENT_PATH_EXCLUSIONS = "GERRIT_COMMENT_PATH_EXCLUSIONS";
     public static final String GERRIT_VOTE_NO_ISSUE = "GERRIT_VOTE_NO_ISSUE";
     public static final String GERRIT_VOTE_ISSUE_BELOW_THRESHOLD = "GERRIT_VOTE_ISSUE_BELOW_THRESHOLD";
     public static final String GERRIT_VOTE_ISSUE_ABOVE_THRESHOLD = "GERRIT_VOTE_ISSUE_ABOVE_THRESHOLD";
+    public static final String GERRIT_NOTIFY = "GERRIT_NOTIFY";
+    public static final String GERRIT_NOTIFY_IN_PROGRESS = "GERRIT_NOTIFY_IN_PROGRESS";
+    public static final String GERRIT_NOTIFY_DETAILS = "GERRIT_NOTIFY_DETAILS";
+    public static final String GERRIT_OMIT_DUPLICATE_COMMENTS = "GERRIT_OMIT_DUPLICATE_COMMENTS";
+    public static final String GERRIT_GROUP_ISSUES = "GERRIT_GROUP_ISSUES";
+    public static final String GERRIT_TAG = "GERRIT_TAG";
+    public static final String GERRIT_SERVER_POSTING = "GERRIT_SERVER_POSTING";
+    public static final String GERRIT_POSTING_TOKEN = "GERRIT_POSTING_TOKEN.secured";
+    public static final String GERRIT_PREFLIGHT_MODE = "GERRIT_PREFLIGHT_MODE";
+    public static final String GERRIT_STALE_REVISION_POLICY = "GERRIT_STALE_REVISION_POLICY";
+    public static final String GERRIT_TRANSPORT = "GERRIT_TRANSPORT";
+    public static final String GERRIT_CHANGE_QUERY = "GERRIT_CHANGE_QUERY";
+    public static final String GERRIT_FILE_LIST_SOURCE = "GERRIT_FILE_LIST_SOURCE";
+    public static final String GERRIT_GIT_BASE_COMMIT = "GERRIT_GIT_BASE_COMMIT";
+    public static final String GERRIT_READ_REPLICAS = "GERRIT_READ_REPLICAS";
+    public static final String GERRIT_READ_HEDGING = "GERRIT_READ_HEDGING";
+    public static final String GERRIT_REQUESTS_PER_MINUTE = "GERRIT_REQUESTS_PER_MINUTE";
+    public static final String GERRIT_MAX_CONCURRENT_REQUESTS = "GERRIT_MAX_CONCURRENT_REQUESTS";
+    public static final String GERRIT_ADAPTIVE_CONCURRENCY = "GERRIT_ADAPTIVE_CONCURRENCY";
+    public static final String GERRIT_RATE_LIMIT_STATE_FILE = "GERRIT_RATE_LIMIT_STATE_FILE";
+    public static final String GERRIT_TIME_BUDGET = "GERRIT_TIME_BUDGET";
+    public static final String GERRIT_DEGRADED_MAX_COMMENTS = "GERRIT_DEGRADED_MAX_COMMENTS";
+    public static final String GERRIT_SPILL_THRESHOLD = "GERRIT_SPILL_THRESHOLD";
+    public static final String GERRIT_LOG_LIMIT = "GERRIT_LOG_LIMIT";
+    public static final String GERRIT_LOG_SAMPLE_RATE = "GERRIT_LOG_SAMPLE_RATE";
+    public static final String GERRIT_LOG_PAYLOAD_MAX_LENGTH = "GERRIT_LOG_PAYLOAD_MAX_LENGTH";
+    public static final String GERRIT_SKIP_UNCHANGED_MODULES = "GERRIT_SKIP_UNCHANGED_MODULES";
+    public static final String GERRIT_SKIP_UNANALYZABLE_CHANGES = "GERRIT_SKIP_UNANALYZABLE_CHANGES";
+    public static final String GERRIT_COPY_TRIVIAL_REBASE_REVIEWS = "GERRIT_COPY_TRIVIAL_REBASE_REVIEWS";
+    public static final String GERRIT_ISSUE_CACHE_DIR = "GERRIT_ISSUE_CACHE_DIR";
+    public static final String GERRIT_ISSUE_CACHE_SKIP_ANALYSIS = "GERRIT_ISSUE_CACHE_SKIP_ANALYSIS";
+    public static final String GERRIT_SHARD_FILE = "GERRIT_SHARD_FILE";
     
     private PropertyKey() {
     }
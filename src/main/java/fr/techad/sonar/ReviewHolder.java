@@ -3,12 +3,28 @@ package fr.techad.sonar;
 import fr.techad.sonar.gerrit.ReviewInput;
 
 public class ReviewHolder {
-    private static ReviewInput reviewInput = new ReviewInput();
+    private static ReviewInput reviewInput;
+    private static boolean reviewSent;
 
     private ReviewHolder() {
     }
 
-    public static ReviewInput getReviewInput() {
+    /**
+     * The review is only created when first needed, so builds without a
+     * review do not load it.
+     */
+    public static synchronized ReviewInput getReviewInput() {
+        if (reviewInput == null) {
+            reviewInput = new ReviewInput();
+        }
         return reviewInput;
     }
+
+    public static boolean isReviewSent() {
+        return reviewSent;
+    }
+
+    public static void setReviewSent(boolean sent) {
+        reviewSent = sent;
+    }
 }
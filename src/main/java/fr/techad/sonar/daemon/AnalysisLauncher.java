@@ -0,0 +1,14 @@
+package fr.techad.sonar.daemon;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Runs the analysis of a patch set. Implementations must stop as soon as
+ * their thread is interrupted, which is how superseded analyses are
+ * cancelled.
+ */
+public interface AnalysisLauncher {
+    void analyse(@NotNull PatchSetEvent event) throws IOException, InterruptedException;
+}
@@ -0,0 +1,53 @@
+package fr.techad.sonar.daemon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.PropertyKey;
+
+/**
+ * Run an external command, e.g. a scanner wrapper script, for each patch set.
+ * The patch set is given through the same environment variables as the
+ * Gerrit Trigger plugin sets, so existing job scripts can be reused as is.
+ */
+public class CommandAnalysisLauncher implements AnalysisLauncher {
+    public static final String GERRIT_CHANGE_NUMBER = "GERRIT_CHANGE_NUMBER";
+    public static final String GERRIT_PATCHSET_NUMBER = "GERRIT_PATCHSET_NUMBER";
+
+    private static final Logger LOG = Loggers.get(CommandAnalysisLauncher.class);
+    private final List<String> command;
+
+    public CommandAnalysisLauncher(@NotNull List<String> command) {
+        this.command = new ArrayList<String>(command);
+    }
+
+    @Override
+    public void analyse(@NotNull PatchSetEvent event) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command).inheritIO();
+        Map<String, String> environment = processBuilder.environment();
+        environment.put(PropertyKey.GERRIT_PROJECT, event.getProject());
+        environment.put(PropertyKey.GERRIT_BRANCH, event.getBranch());
+        environment.put(PropertyKey.GERRIT_CHANGE_ID, event.getChangeId());
+        environment.put(PropertyKey.GERRIT_REVISION_ID, event.getRevision());
+        environment.put(GERRIT_CHANGE_NUMBER, event.getChangeNumber());
+        environment.put(GERRIT_PATCHSET_NUMBER, String.valueOf(event.getPatchSetNumber()));
+
+        Process process = processBuilder.start();
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Analysis of " + event + " exited with code " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            LOG.info("[GERRIT PLUGIN] Stopping analysis of {}", event);
+            process.destroy();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package fr.techad.sonar.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Long-running service analysing the patch sets as they are uploaded. It
+ * reads Gerrit <code>stream-events</code> from its standard input, one JSON
+ * event per line, so it is typically started as
+ *
+ * <pre>
+ * ssh -p 29418 sonar@gerrit gerrit stream-events | java -cp ... fr.techad.sonar.daemon.GerritReviewDaemon 4 ./analyse.sh
+ * </pre>
+ *
+ * A file of recorded events can be given instead for testing. The first
+ * argument is the number of workers, the others the command run for each
+ * patch set (see {@link CommandAnalysisLauncher}).
+ */
+public class GerritReviewDaemon {
+    private static final Logger LOG = Loggers.get(GerritReviewDaemon.class);
+    private static final long SHUTDOWN_TIMEOUT_MINUTES = 60;
+    private final ReviewScheduler reviewScheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public GerritReviewDaemon(@NotNull ReviewScheduler reviewScheduler) {
+        this.reviewScheduler = reviewScheduler;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || !StringUtils.isNumeric(args[0])) {
+            System.err.println("Usage: GerritReviewDaemon <workers> <command> [arguments...]");
+            System.exit(1);
+        }
+        ReviewScheduler reviewScheduler = new ReviewScheduler(Integer.parseInt(args[0]),
+                new CommandAnalysisLauncher(Arrays.asList(args).subList(1, args.length)));
+        new GerritReviewDaemon(reviewScheduler).run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        reviewScheduler.shutdown(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Submit the events until the end of the stream.
+     */
+    public void run(@NotNull Reader events) throws IOException {
+        BufferedReader reader = new BufferedReader(events);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            try {
+                PatchSetEvent event = PatchSetEvent.parse(objectMapper, line);
+                if (event != null) {
+                    reviewScheduler.submit(event);
+                }
+            } catch (IOException e) {
+                LOG.warn("[GERRIT PLUGIN] Ignoring invalid event " + line, e);
+            }
+        }
+        LOG.info("[GERRIT PLUGIN] End of the event stream, {} analyses still queued",
+                reviewScheduler.getPendingCount());
+    }
+}
@@ -0,0 +1,116 @@
+package fr.techad.sonar.daemon;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Change event read from Gerrit <code>stream-events</code>. Only the events
+ * starting or ending the review of a change are kept.
+ */
+public class PatchSetEvent {
+    public static final String PATCHSET_CREATED = "patchset-created";
+    public static final String CHANGE_ABANDONED = "change-abandoned";
+    public static final String CHANGE_MERGED = "change-merged";
+    public static final String CHANGE_DELETED = "change-deleted";
+
+    private final String type;
+    private final String project;
+    private final String branch;
+    private final String changeId;
+    private final String changeNumber;
+    private final int patchSetNumber;
+    private final String revision;
+
+    public PatchSetEvent(@NotNull String type, @NotNull String project, @NotNull String branch,
+            @NotNull String changeId, String changeNumber, int patchSetNumber, String revision) {
+        this.type = type;
+        this.project = project;
+        this.branch = branch;
+        this.changeId = changeId;
+        this.changeNumber = changeNumber;
+        this.patchSetNumber = patchSetNumber;
+        this.revision = revision;
+    }
+
+    /**
+     * @return the event, or null if the line is not a change event handled by
+     *         the daemon
+     * @throws IOException
+     *             if the line is not valid JSON
+     */
+    @Nullable
+    public static PatchSetEvent parse(@NotNull ObjectMapper objectMapper, @NotNull String line) throws IOException {
+        JsonNode event = objectMapper.readTree(line);
+        if (event == null) {
+            return null;
+        }
+        String type = event.path("type").asText();
+        if (!PATCHSET_CREATED.equals(type) && !CHANGE_ABANDONED.equals(type) && !CHANGE_MERGED.equals(type)
+                && !CHANGE_DELETED.equals(type)) {
+            return null;
+        }
+        JsonNode change = event.path("change");
+        JsonNode patchSet = event.path("patchSet");
+        if (!change.hasNonNull("id")) {
+            return null;
+        }
+        return new PatchSetEvent(type, change.path("project").asText(), change.path("branch").asText(),
+                change.path("id").asText(), change.path("number").asText(), patchSet.path("number").asInt(),
+                patchSet.path("revision").asText());
+    }
+
+    public boolean isPatchSetCreated() {
+        return PATCHSET_CREATED.equals(type);
+    }
+
+    /**
+     * @return the change triplet, as used in the Gerrit REST API
+     */
+    @NotNull
+    public String getChangeKey() {
+        return project + "~" + branch + "~" + changeId;
+    }
+
+    @NotNull
+    public String getType() {
+        return type;
+    }
+
+    @NotNull
+    public String getProject() {
+        return project;
+    }
+
+    @NotNull
+    public String getBranch() {
+        return branch;
+    }
+
+    @NotNull
+    public String getChangeId() {
+        return changeId;
+    }
+
+    public String getChangeNumber() {
+        return changeNumber;
+    }
+
+    public int getPatchSetNumber() {
+        return patchSetNumber;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    @Override
+    public String toString() {
+        return "PatchSetEvent [type=" + type + ", change=" + getChangeKey() + ", patchSet=" + patchSetNumber
+                + ", revision=" + revision + "]";
+    }
+}
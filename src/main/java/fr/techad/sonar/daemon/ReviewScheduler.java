@@ -0,0 +1,181 @@
+package fr.techad.sonar.daemon;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Queue the analyses of the patch sets on a pool of workers, with at most one
+ * analysis of a change at a time.
+ *
+ * Only the latest patch set of a change is kept in the queue: an older patch
+ * set still waiting is replaced, and a running analysis of an older patch set
+ * is cancelled. Abandoned, merged and deleted changes are dropped.
+ */
+public class ReviewScheduler {
+    private static final Logger LOG = Loggers.get(ReviewScheduler.class);
+    private final ExecutorService executor;
+    private final AnalysisLauncher analysisLauncher;
+    private final Map<String, PatchSetEvent> pending = new HashMap<String, PatchSetEvent>();
+    private final Map<String, Running> running = new HashMap<String, Running>();
+    private int completed;
+    private int failed;
+    private int cancelled;
+    private int deduplicated;
+
+    public ReviewScheduler(int workers, @NotNull AnalysisLauncher analysisLauncher) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workers), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "gerrit-review-" + threadCount.incrementAndGet());
+            }
+        });
+        this.analysisLauncher = analysisLauncher;
+    }
+
+    public synchronized void submit(@NotNull PatchSetEvent event) {
+        String changeKey = event.getChangeKey();
+        if (!event.isPatchSetCreated()) {
+            LOG.info("[GERRIT PLUGIN] {}: dropping the analyses of {}", event.getType(), changeKey);
+            if (pending.remove(changeKey) != null) {
+                deduplicated++;
+            }
+            cancelRunning(changeKey, Integer.MAX_VALUE);
+            return;
+        }
+
+        Running current = running.get(changeKey);
+        PatchSetEvent queued = pending.get(changeKey);
+        if ((current != null && current.event != null
+                && current.event.getPatchSetNumber() >= event.getPatchSetNumber())
+                || (queued != null && queued.getPatchSetNumber() >= event.getPatchSetNumber())) {
+            LOG.info("[GERRIT PLUGIN] Ignoring {}, a newer patch set is already queued", event);
+            deduplicated++;
+            return;
+        }
+        if (queued != null) {
+            LOG.info("[GERRIT PLUGIN] {} supersedes queued patch set {}", event, queued.getPatchSetNumber());
+            deduplicated++;
+        }
+        pending.put(changeKey, event);
+        cancelRunning(changeKey, event.getPatchSetNumber());
+        if (current == null) {
+            schedule(changeKey);
+        }
+    }
+
+    /**
+     * Wait for the queued and running analyses, then stop the workers.
+     *
+     * @return true if every analysis ended in time
+     */
+    public boolean shutdown(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (this) {
+            while (!running.isEmpty() && System.currentTimeMillis() < deadline) {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+        executor.shutdown();
+        return executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized int getCompletedCount() {
+        return completed;
+    }
+
+    public synchronized int getFailedCount() {
+        return failed;
+    }
+
+    public synchronized int getCancelledCount() {
+        return cancelled;
+    }
+
+    public synchronized int getDeduplicatedCount() {
+        return deduplicated;
+    }
+
+    private void cancelRunning(String changeKey, int newerPatchSet) {
+        Running current = running.get(changeKey);
+        if (current != null && current.event != null && current.event.getPatchSetNumber() < newerPatchSet
+                && !current.cancelled) {
+            LOG.info("[GERRIT PLUGIN] Cancelling superseded analysis of {}", current.event);
+            current.cancelled = true;
+            current.future.cancel(true);
+            cancelled++;
+        }
+    }
+
+    /**
+     * The patch set to analyse is only taken from the queue when a worker
+     * starts, so the latest one is analysed.
+     */
+    private void schedule(final String changeKey) {
+        final Running current = new Running();
+        running.put(changeKey, current);
+        current.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                analyse(changeKey, current);
+            }
+        });
+    }
+
+    private void analyse(String changeKey, Running current) {
+        PatchSetEvent event;
+        synchronized (this) {
+            event = pending.remove(changeKey);
+            current.event = event;
+        }
+        boolean success = false;
+        try {
+            if (event != null) {
+                LOG.info("[GERRIT PLUGIN] Analysing {}", event);
+                analysisLauncher.analyse(event);
+                success = true;
+            }
+        } catch (InterruptedException e) {
+            LOG.info("[GERRIT PLUGIN] Analysis of {} interrupted", event);
+        } catch (Exception e) {
+            LOG.error("[GERRIT PLUGIN] Analysis of " + event + " failed", e);
+        } finally {
+            finish(changeKey, current, success);
+        }
+    }
+
+    private synchronized void finish(String changeKey, Running current, boolean success) {
+        running.remove(changeKey);
+        if (current.event != null && !current.cancelled) {
+            if (success) {
+                completed++;
+            } else {
+                failed++;
+            }
+        }
+        if (pending.containsKey(changeKey) && !executor.isShutdown()) {
+            schedule(changeKey);
+        }
+        notifyAll();
+    }
+
+    private static class Running {
+        PatchSetEvent event;
+        Future<?> future;
+        boolean cancelled;
+    }
+}
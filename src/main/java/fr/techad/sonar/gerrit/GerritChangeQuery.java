@@ -0,0 +1,69 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.Nullable;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritReviewReport;
+
+/**
+ * One query for the change, its current revision and files, its labels and
+ * its messages, sent at most once per analysis. The file listing, the
+ * preflight checks, the revision check and the copy of trivial rebase reviews
+ * read its snapshot instead of sending their own request, and fall back to
+ * their own request when it cannot answer them.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritChangeQuery implements BatchComponent {
+    private static final Logger LOG = Loggers.get(GerritChangeQuery.class);
+
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritTransportProvider gerritTransportProvider;
+    private final GerritReviewReport gerritReviewReport;
+    private boolean queried;
+    private GerritChangeSnapshot snapshot;
+
+    public GerritChangeQuery(GerritConfiguration gerritConfiguration, GerritTransportProvider gerritTransportProvider,
+            GerritReviewReport gerritReviewReport) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritChangeQuery");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritTransportProvider = gerritTransportProvider;
+        this.gerritReviewReport = gerritReviewReport;
+    }
+
+    public boolean isEnabled() {
+        return gerritConfiguration.shouldQueryChange();
+    }
+
+    /**
+     * @return the change as it was on the first call, null if the query is
+     *         disabled or failed
+     */
+    @Nullable
+    public synchronized GerritChangeSnapshot snapshot() {
+        if (!isEnabled() || queried) {
+            return snapshot;
+        }
+        queried = true;
+        long start = gerritReviewReport.start();
+        try {
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_REQUESTS, 1);
+            snapshot = GerritChangeSnapshot.parse(gerritTransportProvider.transport().get(
+                    GerritConnector.changeSnapshotPath(gerritConfiguration)));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Change snapshot: {}", snapshot);
+            }
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to query the change, falling back to separate requests: {}",
+                    e.getMessage());
+        } finally {
+            gerritReviewReport.stop(GerritReviewReport.PHASE_CHANGE_QUERY, start);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,307 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * What an analysis needs to know about its change, read once from the answer
+ * of the consolidated change query: the current revision with its patch set
+ * number, kind and files, the labels permitted to the account, the comment
+ * counts and the tagged messages. Immutable, so it can be shared by every step of the
+ * analysis.
+ */
+public class GerritChangeSnapshot {
+    public static final int UNKNOWN_COUNT = -1;
+
+    private static final String RESPONSE_PREFIX = ")]}'";
+    private static final String CURRENT = "current";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Pattern COMMENT_COUNT = Pattern.compile("^\\(\\d+ comments?\\)\\s*");
+
+    private final String currentRevision;
+    private final String currentPatchSet;
+    private final String currentKind;
+    private final Set<String> currentFiles;
+    private final Map<String, List<String>> permittedLabels;
+    private final int totalCommentCount;
+    private final int unresolvedCommentCount;
+    private final List<ChangeMessage> messages;
+
+    private GerritChangeSnapshot(Builder builder) {
+        this.currentRevision = builder.currentRevision;
+        this.currentPatchSet = builder.patchSets.get(builder.currentRevision);
+        this.currentKind = builder.kinds.get(builder.currentRevision);
+        Set<String> files = builder.files.get(builder.currentRevision);
+        this.currentFiles = files == null ? null : Collections.unmodifiableSet(files);
+        this.permittedLabels = Collections.unmodifiableMap(builder.permittedLabels);
+        this.totalCommentCount = builder.totalCommentCount;
+        this.unresolvedCommentCount = builder.unresolvedCommentCount;
+        this.messages = Collections.unmodifiableList(builder.messages);
+    }
+
+    /**
+     * Read the change field by field, skipping whatever the analysis does not
+     * use, e.g. the detailed votes of every label.
+     */
+    @NotNull
+    public static GerritChangeSnapshot parse(@NotNull String response) throws IOException {
+        Builder builder = new Builder();
+        try (JsonParser parser = JSON_FACTORY.createParser(StringUtils.replaceOnce(response, RESPONSE_PREFIX, ""))) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("current_revision".equals(field)) {
+                    builder.currentRevision = parser.getValueAsString();
+                } else if ("total_comment_count".equals(field)) {
+                    builder.totalCommentCount = parser.getValueAsInt(UNKNOWN_COUNT);
+                } else if ("unresolved_comment_count".equals(field)) {
+                    builder.unresolvedCommentCount = parser.getValueAsInt(UNKNOWN_COUNT);
+                } else if ("revisions".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseRevisions(parser, builder);
+                } else if ("permitted_labels".equals(field) && value == JsonToken.START_OBJECT) {
+                    parsePermittedLabels(parser, builder);
+                } else if ("messages".equals(field) && value == JsonToken.START_ARRAY) {
+                    parseMessages(parser, builder);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (builder.currentRevision == null) {
+            throw new IOException("The change has no current revision");
+        }
+        return new GerritChangeSnapshot(builder);
+    }
+
+    private static void parseRevisions(JsonParser parser, Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String revision = parser.getCurrentName();
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("_number".equals(field)) {
+                    builder.patchSets.put(revision, parser.getValueAsString());
+                } else if ("kind".equals(field)) {
+                    builder.kinds.put(revision, parser.getValueAsString());
+                } else if ("files".equals(field) && value == JsonToken.START_OBJECT) {
+                    Set<String> files = new LinkedHashSet<String>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        files.add(parser.getCurrentName());
+                        parser.nextToken();
+                        parser.skipChildren();
+                    }
+                    builder.files.put(revision, files);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void parsePermittedLabels(JsonParser parser, Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String label = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            List<String> values = new ArrayList<String>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                values.add(parser.getValueAsString());
+            }
+            builder.permittedLabels.put(label, Collections.unmodifiableList(values));
+        }
+    }
+
+    /**
+     * Keep the messages posted with a tag, the other ones are written by people
+     * and never read back.
+     */
+    private static void parseMessages(JsonParser parser, Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String tag = null;
+            String message = null;
+            int patchSet = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("tag".equals(field)) {
+                    tag = parser.getValueAsString();
+                } else if ("message".equals(field)) {
+                    message = parser.getValueAsString();
+                } else if ("_revision_number".equals(field)) {
+                    patchSet = parser.getValueAsInt();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (tag != null) {
+                builder.messages.add(new ChangeMessage(tag, patchSet, StringUtils.defaultString(message)));
+            }
+        }
+    }
+
+    private static void expect(JsonToken token, JsonToken expected, JsonParser parser) throws IOException {
+        if (token != expected) {
+            throw new IOException("Unexpected " + token + " at " + parser.getCurrentLocation() + " in the change");
+        }
+    }
+
+    /**
+     * @return true if the revision, given as a commit, a patch set number or
+     *         <code>current</code>, is the current revision of the change
+     */
+    public boolean isCurrent(@Nullable String revisionId) {
+        return revisionId != null && (CURRENT.equalsIgnoreCase(revisionId)
+                || revisionId.equalsIgnoreCase(currentRevision) || revisionId.equals(currentPatchSet));
+    }
+
+    @NotNull
+    public String getCurrentRevision() {
+        return currentRevision;
+    }
+
+    @Nullable
+    public String getCurrentPatchSet() {
+        return currentPatchSet;
+    }
+
+    /**
+     * @return the kind of the current patch set, e.g. <code>REWORK</code> or
+     *         <code>TRIVIAL_REBASE</code>, null if Gerrit did not tell
+     */
+    @Nullable
+    public String getCurrentKind() {
+        return currentKind;
+    }
+
+    /**
+     * @return the files of the current revision, null if Gerrit did not list
+     *         them
+     */
+    @Nullable
+    public Set<String> getCurrentFiles() {
+        return currentFiles;
+    }
+
+    /**
+     * @return the values of the label permitted to the account, null if it
+     *         cannot vote on the label
+     */
+    @Nullable
+    public List<String> getPermittedValues(@NotNull String label) {
+        return permittedLabels.get(label);
+    }
+
+    public int getTotalCommentCount() {
+        return totalCommentCount;
+    }
+
+    public int getUnresolvedCommentCount() {
+        return unresolvedCommentCount;
+    }
+
+    /**
+     * @return the last message posted with the tag on the patch set, null if
+     *         there is none or Gerrit did not list the messages
+     */
+    @Nullable
+    public ChangeMessage getLastMessage(@NotNull String tag, int patchSet) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            ChangeMessage message = messages.get(i);
+            if (message.patchSet == patchSet && tag.equals(message.tag)) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "GerritChangeSnapshot [currentRevision=" + currentRevision + ", currentPatchSet=" + currentPatchSet
+                + ", currentKind=" + currentKind + ", currentFiles="
+                + (currentFiles == null ? null : currentFiles.size()) + ", permittedLabels=" + permittedLabels
+                + ", totalCommentCount=" + totalCommentCount + ", unresolvedCommentCount=" + unresolvedCommentCount
+                + ", messages=" + messages.size() + "]";
+    }
+
+    /**
+     * A message of the change, as written by Gerrit: a first line with the
+     * patch set and the votes, e.g. <code>Patch Set 3: Code-Review+1</code>,
+     * the number of inline comments, then the message of the review.
+     */
+    public static class ChangeMessage {
+        private final String tag;
+        private final int patchSet;
+        private final String message;
+
+        ChangeMessage(@NotNull String tag, int patchSet, @NotNull String message) {
+            this.tag = tag;
+            this.patchSet = patchSet;
+            this.message = message;
+        }
+
+        @NotNull
+        public String getTag() {
+            return tag;
+        }
+
+        public int getPatchSet() {
+            return patchSet;
+        }
+
+        /**
+         * @return the vote on the label given with the message, 0 if there was
+         *         none or it was removed
+         */
+        public int getVote(@NotNull String label) {
+            Pattern vote = Pattern.compile("(?:^|\\s)" + Pattern.quote(label) + "([+-]\\d+)(?=\\s|$)");
+            Matcher matcher = vote.matcher(StringUtils.substringBefore(message, "\n"));
+            return matcher.find() ? Integer.parseInt(StringUtils.removeStart(matcher.group(1), "+")) : 0;
+        }
+
+        /**
+         * @return the message of the review, without the lines added by
+         *         Gerrit
+         */
+        @NotNull
+        public String getSummary() {
+            String summary = StringUtils.substringAfter(message, "\n").trim();
+            return COMMENT_COUNT.matcher(summary).replaceFirst("");
+        }
+
+        @Override
+        public String toString() {
+            return "ChangeMessage [tag=" + tag + ", patchSet=" + patchSet + "]";
+        }
+    }
+
+    private static class Builder {
+        String currentRevision;
+        final Map<String, String> patchSets = new HashMap<String, String>();
+        final Map<String, String> kinds = new HashMap<String, String>();
+        final Map<String, Set<String>> files = new HashMap<String, Set<String>>();
+        final Map<String, List<String>> permittedLabels = new HashMap<String, List<String>>();
+        int totalCommentCount = UNKNOWN_COUNT;
+        int unresolvedCommentCount = UNKNOWN_COUNT;
+        final List<ChangeMessage> messages = new ArrayList<ChangeMessage>();
+    }
+}
@@ -0,0 +1,170 @@
+package fr.techad.sonar.gerrit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritReviewReport;
+
+/**
+ * Adaptive limit of the Gerrit requests in flight, with additive increase
+ * and multiplicative decrease. The limit grows by about one request per round
+ * trip while it is used and the latency stays close to its best observed
+ * value. It is halved when Gerrit answers 429 or 503, when a request fails,
+ * or when the smoothed latency exceeds twice the best one. Decreases are at
+ * most one per smoothed round trip, so one burst of errors only halves the
+ * limit once.
+ *
+ * The configured value is the highest limit, 0 disables the limiter. The
+ * last limit and the number of adjustments are counted in the review report.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritConcurrencyLimiter implements BatchComponent {
+    public static final int STATUS_FAILED = 0;
+    public static final int STATUS_CANCELLED = -1;
+    public static final long NO_TICKET = Long.MIN_VALUE;
+
+    private static final Logger LOG = Loggers.get(GerritConcurrencyLimiter.class);
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final double INITIAL_LIMIT = 2;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.2;
+    private static final double BASELINE_DRIFT = 1.01;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 60L * 1000;
+
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritReviewReport gerritReviewReport;
+    private double limit;
+    private int inFlight;
+    private double smoothedLatency;
+    private double baselineLatency;
+    private long lastDecrease = NO_TICKET;
+
+    public GerritConcurrencyLimiter(GerritConfiguration gerritConfiguration, GerritReviewReport gerritReviewReport) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritConcurrencyLimiter");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritReviewReport = gerritReviewReport;
+    }
+
+    public boolean isEnabled() {
+        return gerritConfiguration.getAdaptiveConcurrency() > 0;
+    }
+
+    /**
+     * Wait for the number of requests in flight to fall below the limit.
+     * After a long wait, the request is let through anyway.
+     *
+     * @param maxWaitMillis
+     *            the longest wait, 0 for the default one
+     * @return the ticket to give back to {@link #release(long, int)}
+     */
+    public synchronized long acquire(long maxWaitMillis) {
+        if (!isEnabled()) {
+            return NO_TICKET;
+        }
+        if (limit == 0) {
+            limit = Math.min(INITIAL_LIMIT, maxLimit());
+            gerritReviewReport.set(GerritReviewReport.COUNTER_CONCURRENCY_LIMIT, (int) limit);
+        }
+        long maxWait = maxWaitMillis > 0 ? maxWaitMillis : DEFAULT_MAX_WAIT_MILLIS;
+        long deadline = nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+        try {
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - nanoTime();
+                if (remaining <= 0) {
+                    LOG.warn("[GERRIT PLUGIN] Concurrency limiter: waited more than {} ms, "
+                            + "sending the request anyway", maxWait);
+                    break;
+                }
+                wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inFlight++;
+        return nanoTime();
+    }
+
+    /**
+     * Adjust the limit to the outcome of a request.
+     *
+     * @param statusCode
+     *            the HTTP status of the answer, {@link #STATUS_FAILED} if
+     *            there was none, {@link #STATUS_CANCELLED} if the request was
+     *            aborted because it was no longer needed
+     */
+    public synchronized void release(long ticket, int statusCode) {
+        if (ticket == NO_TICKET) {
+            return;
+        }
+        long now = nanoTime();
+        boolean limitUsed = inFlight >= (int) limit;
+        inFlight = Math.max(0, inFlight - 1);
+
+        if (statusCode == STATUS_CANCELLED) {
+            // Says nothing about the load of Gerrit
+        } else if (statusCode == STATUS_FAILED || statusCode == HTTP_TOO_MANY_REQUESTS
+                || statusCode == HTTP_SERVICE_UNAVAILABLE) {
+            decrease(now, "status " + statusCode);
+        } else {
+            double latency = Math.max(1, now - ticket);
+            smoothedLatency = smoothedLatency == 0 ? latency : smoothedLatency + SMOOTHING
+                    * (latency - smoothedLatency);
+            baselineLatency = baselineLatency == 0 ? latency : Math.min(latency, baselineLatency * BASELINE_DRIFT);
+            if (smoothedLatency > baselineLatency * LATENCY_TOLERANCE) {
+                decrease(now, "latency");
+            } else if (limitUsed && limit < maxLimit()) {
+                increase();
+            }
+        }
+        notifyAll();
+    }
+
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private int maxLimit() {
+        return gerritConfiguration.getAdaptiveConcurrency();
+    }
+
+    private void increase() {
+        int before = (int) limit;
+        limit = Math.min(maxLimit(), limit + 1 / limit);
+        if ((int) limit > before) {
+            adjusted(GerritReviewReport.COUNTER_CONCURRENCY_INCREASES, "raised");
+        }
+    }
+
+    private void decrease(long now, String reason) {
+        if (lastDecrease != NO_TICKET && now - lastDecrease < smoothedLatency) {
+            return;
+        }
+        lastDecrease = now;
+        int before = (int) limit;
+        limit = Math.max(1, limit * DECREASE_FACTOR);
+        // The next samples are compared to the best latency again
+        smoothedLatency = baselineLatency;
+        if ((int) limit < before) {
+            adjusted(GerritReviewReport.COUNTER_CONCURRENCY_DECREASES, "cut on " + reason);
+        }
+    }
+
+    private void adjusted(String counter, String action) {
+        gerritReviewReport.increment(counter, 1);
+        gerritReviewReport.set(GerritReviewReport.COUNTER_CONCURRENCY_LIMIT, (int) limit);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] Concurrency limit {} to {}", action, (int) limit);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Transport sending the asynchronous reads in parallel, each on its own
+ * pooled keep-alive connection of the {@link GerritConnector}, so a slow
+ * answer does not hold the other reads back. The other calls are sent as
+ * with the connector. Rate limiting and the time budget still apply to every
+ * request.
+ */
+public class GerritConcurrentTransport implements GerritTransport {
+    public static final int THREADS = 4;
+
+    private static final Logger LOG = Loggers.get(GerritConcurrentTransport.class);
+    private final GerritConnector gerritConnector;
+    private final ExecutorService executor;
+
+    public GerritConcurrentTransport(@NotNull GerritConnector gerritConnector) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritConcurrentTransport");
+        this.gerritConnector = gerritConnector;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gerrit-transport-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @NotNull
+    @Override
+    public String listFiles() throws IOException {
+        return gerritConnector.listFiles();
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull String reviewInputAsJson) throws IOException {
+        return gerritConnector.setReview(reviewInputAsJson);
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull byte[] reviewInputAsJson) throws IOException {
+        return gerritConnector.setReview(reviewInputAsJson);
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull HttpEntity reviewInputEntity) throws IOException {
+        return gerritConnector.setReview(reviewInputEntity);
+    }
+
+    @NotNull
+    @Override
+    public String get(@NotNull String path) throws IOException {
+        return gerritConnector.get(path);
+    }
+
+    @NotNull
+    @Override
+    public Future<String> getAsync(@NotNull final String path) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return gerritConnector.get(path);
+            }
+        });
+    }
+}
@@ -2,19 +2,37 @@ package fr.techad.sonar.gerrit;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
@@ -25,15 +43,17 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritLogPolicy;
 
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
-public class GerritConnector implements BatchComponent {
+public class GerritConnector implements GerritTransport, BatchComponent {
     private static final Logger LOG = Loggers.get(GerritConnector.class);
     private static final String BASIC_AUTH_SCHEME = "BASIC";
     private static final String DIGEST_AUTH_SCHEME = "DIGEST";
@@ -42,108 +62,469 @@ public class GerritConnector implements BatchComponent {
     private static final String URI_REVISIONS = "/revisions/%s";
     private static final String URI_LIST_FILES_SUFFIX = "/files/";
     private static final String URI_SET_REVIEW = "/review";
-    private static int REQUEST_COUNTER;
+    private static final String URI_ACCOUNT_SELF = "/accounts/self";
+    private static final String URI_CURRENT_REVISION_SUFFIX = "?o=CURRENT_REVISION";
+    private static final String URI_CHANGE_SNAPSHOT_SUFFIX = "?o=CURRENT_REVISION&o=CURRENT_FILES&o=DETAILED_LABELS"
+            + "&o=MESSAGES";
+    private static final int HTTP_ERROR_STATUS = 400;
+    private static final int MAX_CONNECTIONS = GerritConcurrentTransport.THREADS + 1;
+    private static final AtomicInteger REQUEST_COUNTER = new AtomicInteger();
+    private static final AtomicInteger HEDGE_THREAD_COUNTER = new AtomicInteger();
     private HttpHost httpHost;
-    private CloseableHttpClient httpClient;
-    private HttpClientContext httpClientContext;
+    private AuthCache authCache;
+    private volatile CloseableHttpClient httpClient;
+    private ExecutorService hedgeExecutor;
     private final GerritConfiguration gerritConfiguration;
+    private final GerritRateLimiter gerritRateLimiter;
+    private final GerritLogPolicy gerritLogPolicy;
+    private final GerritTimeBudget gerritTimeBudget;
+    private final GerritConcurrencyLimiter gerritConcurrencyLimiter;
+    private final GerritReadRouter gerritReadRouter;
 
-    public GerritConnector(GerritConfiguration gerritConfiguration) {
+    public GerritConnector(GerritConfiguration gerritConfiguration, GerritRateLimiter gerritRateLimiter,
+            GerritLogPolicy gerritLogPolicy, GerritTimeBudget gerritTimeBudget,
+            GerritConcurrencyLimiter gerritConcurrencyLimiter) {
         LOG.debug("[GERRIT PLUGIN] Instanciating GerritConnector");
         this.gerritConfiguration = gerritConfiguration;
+        this.gerritRateLimiter = gerritRateLimiter;
+        this.gerritLogPolicy = gerritLogPolicy;
+        this.gerritTimeBudget = gerritTimeBudget;
+        this.gerritConcurrencyLimiter = gerritConcurrencyLimiter;
+        this.gerritReadRouter = new GerritReadRouter(gerritConfiguration.getReadReplicas());
     }
 
     @NotNull
+    @Override
     public String listFiles() throws IOException {
         String getUri = rootUriBuilder();
         getUri = getUri.concat(URI_LIST_FILES_SUFFIX);
 
         LOG.info("[GERRIT PLUGIN] Listing files from {}", getUri);
 
-        HttpGet httpGet = new HttpGet(getUri);
-        httpGet.addHeader("Accept", "application/json");
-        CloseableHttpResponse httpResponse = logAndExecute(httpGet);
-        return consumeAndLogEntity(httpResponse);
+        return read(getUri, false);
+    }
+
+    /**
+     * @return the path of the account used to connect to Gerrit, for
+     *         {@link #get(String)}
+     */
+    @NotNull
+    public static String accountPath() {
+        return URI_ACCOUNT_SELF;
+    }
+
+    /**
+     * @return the path of the change with the reviewed revision, its labels
+     *         and the labels permitted to the account, for {@link #get(String)}
+     */
+    @NotNull
+    public static String revisionReviewPath(@NotNull GerritConfiguration changeConfiguration) {
+        return revisionPath(changeConfiguration).concat(URI_SET_REVIEW);
+    }
+
+    /**
+     * @return the path of the change with its current revision only, for
+     *         {@link #get(String)}
+     */
+    @NotNull
+    public static String currentRevisionPath(@NotNull GerritConfiguration changeConfiguration) {
+        return changePath(changeConfiguration).concat(URI_CURRENT_REVISION_SUFFIX);
     }
 
+    /**
+     * @return the path of the change with its current revision and files, its
+     *         labels and the labels permitted to the account, for
+     *         {@link #get(String)}
+     */
     @NotNull
-    public String setReview(String reviewInputAsJson) throws IOException {
-        LOG.info("[GERRIT PLUGIN] Setting review {}", reviewInputAsJson);
+    public static String changeSnapshotPath(@NotNull GerritConfiguration changeConfiguration) {
+        return changePath(changeConfiguration).concat(URI_CHANGE_SNAPSHOT_SUFFIX);
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull String reviewInputAsJson) throws IOException {
+        return setReview(reviewInputAsJson, false);
+    }
 
+    /**
+     * @param failOnError
+     *            true to throw a {@link GerritHttpException} when Gerrit
+     *            answers with an error status
+     */
+    @NotNull
+    public String setReview(@NotNull String reviewInputAsJson, boolean failOnError) throws IOException {
         String postUri = rootUriBuilder();
         postUri = postUri.concat(URI_SET_REVIEW);
 
-        LOG.info("[GERRIT PLUGIN] Setting review at {}", postUri);
+        gerritLogPolicy.payload(LOG, "[GERRIT PLUGIN] Setting review at {}: {}", postUri, reviewInputAsJson);
 
         HttpPost httpPost = new HttpPost(postUri);
         httpPost.setEntity(new StringEntity(reviewInputAsJson, ContentType.APPLICATION_JSON));
 
-        CloseableHttpResponse httpResponse = logAndExecute(httpPost);
-        return consumeAndLogEntity(httpResponse);
+        return execute(httpPost, failOnError);
+    }
+
+    /**
+     * Send a review to the change and revision of another configuration, on
+     * the Gerrit server of this connector.
+     *
+     * @see #setReview(String, boolean)
+     */
+    @NotNull
+    public String setReview(@NotNull GerritConfiguration reviewConfiguration, @NotNull String reviewInputAsJson,
+            boolean failOnError) throws IOException {
+        String postUri = revisionUri(reviewConfiguration).concat(URI_SET_REVIEW);
+
+        gerritLogPolicy.payload(LOG, "[GERRIT PLUGIN] Setting review at {}: {}", postUri, reviewInputAsJson);
+
+        HttpPost httpPost = new HttpPost(postUri);
+        httpPost.setEntity(new StringEntity(reviewInputAsJson, ContentType.APPLICATION_JSON));
+
+        return execute(httpPost, failOnError);
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull byte[] reviewInputAsJson) throws IOException {
+        String postUri = rootUriBuilder();
+        postUri = postUri.concat(URI_SET_REVIEW);
+
+        gerritLogPolicy.payload(LOG, "[GERRIT PLUGIN] Setting review at {}: {}", postUri, reviewInputAsJson);
+
+        HttpPost httpPost = new HttpPost(postUri);
+        httpPost.setEntity(new ByteArrayEntity(reviewInputAsJson, ContentType.APPLICATION_JSON));
+
+        return execute(httpPost, false);
+    }
+
+    @NotNull
+    @Override
+    public String setReview(@NotNull HttpEntity reviewInputEntity) throws IOException {
+        String postUri = rootUriBuilder();
+        postUri = postUri.concat(URI_SET_REVIEW);
+
+        LOG.info("[GERRIT PLUGIN] Setting review at {} with a streamed body", postUri);
+
+        HttpPost httpPost = new HttpPost(postUri);
+        httpPost.setEntity(reviewInputEntity);
+
+        return execute(httpPost, false);
+    }
+
+    @NotNull
+    @Override
+    public String get(@NotNull String path) throws IOException {
+        String getUri = basePathBuilder().concat(path);
+
+        LOG.info("[GERRIT PLUGIN] Getting {}", getUri);
+
+        return read(getUri, true);
+    }
+
+    /**
+     * Requests are sent one at a time: the call is made before returning.
+     */
+    @NotNull
+    @Override
+    public Future<String> getAsync(@NotNull final String path) {
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return get(path);
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    /**
+     * Release the connections. Only needed by long-lived callers, the
+     * analysis ends with the JVM.
+     */
+    public synchronized void close() throws IOException {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+            hedgeExecutor = null;
+        }
+        if (httpClient != null) {
+            httpClient.close();
+            httpClient = null;
+        }
     }
 
     // Example
     // http://hc.apache.org/httpcomponents-client-ga/httpclient/examples/org/apache/http/examples/client/ClientPreemptiveDigestAuthentication.java
-    private void createHttpContext() {
+    private synchronized void createHttpContext() {
+        if (null != httpClient) {
+            return;
+        }
         httpHost = new HttpHost(gerritConfiguration.getHost(), gerritConfiguration.getHttpPort(),
                 gerritConfiguration.getScheme());
-        httpClientContext = HttpClientContext.create();
+
+        // One route for the primary and one per read replica
+        int maxConnections = MAX_CONNECTIONS * (1 + gerritReadRouter.endpoints().size());
 
         if (gerritConfiguration.isAnonymous()) {
-            httpClient = HttpClients.createDefault();
+            httpClient = HttpClients.custom().setMaxConnPerRoute(MAX_CONNECTIONS).setMaxConnTotal(maxConnections)
+                    .build();
         } else {
+            // The client is published last, once the authentication cache is set
             CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(
+                    gerritConfiguration.getHttpUsername(), gerritConfiguration.getHttpPassword());
             credentialsProvider.setCredentials(
-                    new AuthScope(gerritConfiguration.getHost(), gerritConfiguration.getHttpPort()),
-                    new UsernamePasswordCredentials(gerritConfiguration.getHttpUsername(), gerritConfiguration
-                            .getHttpPassword()));
-            httpClient = HttpClients.custom().setDefaultCredentialsProvider(credentialsProvider).build();
+                    new AuthScope(gerritConfiguration.getHost(), gerritConfiguration.getHttpPort()), credentials);
+            for (GerritReadRouter.Endpoint replica : gerritReadRouter.endpoints()) {
+                credentialsProvider.setCredentials(
+                        new AuthScope(replica.getHost().getHostName(), replica.getHost().getPort()), credentials);
+            }
+            CloseableHttpClient authenticatedClient = HttpClients.custom()
+                    .setDefaultCredentialsProvider(credentialsProvider).setMaxConnPerRoute(MAX_CONNECTIONS)
+                    .setMaxConnTotal(maxConnections).build();
 
             BasicAuthCache basicAuthCache = new BasicAuthCache();
-            AuthScheme authScheme = null;
+            basicAuthCache.put(httpHost, createAuthScheme());
+            for (GerritReadRouter.Endpoint replica : gerritReadRouter.endpoints()) {
+                basicAuthCache.put(replica.getHost(), createAuthScheme());
+            }
+            authCache = basicAuthCache;
+            httpClient = authenticatedClient;
+        }
+    }
+
+    private AuthScheme createAuthScheme() {
+        AuthScheme authScheme = null;
 
-            if (BASIC_AUTH_SCHEME.equalsIgnoreCase(gerritConfiguration.getHttpAuthScheme())) {
-                authScheme = new BasicScheme();
-            } else if (DIGEST_AUTH_SCHEME.equalsIgnoreCase(gerritConfiguration.getHttpAuthScheme())) {
-                authScheme = new DigestScheme();
+        if (BASIC_AUTH_SCHEME.equalsIgnoreCase(gerritConfiguration.getHttpAuthScheme())) {
+            authScheme = new BasicScheme();
+        } else if (DIGEST_AUTH_SCHEME.equalsIgnoreCase(gerritConfiguration.getHttpAuthScheme())) {
+            authScheme = new DigestScheme();
 
-            } else {
-                LOG.error("[GERRIT PLUGIN] createHttpContext called with AUTH_SCHEME {} instead of digest or basic",
-                        gerritConfiguration.getHttpAuthScheme());
+        } else {
+            LOG.error("[GERRIT PLUGIN] createHttpContext called with AUTH_SCHEME {} instead of digest or basic",
+                    gerritConfiguration.getHttpAuthScheme());
+        }
+        return authScheme;
+    }
+
+    /**
+     * Read from the fastest replica, or from the primary when there is no
+     * replica or when the replicas fail, e.g. with a 404 because they do not
+     * know the revision yet, or a timeout. Only an interruption of the
+     * analysis stops the read.
+     */
+    @NotNull
+    private String read(@NotNull String uri, boolean failOnError) throws IOException {
+        if (gerritReadRouter.hasReplicas()) {
+            try {
+                return readFromReplicas(uri);
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOG.info("[GERRIT PLUGIN] Read replicas failed ({}), reading {} from the primary", e.getMessage(),
+                        uri);
             }
-            basicAuthCache.put(httpHost, authScheme);
-            httpClientContext.setAuthCache(basicAuthCache);
         }
+        return execute(null, httpGet(uri), failOnError);
     }
 
+    /**
+     * With hedging, a read still unanswered after the usual delay of the
+     * replica is sent again to the next fastest replica, or to the primary.
+     * The first successful answer is kept and the other request is aborted.
+     */
     @NotNull
-    private CloseableHttpResponse logAndExecute(@NotNull HttpRequestBase request) throws IOException {
-        if (null == httpClient || null == httpClientContext || null == httpHost) {
+    private String readFromReplicas(@NotNull final String uri) throws IOException {
+        GerritReadRouter.Endpoint replica = gerritReadRouter.choose();
+        long hedgeDelay = gerritConfiguration.shouldHedgeReads() ? gerritReadRouter.hedgeDelayMillis(replica)
+                : GerritReadRouter.NO_HEDGE;
+        if (hedgeDelay == GerritReadRouter.NO_HEDGE) {
+            return readFrom(replica, httpGet(replicaUri(replica, uri)));
+        }
+
+        CompletionService<String> completionService = new ExecutorCompletionService<String>(hedgeExecutor());
+        List<HttpGet> requests = new ArrayList<HttpGet>();
+        try {
+            submitRead(completionService, requests, replica, uri);
+            Future<String> answer = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (answer == null) {
+                GerritReadRouter.Endpoint alternative = gerritReadRouter.alternative(replica);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("[GERRIT PLUGIN] No answer from {} after {} ms, hedging the read to {}", new Object[] {
+                            replica, hedgeDelay, alternative == null ? "the primary" : alternative });
+                }
+                submitRead(completionService, requests, alternative, uri);
+                answer = completionService.take();
+            }
+            int pending = requests.size();
+            while (true) {
+                pending--;
+                try {
+                    return answer.get();
+                } catch (ExecutionException e) {
+                    if (pending == 0) {
+                        throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(
+                                e.getCause());
+                    }
+                }
+                answer = completionService.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + uri);
+        } finally {
+            for (HttpGet request : requests) {
+                request.abort();
+            }
+        }
+    }
+
+    private void submitRead(@NotNull CompletionService<String> completionService, @NotNull List<HttpGet> requests,
+            @Nullable final GerritReadRouter.Endpoint replica, @NotNull String uri) {
+        final HttpGet httpGet = httpGet(replica == null ? uri : replicaUri(replica, uri));
+        requests.add(httpGet);
+        completionService.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return readFrom(replica, httpGet);
+            }
+        });
+    }
+
+    /**
+     * @param replica
+     *            the replica to read from, null for the primary
+     */
+    @NotNull
+    private String readFrom(@Nullable GerritReadRouter.Endpoint replica, @NotNull HttpGet httpGet) throws IOException {
+        if (replica == null) {
+            return execute(null, httpGet, true);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            String content = execute(replica.getHost(), httpGet, true);
+            gerritReadRouter.record(replica, System.currentTimeMillis() - start);
+            return content;
+        } catch (IOException e) {
+            if (!httpGet.isAborted()) {
+                gerritReadRouter.penalize(replica);
+            }
+            throw e;
+        }
+    }
+
+    @NotNull
+    private String replicaUri(@NotNull GerritReadRouter.Endpoint replica, @NotNull String uri) {
+        return replica.getBasePath().concat(StringUtils.removeStart(uri, basePath()));
+    }
+
+    @NotNull
+    private static HttpGet httpGet(@NotNull String uri) {
+        HttpGet httpGet = new HttpGet(uri);
+        httpGet.addHeader("Accept", "application/json");
+        return httpGet;
+    }
+
+    private synchronized ExecutorService hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "gerrit-read-" + HEDGE_THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return hedgeExecutor;
+    }
+
+    @NotNull
+    private String execute(@NotNull HttpRequestBase request, boolean failOnError) throws IOException {
+        return execute(null, request, failOnError);
+    }
+
+    /**
+     * @param host
+     *            the host to send the request to, null for the primary
+     */
+    @NotNull
+    private String execute(@Nullable HttpHost host, @NotNull HttpRequestBase request, boolean failOnError)
+            throws IOException {
+        int requestId = REQUEST_COUNTER.incrementAndGet();
+        long start = System.currentTimeMillis();
+        long lease = GerritRateLimiter.NO_LEASE;
+        long ticket = GerritConcurrencyLimiter.NO_TICKET;
+        // Until it is sent, the request says nothing about the load of Gerrit
+        int statusCode = GerritConcurrencyLimiter.STATUS_CANCELLED;
+        try {
+            // The waits for the limiters are taken out of the request timeout
+            lease = gerritRateLimiter.acquire(gerritTimeBudget.nextTimeoutMillis());
+            ticket = gerritConcurrencyLimiter.acquire(
+                    gerritTimeBudget.nextTimeoutMillis(System.currentTimeMillis() - start));
+            int timeout = gerritTimeBudget.nextTimeoutMillis(System.currentTimeMillis() - start);
+            if (timeout > 0) {
+                request.setConfig(RequestConfig.custom().setConnectTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout).setSocketTimeout(timeout).build());
+            }
+            statusCode = GerritConcurrencyLimiter.STATUS_FAILED;
+            CloseableHttpResponse httpResponse = logAndExecute(host, request, requestId);
+            try {
+                String content = consumeAndLogEntity(httpResponse, requestId);
+                statusCode = httpResponse.getStatusLine().getStatusCode();
+                if (failOnError && statusCode >= HTTP_ERROR_STATUS) {
+                    throw new GerritHttpException(statusCode, httpResponse.getStatusLine().toString());
+                }
+                return content;
+            } finally {
+                httpResponse.close();
+            }
+        } finally {
+            gerritConcurrencyLimiter.release(ticket, request.isAborted() ? GerritConcurrencyLimiter.STATUS_CANCELLED
+                    : statusCode);
+            gerritRateLimiter.release(lease);
+            gerritTimeBudget.spend(System.currentTimeMillis() - start);
+        }
+    }
+
+    @NotNull
+    private CloseableHttpResponse logAndExecute(@Nullable HttpHost host, @NotNull HttpRequestBase request,
+            int requestId) throws IOException {
+        if (null == httpClient) {
             createHttpContext();
         }
 
-        LOG.info("[GERRIT PLUGIN] Request {}: {} to {}", new Object[] { ++REQUEST_COUNTER, request.getMethod(),
-                request.getURI().toString() });
-        CloseableHttpResponse httpResponse = httpClient.execute(httpHost, request, httpClientContext);
-        LOG.info("[GERRIT PLUGIN] Response {}: {}", REQUEST_COUNTER, httpResponse.getStatusLine().toString());
+        // A context per request, as requests may be sent concurrently
+        HttpClientContext httpClientContext = HttpClientContext.create();
+        if (null != authCache) {
+            httpClientContext.setAuthCache(authCache);
+        }
+
+        HttpHost target = host == null ? httpHost : host;
+        LOG.info("[GERRIT PLUGIN] Request {}: {} to {}{}", new Object[] { requestId, request.getMethod(),
+                host == null ? "" : target.toURI(), request.getURI().toString() });
+        CloseableHttpResponse httpResponse = httpClient.execute(target, request, httpClientContext);
+        LOG.info("[GERRIT PLUGIN] Response {}: {}", requestId, httpResponse.getStatusLine().toString());
         return httpResponse;
     }
 
     @NotNull
-    private String consumeAndLogEntity(@NotNull CloseableHttpResponse response) throws IOException {
+    private String consumeAndLogEntity(@NotNull CloseableHttpResponse response, int requestId) throws IOException {
         if (response.getEntity() == null) {
             if (LOG.isDebugEnabled()) {
-                LOG.debug("[GERRIT PLUGIN] Entity {}: no entity", REQUEST_COUNTER);
+                LOG.debug("[GERRIT PLUGIN] Entity {}: no entity", requestId);
             }
             return StringUtils.EMPTY;
         }
         String content = EntityUtils.toString(response.getEntity());
-        LOG.info("[GERRIT PLUGIN] Entity {}: {}", REQUEST_COUNTER, content);
+        gerritLogPolicy.payload(LOG, "[GERRIT PLUGIN] Entity {}: {}", requestId, content);
         return content;
     }
 
     @NotNull
-    private String encode(String content) {
+    private static String encode(String content) {
         String result = "";
         try {
             result = URLEncoder.encode(content, "UTF-8");
@@ -154,19 +535,53 @@ public class GerritConnector implements BatchComponent {
     }
 
     @NotNull
-    public String rootUriBuilder() {
+    public String basePathBuilder() {
+        String uri = basePath();
+        if (!gerritConfiguration.isAnonymous()) {
+            uri = uri.concat(URI_AUTH_PREFIX);
+        }
+        return uri;
+    }
+
+    @NotNull
+    private String basePath() {
         String basePath = gerritConfiguration.getBasePath();
         if ("/".compareTo(basePath) == 0) {
             basePath = "";
         }
+        return basePath;
+    }
 
-        String uri = basePath;
-        if (!gerritConfiguration.isAnonymous()) {
-            uri = uri.concat(URI_AUTH_PREFIX);
-        }
-        uri = uri.concat(String.format(URI_CHANGES, encode(gerritConfiguration.getProjectName()),
-                encode(gerritConfiguration.getBranchName()), encode(gerritConfiguration.getChangeId())));
-        uri = uri.concat(String.format(URI_REVISIONS, encode(gerritConfiguration.getRevisionId())));
+    @NotNull
+    public String changeUriBuilder() {
+        return changeUri(gerritConfiguration);
+    }
+
+    @NotNull
+    public String rootUriBuilder() {
+        return revisionUri(gerritConfiguration);
+    }
+
+    @NotNull
+    private static String changePath(@NotNull GerritConfiguration changeConfiguration) {
+        return String.format(URI_CHANGES, encode(changeConfiguration.getProjectName()),
+                encode(changeConfiguration.getBranchName()), encode(changeConfiguration.getChangeId()));
+    }
+
+    @NotNull
+    private static String revisionPath(@NotNull GerritConfiguration changeConfiguration) {
+        return changePath(changeConfiguration).concat(String.format(URI_REVISIONS,
+                encode(changeConfiguration.getRevisionId())));
+    }
+
+    @NotNull
+    private String changeUri(@NotNull GerritConfiguration changeConfiguration) {
+        return basePathBuilder().concat(changePath(changeConfiguration));
+    }
+
+    @NotNull
+    private String revisionUri(@NotNull GerritConfiguration changeConfiguration) {
+        String uri = basePathBuilder().concat(revisionPath(changeConfiguration));
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("[GERRIT PLUGIN] Built URI : {}", uri);
@@ -3,6 +3,7 @@ package fr.techad.sonar.gerrit;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -16,24 +17,47 @@ import org.sonar.api.utils.log.Loggers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import fr.techad.sonar.GerritConfiguration;
 import fr.techad.sonar.GerritPluginException;
+import fr.techad.sonar.GerritReviewReport;
+import fr.techad.sonar.server.ReviewPostingClient;
 
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 public class GerritFacade implements BatchComponent {
+    public static final String FILE_LIST_REST = "rest";
+    public static final String FILE_LIST_GIT = "git";
+
     private static final Logger LOG = Loggers.get(GerritFacade.class);
     private static final String RESPONSE_PREFIX = ")]}'";
     private static final String COMMIT_MSG = "/COMMIT_MSG";
+    private static final String MERGE_LIST = "/MERGE_LIST";
     private static final String MAVEN_ENTRY_REGEX = ".*src/";
 
     private static final String ERROR_LISTING = "Error listing files";
     private static final String ERROR_SETTING = "Error setting review";
-    private final GerritConnector gerritConnector;
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private final GerritTransportProvider gerritTransportProvider;
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritReviewReport gerritReviewReport;
+    private final GerritChangeQuery gerritChangeQuery;
+    private ObjectMapper objectMapper;
     private Map<String, String> gerritFileList = new HashMap<String, String>();
 
-    public GerritFacade(GerritConnector gerritConnector) {
+    public GerritFacade(GerritTransportProvider gerritTransportProvider, GerritConfiguration gerritConfiguration,
+            GerritReviewReport gerritReviewReport, GerritChangeQuery gerritChangeQuery) {
         LOG.debug("[GERRIT PLUGIN] Instanciating GerritFacade");
-        this.gerritConnector = gerritConnector;
+        this.gerritTransportProvider = gerritTransportProvider;
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritReviewReport = gerritReviewReport;
+        this.gerritChangeQuery = gerritChangeQuery;
+    }
+
+    /**
+     * @return the transport selected by the configuration, the connector
+     *         itself by default
+     */
+    @NotNull
+    public GerritTransport transport() {
+        return gerritTransportProvider.transport();
     }
 
     /**
@@ -44,26 +68,68 @@ public class GerritFacade implements BatchComponent {
         if (!gerritFileList.isEmpty()) {
             LOG.debug("[GERRIT PLUGIN] File list already filled. Not calling Gerrit.");
         } else {
+            long start = gerritReviewReport.start();
             try {
-                String response = gerritConnector.listFiles();
-                String jsonString = trimResponse(response);
-                ListFilesResponse listFilesResponse = objectMapper.readValue(jsonString, ListFilesResponse.class);
-                Set<String> keys = listFilesResponse.keySet();
+                Set<String> keys = listGerritFiles();
                 keys.remove(COMMIT_MSG);
+                keys.remove(MERGE_LIST);
                 for (String key : keys) {
                     gerritFileList.put(parseFileName(key), key);
                 }
             } catch (IOException e) {
                 throw new GerritPluginException(ERROR_LISTING, e);
+            } finally {
+                gerritReviewReport.stop(GerritReviewReport.PHASE_LIST_FILES, start);
             }
         }
         return Collections.unmodifiableMap(gerritFileList);
     }
 
+    /**
+     * List the files from the local checkout when configured, then from the
+     * change snapshot when the revision is the current one, and from Gerrit
+     * otherwise.
+     */
+    @NotNull
+    private Set<String> listGerritFiles() throws IOException {
+        if (FILE_LIST_GIT.equalsIgnoreCase(gerritConfiguration.getFileListSource())) {
+            try {
+                return new GitFileListProvider(gerritConfiguration).listFiles();
+            } catch (IOException e) {
+                LOG.warn("[GERRIT PLUGIN] Unable to list the files from git, asking Gerrit: {}", e.getMessage());
+            }
+        }
+        GerritChangeSnapshot snapshot = gerritChangeQuery.snapshot();
+        if (snapshot != null && snapshot.getCurrentFiles() != null
+                && snapshot.isCurrent(gerritConfiguration.getRevisionId())) {
+            return new HashSet<String>(snapshot.getCurrentFiles());
+        }
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_REQUESTS, 1);
+        return new GerritRestFileListProvider(transport(), objectMapper()).listFiles();
+    }
+
     public void setReview(@NotNull ReviewInput reviewInput) throws GerritPluginException {
+        if (gerritConfiguration.shouldPostFromServer()) {
+            postFromServer(reviewInput);
+            return;
+        }
+        if (reviewInput.getCommentStore().isSpilled()) {
+            streamReview(reviewInput);
+            return;
+        }
         try {
-            String json = objectMapper.writeValueAsString(reviewInput);
-            gerritConnector.setReview(json);
+            long start = gerritReviewReport.start();
+            byte[] json = objectMapper().writeValueAsBytes(reviewInput);
+            gerritReviewReport.stop(GerritReviewReport.PHASE_SERIALIZE, start);
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_PAYLOAD_BYTES, json.length);
+
+            start = gerritReviewReport.start();
+            try {
+                gerritReviewReport.increment(GerritReviewReport.COUNTER_REQUESTS, 1);
+                transport().setReview(json);
+            } finally {
+                gerritReviewReport.stop(GerritReviewReport.PHASE_SET_REVIEW, start);
+            }
         } catch (JsonProcessingException e) {
             throw new GerritPluginException(ERROR_SETTING, e);
         } catch (IOException e) {
@@ -71,6 +137,79 @@ public class GerritFacade implements BatchComponent {
         }
     }
 
+    /**
+     * Hand the review to the SonarQube server, which sends it to Gerrit. The
+     * review is serialized as a whole, even when its comments are spilled.
+     */
+    private void postFromServer(@NotNull ReviewInput reviewInput) throws GerritPluginException {
+        try {
+            long start = gerritReviewReport.start();
+            String json = objectMapper().writeValueAsString(reviewInput);
+            gerritReviewReport.stop(GerritReviewReport.PHASE_SERIALIZE, start);
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_PAYLOAD_BYTES, utf8Length(json));
+
+            start = gerritReviewReport.start();
+            try {
+                new ReviewPostingClient(gerritConfiguration).post(json);
+            } finally {
+                gerritReviewReport.stop(GerritReviewReport.PHASE_SET_REVIEW, start);
+            }
+        } catch (IOException e) {
+            throw new GerritPluginException(ERROR_SETTING, e);
+        }
+    }
+
+    /**
+     * Send a review with spilled comments without building its JSON: the
+     * serialization then happens while the request is sent.
+     */
+    private void streamReview(@NotNull ReviewInput reviewInput) throws GerritPluginException {
+        ReviewInputEntity entity = new ReviewInputEntity(objectMapper(), reviewInput);
+        long start = gerritReviewReport.start();
+        try {
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_REQUESTS, 1);
+            transport().setReview(entity);
+        } catch (IOException e) {
+            throw new GerritPluginException(ERROR_SETTING, e);
+        } finally {
+            gerritReviewReport.stop(GerritReviewReport.PHASE_SET_REVIEW, start);
+            gerritReviewReport.increment(GerritReviewReport.COUNTER_PAYLOAD_BYTES, entity.getWrittenBytes());
+        }
+    }
+
+    /**
+     * @return the size of the text encoded in UTF-8, without encoding it
+     */
+    static long utf8Length(@NotNull CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Jackson is only loaded once Gerrit is actually called.
+     */
+    @NotNull
+    private synchronized ObjectMapper objectMapper() {
+        if (objectMapper == null) {
+            objectMapper = new ObjectMapper();
+        }
+        return objectMapper;
+    }
+
     @NotNull
     protected String trimResponse(@NotNull String response) {
         return StringUtils.replaceOnce(response, RESPONSE_PREFIX, "");
@@ -0,0 +1,19 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Source of the files of the revision under review, as named by Gerrit:
+ * paths relative to the root of the repository.
+ */
+public interface GerritFileListProvider {
+    /**
+     * @return the files of the revision, with the Gerrit magic files such as
+     *         <code>/COMMIT_MSG</code> when the source lists them
+     */
+    @NotNull
+    Set<String> listFiles() throws IOException;
+}
@@ -0,0 +1,20 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+/**
+ * Gerrit answered a request with an error status.
+ */
+public class GerritHttpException extends IOException {
+    private static final long serialVersionUID = -2714860154923207517L;
+    private final int statusCode;
+
+    public GerritHttpException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
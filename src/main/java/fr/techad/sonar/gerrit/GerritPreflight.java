@@ -0,0 +1,309 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Check the Gerrit connectivity and permissions in the background while the
+ * analysis runs: authentication, existence of the change and revision, and
+ * permission to vote on the label. The result is computed once per analysis.
+ * The account is read while the change is queried, and with the concurrent
+ * transport the review of the revision too when there is no change query.
+ * The votes permitted on the label are kept, the one actually computed is
+ * checked against them once the analysis is over.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritPreflight implements BatchComponent {
+    public static final String MODE_OFF = "off";
+    public static final String MODE_DEGRADE = "degrade";
+    public static final String MODE_FAIL = "fail";
+
+    private static final Logger LOG = Loggers.get(GerritPreflight.class);
+    private static final String RESPONSE_PREFIX = ")]}'";
+    private static final String PERMITTED_LABELS = "permitted_labels";
+    private static final int HTTP_UNAUTHORIZED = 401;
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final long AWAIT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Outcome of the preflight checks.
+     */
+    public enum Status {
+        /** Everything has been checked */
+        OK,
+        /** Gerrit could not be checked, the review will be sent as usual */
+        UNKNOWN,
+        /** The review can be sent, but without any vote */
+        NO_VOTE,
+        /** The review cannot be sent */
+        FATAL
+    }
+
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritTransportProvider gerritTransportProvider;
+    private final GerritChangeQuery gerritChangeQuery;
+    private Future<Status> future;
+    private Status status;
+    private String reason = "";
+    private volatile List<String> permittedVotes;
+
+    public GerritPreflight(GerritConfiguration gerritConfiguration, GerritTransportProvider gerritTransportProvider,
+            GerritChangeQuery gerritChangeQuery) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritPreflight");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritTransportProvider = gerritTransportProvider;
+        this.gerritChangeQuery = gerritChangeQuery;
+    }
+
+    public boolean isEnabled() {
+        return !MODE_OFF.equalsIgnoreCase(gerritConfiguration.getPreflightMode());
+    }
+
+    public boolean shouldFailFast() {
+        return MODE_FAIL.equalsIgnoreCase(gerritConfiguration.getPreflightMode());
+    }
+
+    /**
+     * Start the checks in a background thread. Does nothing if they are
+     * disabled or already started.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || future != null) {
+            return;
+        }
+        LOG.info("[GERRIT PLUGIN] Starting preflight checks");
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gerrit-preflight");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        future = executor.submit(new Callable<Status>() {
+            @Override
+            public Status call() {
+                return check();
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * @return the result if the checks are over, null otherwise
+     */
+    public synchronized Status peek() {
+        if (status == null && future != null && future.isDone()) {
+            await();
+        }
+        return status;
+    }
+
+    /**
+     * Wait for the checks to end, starting them if needed.
+     */
+    @NotNull
+    public synchronized Status await() {
+        if (status != null) {
+            return status;
+        }
+        if (!isEnabled()) {
+            status = Status.UNKNOWN;
+            return status;
+        }
+        start();
+        try {
+            status = future.get(AWAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = unknown("interrupted");
+        } catch (ExecutionException e) {
+            LOG.warn("[GERRIT PLUGIN] Preflight checks failed", e);
+            status = unknown(e.getMessage());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            status = unknown("timed out");
+        }
+        return status;
+    }
+
+    @NotNull
+    public synchronized String getReason() {
+        return reason;
+    }
+
+    /**
+     * Wait for the checks to end, then tell if Gerrit accepts the vote on the
+     * label. The vote is deemed permitted when the permitted votes are not
+     * known.
+     */
+    public boolean isVotePermitted(int vote) {
+        await();
+        if (permittedVotes == null) {
+            return true;
+        }
+        for (String permittedVote : permittedVotes) {
+            String value = StringUtils.removeStart(permittedVote.trim(), "+");
+            if (String.valueOf(vote).equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    protected Status check() {
+        GerritTransport transport = gerritTransportProvider.transport();
+        Future<String> account = null;
+        if (!gerritConfiguration.isAnonymous()) {
+            account = transport.getAsync(GerritConnector.accountPath());
+        }
+        Future<String> revisionReview = null;
+        if (!gerritChangeQuery.isEnabled()) {
+            revisionReview = transport.getAsync(GerritConnector.revisionReviewPath(gerritConfiguration));
+        }
+
+        GerritChangeSnapshot snapshot = gerritChangeQuery.snapshot();
+        try {
+            if (account != null) {
+                resolve(account);
+            }
+        } catch (GerritHttpException e) {
+            cancel(revisionReview);
+            if (e.getStatusCode() == HTTP_UNAUTHORIZED || e.getStatusCode() == HTTP_FORBIDDEN) {
+                return fatal("authentication refused (" + e.getMessage() + ")");
+            }
+            return unknown(e.getMessage());
+        } catch (IOException e) {
+            cancel(revisionReview);
+            return unknown(e.getMessage());
+        }
+
+        if (snapshot != null && snapshot.isCurrent(gerritConfiguration.getRevisionId())) {
+            // The labels of the change are the ones of its current revision
+            if (gerritConfiguration.isAnonymous()) {
+                return ok();
+            }
+            return checkLabel(snapshot.getPermittedValues(gerritConfiguration.getLabel()));
+        }
+
+        JsonNode review;
+        try {
+            String response;
+            if (revisionReview != null) {
+                response = resolve(revisionReview);
+            } else {
+                response = transport.get(GerritConnector.revisionReviewPath(gerritConfiguration));
+            }
+            review = new ObjectMapper().readTree(StringUtils.replaceOnce(response, RESPONSE_PREFIX, ""));
+        } catch (GerritHttpException e) {
+            if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                return fatal("change " + gerritConfiguration.getChangeId() + " or revision "
+                        + gerritConfiguration.getRevisionId() + " not found");
+            }
+            if (e.getStatusCode() == HTTP_UNAUTHORIZED || e.getStatusCode() == HTTP_FORBIDDEN) {
+                return fatal("access to the change refused (" + e.getMessage() + ")");
+            }
+            return unknown(e.getMessage());
+        } catch (IOException e) {
+            return unknown(e.getMessage());
+        }
+
+        if (gerritConfiguration.isAnonymous()) {
+            return ok();
+        }
+        JsonNode permittedValues = review.path(PERMITTED_LABELS).path(gerritConfiguration.getLabel());
+        if (!permittedValues.isArray()) {
+            return checkLabel(null);
+        }
+        List<String> values = new ArrayList<String>();
+        for (JsonNode permittedValue : permittedValues) {
+            values.add(permittedValue.asText());
+        }
+        return checkLabel(values);
+    }
+
+    /**
+     * @return the answer of an asynchronous read, its error thrown as by
+     *         {@link GerritTransport#get(String)}
+     */
+    @NotNull
+    private static String resolve(@NotNull Future<String> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void cancel(Future<String> read) {
+        if (read != null) {
+            read.cancel(true);
+        }
+    }
+
+    /**
+     * Only the label is checked here: which of the configured votes is sent
+     * is only known at the end of the analysis.
+     */
+    private Status checkLabel(List<String> permittedValues) {
+        if (permittedValues == null) {
+            return noVote("label " + gerritConfiguration.getLabel() + " is not permitted");
+        }
+        permittedVotes = permittedValues;
+        LOG.debug("[GERRIT PLUGIN] Permitted votes on label {}: {}", gerritConfiguration.getLabel(), permittedValues);
+        return ok();
+    }
+
+    private Status ok() {
+        LOG.info("[GERRIT PLUGIN] Preflight checks passed");
+        return Status.OK;
+    }
+
+    private Status noVote(String why) {
+        reason = why;
+        LOG.warn("[GERRIT PLUGIN] Preflight checks: {}. The review will be sent without vote.", why);
+        return Status.NO_VOTE;
+    }
+
+    private Status fatal(String why) {
+        reason = why;
+        LOG.error("[GERRIT PLUGIN] Preflight checks: {}. The review cannot be sent.", why);
+        return Status.FATAL;
+    }
+
+    private Status unknown(String why) {
+        reason = StringUtils.defaultString(why);
+        LOG.warn("[GERRIT PLUGIN] Preflight checks could not complete: {}", reason);
+        return Status.UNKNOWN;
+    }
+}
@@ -0,0 +1,245 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Token bucket rate limiter with a cap on concurrent requests. Its state is
+ * kept in a locked file, so it is shared by every analysis running on the
+ * host.
+ *
+ * The state file holds a single line: the available tokens, the time of the
+ * last refill and the expiry time of every request in progress. A request
+ * whose lease has expired, e.g. because its JVM died, no longer counts.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritRateLimiter implements BatchComponent {
+    public static final long NO_LEASE = 0;
+    public static final String DEFAULT_STATE_FILE_NAME = "sonar-gerrit-rate-limit.state";
+
+    private static final Logger LOG = Loggers.get(GerritRateLimiter.class);
+    private static final Object JVM_LOCK = new Object();
+    private static final String FIELD_SEPARATOR = ";";
+    private static final String LEASE_SEPARATOR = ",";
+    private static final long LEASE_TIMEOUT_MILLIS = 5L * 60 * 1000;
+    private static final long MAX_WAIT_MILLIS = 10L * 60 * 1000;
+    private static final long MAX_PAUSE_MILLIS = 1000;
+    private static final long SLOT_POLL_MILLIS = 50;
+    private static final double MILLIS_PER_MINUTE = 60 * 1000.0;
+
+    private final GerritConfiguration gerritConfiguration;
+    private boolean stateFileUsable = true;
+
+    public GerritRateLimiter(GerritConfiguration gerritConfiguration) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritRateLimiter");
+        this.gerritConfiguration = gerritConfiguration;
+    }
+
+    public boolean isEnabled() {
+        return stateFileUsable && (gerritConfiguration.getRequestsPerMinute() > 0
+                || gerritConfiguration.getMaxConcurrentRequests() > 0);
+    }
+
+    /**
+     * Wait for a token and a free request slot. After a long wait, the
+     * request is let through anyway so the analysis is never stuck.
+     *
+     * @return the lease to give back to {@link #release(long)}
+     */
+    public long acquire() {
+        return acquire(MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxWaitMillis
+     *            the longest wait before letting the request through, 0 for
+     *            the default one
+     * @see #acquire()
+     */
+    public long acquire(long maxWaitMillis) {
+        if (!isEnabled()) {
+            return NO_LEASE;
+        }
+        long maxWait = maxWaitMillis > 0 ? Math.min(maxWaitMillis, MAX_WAIT_MILLIS) : MAX_WAIT_MILLIS;
+        long deadline = currentTimeMillis() + maxWait;
+        try {
+            while (true) {
+                Attempt attempt = tryAcquire(currentTimeMillis());
+                if (attempt.lease != NO_LEASE) {
+                    return attempt.lease;
+                }
+                if (currentTimeMillis() > deadline) {
+                    LOG.warn("[GERRIT PLUGIN] Rate limiter: waited more than {} ms, sending the request anyway",
+                            maxWait);
+                    return NO_LEASE;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("[GERRIT PLUGIN] Rate limiter: waiting {} ms", attempt.waitMillis);
+                }
+                pause(Math.max(1, Math.min(attempt.waitMillis, MAX_PAUSE_MILLIS)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return NO_LEASE;
+        } catch (IOException e) {
+            disable(e);
+            return NO_LEASE;
+        }
+    }
+
+    public void release(long lease) {
+        if (lease == NO_LEASE || !isEnabled()) {
+            return;
+        }
+        try {
+            synchronized (JVM_LOCK) {
+                try (RandomAccessFile file = new RandomAccessFile(stateFile(), "rw");
+                        FileChannel channel = file.getChannel();
+                        FileLock lock = channel.lock()) {
+                    State state = read(channel, currentTimeMillis());
+                    state.leases.remove(Long.valueOf(lease));
+                    write(channel, state);
+                }
+            }
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    @NotNull
+    protected Attempt tryAcquire(long now) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (RandomAccessFile file = new RandomAccessFile(stateFile(), "rw");
+                    FileChannel channel = file.getChannel();
+                    FileLock lock = channel.lock()) {
+                State state = read(channel, now);
+                Attempt attempt = new Attempt();
+                int requestsPerMinute = gerritConfiguration.getRequestsPerMinute();
+                int maxConcurrentRequests = gerritConfiguration.getMaxConcurrentRequests();
+
+                if (requestsPerMinute > 0) {
+                    double tokensPerMilli = requestsPerMinute / MILLIS_PER_MINUTE;
+                    state.tokens = Math.min(capacity(requestsPerMinute), state.tokens + (now - state.lastRefill)
+                            * tokensPerMilli);
+                    if (state.tokens < 1) {
+                        attempt.waitMillis = (long) Math.ceil((1 - state.tokens) / tokensPerMilli);
+                    }
+                }
+                state.lastRefill = now;
+                if (maxConcurrentRequests > 0 && state.leases.size() >= maxConcurrentRequests) {
+                    attempt.waitMillis = Math.max(attempt.waitMillis, SLOT_POLL_MILLIS);
+                }
+
+                if (attempt.waitMillis == 0) {
+                    if (requestsPerMinute > 0) {
+                        state.tokens -= 1;
+                    }
+                    attempt.lease = now + LEASE_TIMEOUT_MILLIS;
+                    state.leases.add(attempt.lease);
+                }
+                write(channel, state);
+                return attempt;
+            }
+        }
+    }
+
+    @NotNull
+    protected File stateFile() {
+        String stateFile = gerritConfiguration.getRateLimitStateFile();
+        if (StringUtils.isBlank(stateFile)) {
+            return new File(System.getProperty("java.io.tmpdir"), DEFAULT_STATE_FILE_NAME);
+        }
+        return new File(stateFile);
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    protected void pause(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    private void disable(IOException e) {
+        LOG.warn("[GERRIT PLUGIN] Rate limiter state file " + stateFile()
+                + " is not usable, requests will not be throttled", e);
+        stateFileUsable = false;
+    }
+
+    private static double capacity(int requestsPerMinute) {
+        return Math.max(1, requestsPerMinute / 60.0);
+    }
+
+    private State read(FileChannel channel, long now) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.read(buffer, 0);
+        String content = new String(buffer.array(), StandardCharsets.UTF_8).trim();
+
+        State state = new State();
+        state.tokens = capacity(gerritConfiguration.getRequestsPerMinute());
+        state.lastRefill = now;
+        String[] fields = StringUtils.splitPreserveAllTokens(content, FIELD_SEPARATOR);
+        if (fields == null || fields.length != 3) {
+            return state;
+        }
+        try {
+            state.tokens = Double.parseDouble(fields[0]);
+            state.lastRefill = Math.min(now, Long.parseLong(fields[1]));
+            for (String lease : StringUtils.split(fields[2], LEASE_SEPARATOR)) {
+                state.leases.add(Long.valueOf(lease));
+            }
+        } catch (NumberFormatException e) {
+            LOG.warn("[GERRIT PLUGIN] Rate limiter state {} is invalid, resetting it", content);
+            return new State(capacity(gerritConfiguration.getRequestsPerMinute()), now);
+        }
+        for (Iterator<Long> iterator = state.leases.iterator(); iterator.hasNext();) {
+            if (iterator.next() <= now) {
+                iterator.remove();
+            }
+        }
+        return state;
+    }
+
+    private void write(FileChannel channel, State state) throws IOException {
+        String content = state.tokens + FIELD_SEPARATOR + state.lastRefill + FIELD_SEPARATOR
+                + StringUtils.join(state.leases, LEASE_SEPARATOR);
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), 0);
+    }
+
+    static class Attempt {
+        long lease = NO_LEASE;
+        long waitMillis;
+    }
+
+    private static class State {
+        double tokens;
+        long lastRefill;
+        final List<Long> leases = new ArrayList<Long>();
+
+        State() {
+        }
+
+        State(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+}
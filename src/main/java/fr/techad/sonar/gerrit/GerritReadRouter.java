@@ -0,0 +1,151 @@
+package fr.techad.sonar.gerrit;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHost;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Choice of the Gerrit replica serving a read. Each replica keeps a smoothed
+ * latency and its last latencies; the read goes to the replica with the
+ * lowest smoothed latency, and one that was never measured is tried first. A
+ * failed read counts as a slow one, so the replica is avoided until the
+ * others are slower.
+ */
+public class GerritReadRouter {
+    public static final long NO_HEDGE = -1;
+
+    private static final Logger LOG = Loggers.get(GerritReadRouter.class);
+    private static final double SMOOTHING = 0.2;
+    private static final double FAILURE_PENALTY_MILLIS = 10000;
+    private static final int SAMPLES = 64;
+    private static final int MIN_HEDGE_SAMPLES = 10;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final List<Endpoint> endpoints;
+
+    public GerritReadRouter(@NotNull List<String> replicaUrls) {
+        List<Endpoint> parsed = new ArrayList<Endpoint>();
+        for (String url : replicaUrls) {
+            try {
+                URI uri = new URI(url);
+                if (uri.getHost() == null) {
+                    throw new URISyntaxException(url, "no host");
+                }
+                HttpHost host = new HttpHost(uri.getHost(), uri.getPort(), StringUtils.defaultIfEmpty(
+                        uri.getScheme(), HttpHost.DEFAULT_SCHEME_NAME));
+                parsed.add(new Endpoint(host, StringUtils.removeEnd(StringUtils.defaultString(uri.getRawPath()), "/")));
+            } catch (URISyntaxException e) {
+                LOG.warn("[GERRIT PLUGIN] Read replica {} is not a valid URL, it is ignored: {}", url, e.getMessage());
+            }
+        }
+        this.endpoints = Collections.unmodifiableList(parsed);
+    }
+
+    public boolean hasReplicas() {
+        return !endpoints.isEmpty();
+    }
+
+    @NotNull
+    public List<Endpoint> endpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return the replica with the lowest smoothed latency
+     */
+    @NotNull
+    public synchronized Endpoint choose() {
+        return fastest(null);
+    }
+
+    /**
+     * @return the fastest replica other than the given one, null if there is
+     *         none
+     */
+    @Nullable
+    public synchronized Endpoint alternative(@NotNull Endpoint excluded) {
+        return endpoints.size() > 1 ? fastest(excluded) : null;
+    }
+
+    public synchronized void record(@NotNull Endpoint endpoint, long latencyMillis) {
+        double latency = Math.max(1, latencyMillis);
+        endpoint.smoothedLatency = endpoint.smoothedLatency == 0 ? latency : endpoint.smoothedLatency + SMOOTHING
+                * (latency - endpoint.smoothedLatency);
+        endpoint.samples[endpoint.sampleCount % SAMPLES] = latencyMillis;
+        endpoint.sampleCount++;
+    }
+
+    public synchronized void penalize(@NotNull Endpoint endpoint) {
+        endpoint.smoothedLatency = Math.max(endpoint.smoothedLatency * 2, FAILURE_PENALTY_MILLIS);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] Read replica {} failed, its latency is now counted as {} ms", endpoint,
+                    (long) endpoint.smoothedLatency);
+        }
+    }
+
+    /**
+     * @return the 95th percentile of the last latencies of the replica, after
+     *         which a read is worth sending again, or {@link #NO_HEDGE} while
+     *         there are too few of them
+     */
+    public synchronized long hedgeDelayMillis(@NotNull Endpoint endpoint) {
+        int count = Math.min(endpoint.sampleCount, SAMPLES);
+        if (count < MIN_HEDGE_SAMPLES) {
+            return NO_HEDGE;
+        }
+        long[] sorted = Arrays.copyOf(endpoint.samples, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) Math.ceil(count * HEDGE_PERCENTILE) - 1)];
+    }
+
+    private Endpoint fastest(Endpoint excluded) {
+        Endpoint fastest = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != excluded && (fastest == null || endpoint.smoothedLatency < fastest.smoothedLatency)) {
+                fastest = endpoint;
+            }
+        }
+        return fastest;
+    }
+
+    public static class Endpoint {
+        private final HttpHost host;
+        private final String basePath;
+        private final long[] samples = new long[SAMPLES];
+        private int sampleCount;
+        private double smoothedLatency;
+
+        Endpoint(@NotNull HttpHost host, @NotNull String basePath) {
+            this.host = host;
+            this.basePath = basePath;
+        }
+
+        @NotNull
+        public HttpHost getHost() {
+            return host;
+        }
+
+        /**
+         * @return the base path of the replica, without trailing slash
+         */
+        @NotNull
+        public String getBasePath() {
+            return basePath;
+        }
+
+        @Override
+        public String toString() {
+            return host.toURI() + basePath;
+        }
+    }
+}
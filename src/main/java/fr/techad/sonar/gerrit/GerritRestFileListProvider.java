@@ -0,0 +1,31 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Files of the revision listed by the Gerrit REST API.
+ */
+public class GerritRestFileListProvider implements GerritFileListProvider {
+    private static final String RESPONSE_PREFIX = ")]}'";
+    private final GerritTransport gerritTransport;
+    private final ObjectMapper objectMapper;
+
+    public GerritRestFileListProvider(@NotNull GerritTransport gerritTransport, @NotNull ObjectMapper objectMapper) {
+        this.gerritTransport = gerritTransport;
+        this.objectMapper = objectMapper;
+    }
+
+    @NotNull
+    @Override
+    public Set<String> listFiles() throws IOException {
+        String response = gerritTransport.listFiles();
+        return objectMapper.readValue(StringUtils.replaceOnce(response, RESPONSE_PREFIX, ""),
+                ListFilesResponse.class).keySet();
+    }
+}
@@ -0,0 +1,120 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Check whether the analyzed revision is still the current patch set of the
+ * change. The answer is cached for a short time, so the checks at start-up
+ * and before posting cost at most one request each.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritRevisionChecker implements BatchComponent {
+    public static final String POLICY_OFF = "off";
+    public static final String POLICY_SKIP = "skip";
+    public static final String POLICY_FAIL = "fail";
+
+    private static final Logger LOG = Loggers.get(GerritRevisionChecker.class);
+    private static final String RESPONSE_PREFIX = ")]}'";
+    private static final String CURRENT_REVISION = "current_revision";
+    private static final String CURRENT = "current";
+    private static final long CACHE_MILLIS = 10 * 1000L;
+
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritTransportProvider gerritTransportProvider;
+    private final GerritChangeQuery gerritChangeQuery;
+    private String currentRevision;
+    private String currentPatchSet;
+    private long checkedAt;
+    private boolean superseded;
+
+    public GerritRevisionChecker(GerritConfiguration gerritConfiguration,
+            GerritTransportProvider gerritTransportProvider, GerritChangeQuery gerritChangeQuery) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritRevisionChecker");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritTransportProvider = gerritTransportProvider;
+        this.gerritChangeQuery = gerritChangeQuery;
+    }
+
+    public boolean isEnabled() {
+        return !POLICY_OFF.equalsIgnoreCase(gerritConfiguration.getStaleRevisionPolicy());
+    }
+
+    public boolean shouldFail() {
+        return POLICY_FAIL.equalsIgnoreCase(gerritConfiguration.getStaleRevisionPolicy());
+    }
+
+    /**
+     * @return true if a newer patch set has been uploaded. False when the
+     *         check is disabled or Gerrit could not tell. Once superseded, a
+     *         revision stays so without asking Gerrit again.
+     */
+    public synchronized boolean isSuperseded() {
+        if (!isEnabled() || superseded) {
+            return superseded;
+        }
+        String revisionId = gerritConfiguration.getRevisionId();
+        if (CURRENT.equalsIgnoreCase(revisionId)) {
+            return false;
+        }
+        long now = currentTimeMillis();
+        if (checkedAt == 0 && gerritChangeQuery.snapshot() != null) {
+            // The first check reads the snapshot of the change instead
+            currentRevision = gerritChangeQuery.snapshot().getCurrentRevision();
+            currentPatchSet = gerritChangeQuery.snapshot().getCurrentPatchSet();
+            checkedAt = now;
+        } else if (checkedAt == 0 || now - checkedAt > CACHE_MILLIS) {
+            fetchCurrentRevision();
+            checkedAt = now;
+        }
+        if (currentRevision == null) {
+            return false;
+        }
+        superseded = !revisionId.equalsIgnoreCase(currentRevision) && !revisionId.equals(currentPatchSet);
+        if (superseded) {
+            LOG.warn("[GERRIT PLUGIN] Revision {} has been superseded by patch set {} ({})", revisionId,
+                    currentPatchSet, currentRevision);
+        }
+        return superseded;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void fetchCurrentRevision() {
+        currentRevision = null;
+        currentPatchSet = null;
+        try {
+            String response = gerritTransportProvider.transport().get(
+                    GerritConnector.currentRevisionPath(gerritConfiguration));
+            JsonNode change = new ObjectMapper().readTree(StringUtils.replaceOnce(response, RESPONSE_PREFIX, ""));
+            currentRevision = StringUtils.trimToNull(change.path(CURRENT_REVISION).asText());
+            Iterator<Map.Entry<String, JsonNode>> revisions = change.path("revisions").fields();
+            while (revisions.hasNext()) {
+                Map.Entry<String, JsonNode> revision = revisions.next();
+                if (revision.getKey().equalsIgnoreCase(currentRevision)) {
+                    currentPatchSet = revision.getValue().path("_number").asText();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to get the current revision, assuming it is still {}",
+                    gerritConfiguration.getRevisionId());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Current revision error", e);
+            }
+        }
+    }
+}
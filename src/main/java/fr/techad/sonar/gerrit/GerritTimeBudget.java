@@ -0,0 +1,156 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Overall time budget of the Gerrit requests of an analysis. Every request
+ * gets a fraction of the remaining budget as timeout, and the review is
+ * degraded as the budget runs out: full review, then only the comments with
+ * the highest severities, then only the vote and a summary. A reserve is kept
+ * for the vote only review, so that a timed out review still leaves time to
+ * send a smaller one.
+ *
+ * A budget of 0 means no budget and no timeout.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritTimeBudget implements BatchComponent {
+    /**
+     * How much of the review can be sent.
+     */
+    public enum Level {
+        /** Every comment */
+        FULL,
+        /** The comments with the highest severities, up to a maximum */
+        CAPPED,
+        /** The vote and a summary of the comments */
+        VOTE_ONLY
+    }
+
+    private static final Logger LOG = Loggers.get(GerritTimeBudget.class);
+    private static final double FULL_REMAINING_RATIO = 0.5;
+    private static final double CAPPED_REMAINING_RATIO = 0.2;
+    private static final double REQUEST_REMAINING_RATIO = 0.5;
+    private static final double RESERVE_RATIO = 0.1;
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private final GerritConfiguration gerritConfiguration;
+    private long spentMillis;
+    private volatile boolean reserveReleased;
+
+    public GerritTimeBudget(GerritConfiguration gerritConfiguration) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritTimeBudget");
+        this.gerritConfiguration = gerritConfiguration;
+    }
+
+    public boolean isEnabled() {
+        return gerritConfiguration.getTimeBudget() > 0;
+    }
+
+    public long budgetMillis() {
+        return gerritConfiguration.getTimeBudget() * MILLIS_PER_SECOND;
+    }
+
+    public synchronized long remainingMillis() {
+        return isEnabled() ? Math.max(0, budgetMillis() - spentMillis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the timeout of the next request, or 0 for none
+     * @throws IOException
+     *             if the budget is exhausted
+     */
+    public int nextTimeoutMillis() throws IOException {
+        return nextTimeoutMillis(0);
+    }
+
+    /**
+     * @param waitedMillis
+     *            the time the request already waited, not spent yet
+     * @return the timeout of the request, or 0 for none: half of the remaining
+     *         budget, minus the reserve until it is released
+     * @throws IOException
+     *             if the budget is exhausted
+     * @see #releaseReserve()
+     */
+    public int nextTimeoutMillis(long waitedMillis) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long remaining = Math.max(0, remainingMillis() - waitedMillis);
+        if (remaining == 0) {
+            throw new IOException("Gerrit time budget of " + gerritConfiguration.getTimeBudget()
+                    + " s exhausted");
+        }
+        long timeout = remaining;
+        if (!reserveReleased) {
+            timeout = (long) (remaining * REQUEST_REMAINING_RATIO);
+            long reserve = (long) (budgetMillis() * RESERVE_RATIO);
+            if (remaining > reserve) {
+                timeout = Math.min(timeout, remaining - reserve);
+            }
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout));
+    }
+
+    /**
+     * Let the next requests use the whole remaining budget, for the last
+     * attempt to send the review.
+     */
+    public void releaseReserve() {
+        reserveReleased = true;
+    }
+
+    /**
+     * Count the duration of a request.
+     */
+    public synchronized void spend(long millis) {
+        spentMillis += millis;
+        if (isEnabled() && LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] Gerrit time budget: {} ms spent out of {} ms", spentMillis, budgetMillis());
+        }
+    }
+
+    /**
+     * @return how much of the review can be sent with the remaining budget
+     */
+    public Level level() {
+        if (!isEnabled()) {
+            return Level.FULL;
+        }
+        double remainingRatio = (double) remainingMillis() / budgetMillis();
+        if (remainingRatio > FULL_REMAINING_RATIO) {
+            return Level.FULL;
+        }
+        if (remainingRatio > CAPPED_REMAINING_RATIO) {
+            return Level.CAPPED;
+        }
+        return Level.VOTE_ONLY;
+    }
+
+    /**
+     * A review is not idempotent: after a socket timeout, Gerrit may still
+     * apply it, and sending a smaller one would post the message, the
+     * comments and the vote twice. Only a timeout getting a connection, or
+     * connecting to Gerrit, proves that the review was not sent.
+     *
+     * @return true if the failure is a timeout before the request was sent,
+     *         after which a smaller review may still be sent
+     */
+    public static boolean isUnsentTimeout(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            // Also thrown when no pooled connection is available in time
+            if (cause instanceof ConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
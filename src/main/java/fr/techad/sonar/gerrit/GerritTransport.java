@@ -0,0 +1,51 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Transport of the Gerrit REST calls behind {@link GerritFacade}. The paths
+ * given to the generic calls are relative to the Gerrit base path, e.g.
+ * <code>/changes/?q=change:1234</code>, and get the authentication prefix when
+ * needed.
+ */
+public interface GerritTransport {
+    /**
+     * @return the files of the revision under review
+     */
+    @NotNull
+    String listFiles() throws IOException;
+
+    @NotNull
+    String setReview(@NotNull String reviewInputAsJson) throws IOException;
+
+    /**
+     * Send a review already serialized as UTF-8 JSON.
+     */
+    @NotNull
+    String setReview(@NotNull byte[] reviewInputAsJson) throws IOException;
+
+    /**
+     * Send a review whose body is written while it is sent.
+     */
+    @NotNull
+    String setReview(@NotNull HttpEntity reviewInputEntity) throws IOException;
+
+    /**
+     * @throws GerritHttpException
+     *             if Gerrit answers with an error status
+     */
+    @NotNull
+    String get(@NotNull String path) throws IOException;
+
+    /**
+     * Same as {@link #get(String)}, without waiting for the answer when the
+     * transport can send requests in parallel. Errors are thrown by
+     * {@link Future#get()}.
+     */
+    @NotNull
+    Future<String> getAsync(@NotNull String path);
+}
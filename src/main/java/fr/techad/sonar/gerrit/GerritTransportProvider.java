@@ -0,0 +1,47 @@
+package fr.techad.sonar.gerrit;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.BatchComponent;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * The transport selected by the configuration, shared by every component
+ * calling Gerrit during the analysis, so the concurrent transport keeps a
+ * single pool of threads.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GerritTransportProvider implements BatchComponent {
+    public static final String TRANSPORT_BLOCKING = "blocking";
+    public static final String TRANSPORT_CONCURRENT = "concurrent";
+
+    private static final Logger LOG = Loggers.get(GerritTransportProvider.class);
+    private final GerritConfiguration gerritConfiguration;
+    private final GerritConnector gerritConnector;
+    private GerritTransport gerritTransport;
+
+    public GerritTransportProvider(GerritConfiguration gerritConfiguration, GerritConnector gerritConnector) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritTransportProvider");
+        this.gerritConfiguration = gerritConfiguration;
+        this.gerritConnector = gerritConnector;
+    }
+
+    /**
+     * @return the transport selected by the configuration, the connector
+     *         itself by default
+     */
+    @NotNull
+    public synchronized GerritTransport transport() {
+        if (gerritTransport == null) {
+            if (TRANSPORT_CONCURRENT.equalsIgnoreCase(gerritConfiguration.getTransport())) {
+                gerritTransport = new GerritConcurrentTransport(gerritConnector);
+            } else {
+                gerritTransport = gerritConnector;
+            }
+        }
+        return gerritTransport;
+    }
+}
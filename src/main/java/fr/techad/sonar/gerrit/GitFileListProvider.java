@@ -0,0 +1,131 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Files of the revision listed from the local git checkout, which already
+ * holds the reviewed revision: the revision is diffed against its first
+ * parent, or against the configured base commit, with rename detection. A
+ * renamed file is listed under its new name, as Gerrit does.
+ *
+ * The git command line is used, it must be on the path.
+ */
+public class GitFileListProvider implements GerritFileListProvider {
+    private static final Logger LOG = Loggers.get(GitFileListProvider.class);
+    private static final String FIRST_PARENT = "^1";
+    private static final char SEPARATOR = '\0';
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private final GerritConfiguration gerritConfiguration;
+
+    public GitFileListProvider(@NotNull GerritConfiguration gerritConfiguration) {
+        this.gerritConfiguration = gerritConfiguration;
+    }
+
+    @NotNull
+    @Override
+    public Set<String> listFiles() throws IOException {
+        String revision = gerritConfiguration.getRevisionId();
+        if (StringUtils.isBlank(revision)) {
+            throw new IOException("no revision to diff");
+        }
+        String base = StringUtils.defaultIfBlank(gerritConfiguration.getGitBaseCommit(), revision + FIRST_PARENT);
+        List<String> command = Arrays.asList("git", "diff", "--name-status", "-z", "-M", "--no-color", base,
+                revision, "--");
+        File directory = gerritConfiguration.getProjectBaseDir();
+
+        LOG.info("[GERRIT PLUGIN] Listing files with git diff {} {} in {}", new Object[] { base, revision,
+                directory });
+
+        return parse(run(command, directory));
+    }
+
+    /**
+     * @param output
+     *            the <code>--name-status -z</code> output: a status, then one
+     *            path, or two for a rename or a copy
+     */
+    @NotNull
+    static Set<String> parse(@NotNull String output) {
+        Set<String> files = new LinkedHashSet<String>();
+        String[] fields = StringUtils.splitPreserveAllTokens(output, SEPARATOR);
+        int index = 0;
+        while (index < fields.length && !fields[index].isEmpty()) {
+            char status = fields[index].charAt(0);
+            if (status == 'R' || status == 'C') {
+                index++;
+            }
+            index++;
+            if (index < fields.length) {
+                files.add(fields[index]);
+            }
+            index++;
+        }
+        return files;
+    }
+
+    /**
+     * The error output goes to a temporary file, so that git never blocks on
+     * it, and ends up in the exception when git fails.
+     */
+    @NotNull
+    private static String run(@NotNull List<String> command, @NotNull File directory) throws IOException {
+        File errorFile = File.createTempFile("gerrit-git", ".err");
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command).directory(directory)
+                    .redirectError(ProcessBuilder.Redirect.to(errorFile));
+            Process process = processBuilder.start();
+            try {
+                process.getOutputStream().close();
+                String output = read(process.getInputStream());
+                int exitCode = process.waitFor();
+                if (exitCode != 0) {
+                    String error = StringUtils.abbreviate(StringUtils.trimToEmpty(read(new FileInputStream(
+                            errorFile))), MAX_ERROR_LENGTH);
+                    throw new IOException(StringUtils.join(command, ' ') + " exited with " + exitCode
+                            + (error.isEmpty() ? "" : ": " + error));
+                }
+                return output;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running git", e);
+            } finally {
+                process.destroy();
+            }
+        } finally {
+            if (!errorFile.delete()) {
+                errorFile.deleteOnExit();
+            }
+        }
+    }
+
+    @NotNull
+    private static String read(@NotNull InputStream input) throws IOException {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            input.close();
+        }
+    }
+}
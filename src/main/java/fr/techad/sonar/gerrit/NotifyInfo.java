@@ -0,0 +1,25 @@
+package fr.techad.sonar.gerrit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accounts to notify for a recipient type of a review. Used with JSON
+ * marshaller only.
+ */
+public class NotifyInfo {
+    private List<String> accounts = new ArrayList<String>();
+
+    public List<String> getAccounts() {
+        return accounts;
+    }
+
+    public void addAccount(String account) {
+        accounts.add(account);
+    }
+
+    @Override
+    public String toString() {
+        return "NotifyInfo [accounts=" + accounts + "]";
+    }
+}
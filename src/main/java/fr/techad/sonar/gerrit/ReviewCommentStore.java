@@ -0,0 +1,658 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Compact storage of the comments of a review, kept in columns of primitive
+ * arrays until the review is serialized. File names, rule keys and severities
+ * are interned and referenced by ordinal. Issue messages are only rendered
+ * while the JSON is written.
+ *
+ * Comments given already rendered, e.g. from the issue cache, are kept as is.
+ * Grouped comments are rendered when grouped, but keep their severity.
+ *
+ * To bound the heap of large reviews, the comments can be spilled to a
+ * {@link ReviewSpillFile} and are then streamed from it when serialized. The
+ * comment indexes and counts keep covering the spilled comments.
+ */
+public class ReviewCommentStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NO_LINE = -1;
+    private static final int NO_ORDINAL = -1;
+    private static final String THREAD_SEPARATOR = "\n\n";
+
+    private final Interner<String> files = new Interner<String>();
+    private final Interner<RuleKey> rules = new Interner<RuleKey>();
+    private final Interner<String> severities = new Interner<String>();
+    private final List<String> renderedRules = new ArrayList<String>();
+    private int[] fileOrdinals = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] ruleOrdinals = new int[INITIAL_CAPACITY];
+    private int[] severityOrdinals = new int[INITIAL_CAPACITY];
+    private boolean[] newIssues = new boolean[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private int[] fileSizes = new int[INITIAL_CAPACITY];
+    private int size;
+    private int fileCount;
+    private int maxLevel;
+    private final int[] levelCounts = new int[ReviewUtils.thresholdToValue(Severity.BLOCKER) + 1];
+    private char[] chars = new char[0];
+    private ReviewSpillFile spillFile;
+
+    /**
+     * Add an issue comment, rendered as
+     * <code>[isNew] New: Rule:Key Severity: SEVERITY, Message: message</code>
+     * when serialized.
+     */
+    public synchronized void addIssue(@NotNull String file, int line, boolean isNew, @NotNull RuleKey ruleKey,
+            @NotNull String severity, String message) {
+        int index = append(file, Math.max(0, line), message);
+        int ruleOrdinal = rules.intern(ruleKey);
+        if (ruleOrdinal == renderedRules.size()) {
+            renderedRules.add(StringUtils.capitalize(ruleKey.toString()));
+        }
+        ruleOrdinals[index] = ruleOrdinal;
+        severityOrdinals[index] = severities.intern(severity);
+        newIssues[index] = isNew;
+        countLevel(ReviewUtils.thresholdToValue(severity));
+    }
+
+    /**
+     * Add already rendered comments to a file.
+     */
+    public synchronized void addComments(@NotNull String file, @NotNull List<? extends ReviewFileComment> comments) {
+        for (ReviewFileComment comment : comments) {
+            int line = NO_LINE;
+            if (comment instanceof ReviewLineComment) {
+                Integer commentLine = ((ReviewLineComment) comment).getLine();
+                line = commentLine == null ? 0 : commentLine;
+            }
+            append(file, line, comment.getMessage());
+            countLevel(ReviewUtils.messageLevel(comment.getMessage()));
+        }
+    }
+
+    /**
+     * @return the number of files with comments
+     */
+    public synchronized int fileCount() {
+        if (!isSpilled()) {
+            return fileCount;
+        }
+        int result = spillFile.files().size();
+        for (int fileOrdinal = 0; fileOrdinal < files.size(); fileOrdinal++) {
+            if (fileSizes[fileOrdinal] > 0 && !spillFile.files().contains(files.get(fileOrdinal))) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of comments, spilled ones included
+     */
+    public synchronized int size() {
+        return spilledSize() + size;
+    }
+
+    /**
+     * @return the number of comments kept in memory
+     */
+    public synchronized int bufferedSize() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spilledSize() > 0;
+    }
+
+    /**
+     * Move the comments kept in memory to the end of a spill file, created on
+     * the first call. The severity counts and max level are kept.
+     *
+     * @return the number of spilled comments
+     */
+    public synchronized int spill(@NotNull File file) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        if (spillFile == null) {
+            spillFile = new ReviewSpillFile(file, levelCounts.length + 1);
+        }
+        int[] order = orderByFile();
+        StringBuilder buffer = new StringBuilder();
+        int position = 0;
+        for (int fileOrdinal = 0; fileOrdinal < files.size(); fileOrdinal++) {
+            if (fileSizes[fileOrdinal] == 0) {
+                continue;
+            }
+            spillFile.beginBatch(files.get(fileOrdinal));
+            for (int count = 0; count < fileSizes[fileOrdinal]; count++) {
+                int index = order[position++];
+                // Shifted by one, for the comments without severity
+                int level = level(index) + 1;
+                if (ruleOrdinals[index] == NO_ORDINAL && messages[index] == null) {
+                    spillFile.writeComment(lines[index], level, null, 0);
+                } else {
+                    render(index, buffer);
+                    spillFile.writeComment(lines[index], level, toChars(buffer), buffer.length());
+                }
+            }
+        }
+        int spilled = size;
+        files.clear();
+        Arrays.fill(fileSizes, 0);
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+        fileCount = 0;
+        return spilled;
+    }
+
+    /**
+     * @return the highest severity level of the comments, as given by
+     *         {@link ReviewUtils#thresholdToValue(String)}
+     */
+    public synchronized int maxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * @return the number of comments of each severity, from the highest one.
+     *         Comments without severity are not counted.
+     */
+    @NotNull
+    public synchronized Map<String, Integer> severityCounts() {
+        Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        for (int level = levelCounts.length - 1; level >= 0; level--) {
+            if (levelCounts[level] > 0) {
+                result.put(ReviewUtils.valueToThreshold(level), levelCounts[level]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keep only the comments with the highest severities, in their order. The
+     * severity counts and the max level still describe every comment. The
+     * spilled comments come first, they are filtered by copying them to a new
+     * spill file.
+     *
+     * @return the number of removed comments
+     */
+    public synchronized int retainTop(int max) {
+        if (size() <= max) {
+            return 0;
+        }
+        // Histogram shifted by one, for the comments without severity
+        int[] levels = new int[size];
+        int[] histogram = isSpilled() ? spillFile.levelCounts() : new int[levelCounts.length + 1];
+        int[] spilledHistogram = histogram.clone();
+        for (int index = 0; index < size; index++) {
+            levels[index] = level(index) + 1;
+            histogram[levels[index]]++;
+        }
+        int cutoff = 0;
+        int quota = Math.max(0, max);
+        for (int level = histogram.length - 1; level >= 0; level--) {
+            if (histogram[level] >= quota) {
+                cutoff = level;
+                break;
+            }
+            quota -= histogram[level];
+        }
+
+        int removed = size();
+        if (isSpilled()) {
+            try {
+                spillFile = spillFile.retain(cutoff, quota);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to filter the spilled comments", e);
+            }
+            quota -= Math.min(quota, spilledHistogram[cutoff]);
+        }
+        int kept = 0;
+        Arrays.fill(fileSizes, 0);
+        fileCount = 0;
+        for (int index = 0; index < size; index++) {
+            if (levels[index] < cutoff || (levels[index] == cutoff && quota-- <= 0)) {
+                continue;
+            }
+            move(index, kept);
+            if (fileSizes[fileOrdinals[kept]]++ == 0) {
+                fileCount++;
+            }
+            kept++;
+        }
+        Arrays.fill(messages, kept, size, null);
+        size = kept;
+        return removed - size();
+    }
+
+    /**
+     * Group the issue comments added since an index. The issues of a file
+     * with the same rule, severity and message become a single comment on
+     * their first line, listing the occurrences and their lines. Then the
+     * comments of a same line are merged into one comment, with the highest
+     * severity of its parts. Rendered comments are kept as is.
+     *
+     * @param from
+     *            index of the first comment to group
+     * @return the number of removed comments
+     */
+    public synchronized int group(int from) {
+        from -= spilledSize();
+        // Sorted line index of the issues
+        List<Integer> issues = new ArrayList<Integer>();
+        for (int index = from; index < size; index++) {
+            if (ruleOrdinals[index] != NO_ORDINAL) {
+                issues.add(index);
+            }
+        }
+        Collections.sort(issues, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                int byLine = Integer.compare(lines[left], lines[right]);
+                return byLine != 0 ? byLine : Integer.compare(left, right);
+            }
+        });
+
+        Map<String, List<Integer>> occurrences = new LinkedHashMap<String, List<Integer>>();
+        for (Integer index : issues) {
+            String key = fileOrdinals[index] + ":" + ruleOrdinals[index] + ":" + severityOrdinals[index] + ":"
+                    + newIssues[index] + ":" + messages[index];
+            List<Integer> indexes = occurrences.get(key);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                occurrences.put(key, indexes);
+            }
+            indexes.add(index);
+        }
+        Map<Long, List<List<Integer>>> threads = new HashMap<Long, List<List<Integer>>>();
+        Map<Integer, List<List<Integer>>> threadOf = new HashMap<Integer, List<List<Integer>>>();
+        for (List<Integer> indexes : occurrences.values()) {
+            int first = indexes.get(0);
+            Long position = ((long) fileOrdinals[first] << 32) | (lines[first] & 0xffffffffL);
+            List<List<Integer>> thread = threads.get(position);
+            if (thread == null) {
+                thread = new ArrayList<List<Integer>>();
+                threads.put(position, thread);
+            }
+            thread.add(indexes);
+            for (Integer index : indexes) {
+                threadOf.put(index, thread);
+            }
+        }
+        if (threads.size() == issues.size()) {
+            return 0;
+        }
+
+        int end = size;
+        int[] originalLines = Arrays.copyOf(lines, end);
+        int removed = 0;
+        int kept = from;
+        StringBuilder buffer = new StringBuilder();
+        for (int index = from; index < end; index++) {
+            int level = level(index);
+            if (level >= 0 && level < levelCounts.length) {
+                levelCounts[level]--;
+            }
+            List<List<Integer>> thread = threadOf.get(index);
+            if (thread != null && thread.get(0).get(0) != index) {
+                fileSizes[fileOrdinals[index]]--;
+                removed++;
+                continue;
+            }
+            move(index, kept);
+            if (thread != null && (thread.size() > 1 || thread.get(0).size() > 1)) {
+                mergeThread(kept, thread, originalLines, buffer);
+            }
+            countLevel(level(kept));
+            kept++;
+        }
+        Arrays.fill(messages, kept, end, null);
+        size = kept;
+        return removed;
+    }
+
+    public synchronized void clear() {
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+        files.clear();
+        Arrays.fill(levelCounts, 0);
+        Arrays.fill(fileSizes, 0);
+        Arrays.fill(messages, 0, size, null);
+        size = 0;
+        fileCount = 0;
+        maxLevel = 0;
+    }
+
+    /**
+     * Render the comments between two indexes.
+     *
+     * @param from
+     *            index of the first comment, inclusive
+     * @param to
+     *            index of the last comment, exclusive
+     */
+    @NotNull
+    public synchronized List<ReviewLineComment> toLineComments(int from, int to) {
+        List<ReviewLineComment> result = new ArrayList<ReviewLineComment>(to - from);
+        StringBuilder buffer = new StringBuilder();
+        int spilled = spilledSize();
+        for (int index = from - spilled; index < to - spilled; index++) {
+            ReviewLineComment comment = new ReviewLineComment();
+            comment.setLine(Math.max(0, lines[index]));
+            comment.setMessage(render(index, buffer).toString());
+            result.add(comment);
+        }
+        return result;
+    }
+
+    /**
+     * Build the comments as they were stored before this class: by file name.
+     * Expensive, only meant for tests and debugging.
+     */
+    @NotNull
+    public synchronized Map<String, List<ReviewFileComment>> toMap() {
+        Map<String, List<ReviewFileComment>> result = new LinkedHashMap<String, List<ReviewFileComment>>();
+        StringBuilder buffer = new StringBuilder();
+        if (isSpilled()) {
+            try {
+                for (String file : spillFile.files()) {
+                    result.put(file, spillFile.read(file));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read the spilled comments", e);
+            }
+        }
+        for (int index = 0; index < size; index++) {
+            String file = files.get(fileOrdinals[index]);
+            List<ReviewFileComment> comments = result.get(file);
+            if (comments == null) {
+                comments = new ArrayList<ReviewFileComment>();
+                result.put(file, comments);
+            }
+            ReviewFileComment comment;
+            if (lines[index] == NO_LINE) {
+                comment = new ReviewFileComment();
+            } else {
+                ReviewLineComment lineComment = new ReviewLineComment();
+                lineComment.setLine(lines[index]);
+                comment = lineComment;
+            }
+            comment.setMessage(render(index, buffer).toString());
+            comments.add(comment);
+        }
+        return result;
+    }
+
+    /**
+     * Write the comments as a JSON object of comment arrays by file name.
+     */
+    public synchronized void writeTo(@NotNull JsonGenerator generator) throws IOException {
+        int[] order = orderByFile();
+        int[] starts = new int[files.size()];
+        for (int fileOrdinal = 1; fileOrdinal < starts.length; fileOrdinal++) {
+            starts[fileOrdinal] = starts[fileOrdinal - 1] + fileSizes[fileOrdinal - 1];
+        }
+
+        generator.writeStartObject();
+        if (isSpilled()) {
+            for (String file : spillFile.files()) {
+                generator.writeFieldName(file);
+                generator.writeStartArray();
+                spillFile.writeTo(file, generator);
+                int fileOrdinal = files.indexOf(file);
+                if (fileOrdinal >= 0) {
+                    writeComments(generator, order, starts[fileOrdinal], fileSizes[fileOrdinal]);
+                }
+                generator.writeEndArray();
+            }
+        }
+        for (int fileOrdinal = 0; fileOrdinal < files.size(); fileOrdinal++) {
+            if (fileSizes[fileOrdinal] == 0 || (isSpilled() && spillFile.files().contains(files.get(fileOrdinal)))) {
+                continue;
+            }
+            generator.writeFieldName(files.get(fileOrdinal));
+            generator.writeStartArray();
+            writeComments(generator, order, starts[fileOrdinal], fileSizes[fileOrdinal]);
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReviewCommentStore [files=" + fileCount() + ", comments=" + size() + ", spilled=" + spilledSize()
+                + ", maxLevel=" + maxLevel + "]";
+    }
+
+    private void writeComments(JsonGenerator generator, int[] order, int start, int count) throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        for (int position = start; position < start + count; position++) {
+            int index = order[position];
+            generator.writeStartObject();
+            if (ruleOrdinals[index] == NO_ORDINAL && messages[index] == null) {
+                generator.writeNullField("message");
+            } else {
+                writeMessage(generator, render(index, buffer));
+            }
+            if (lines[index] != NO_LINE) {
+                generator.writeNumberField("line", lines[index]);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private int spilledSize() {
+        return spillFile == null ? 0 : spillFile.size();
+    }
+
+    private int level(int index) {
+        if (severityOrdinals[index] == NO_ORDINAL) {
+            return ReviewUtils.messageLevel(messages[index]);
+        }
+        return ReviewUtils.thresholdToValue(severities.get(severityOrdinals[index]));
+    }
+
+    /**
+     * Replace a comment by the rendering of a thread: each part is an issue
+     * with its occurrences, by line. The thread keeps the file and line of
+     * the comment, and the highest severity of its parts.
+     */
+    private void mergeThread(int target, List<List<Integer>> thread, int[] originalLines, StringBuilder buffer) {
+        StringBuilder message = new StringBuilder();
+        int severityOrdinal = severityOrdinals[target];
+        int maxPartLevel = -1;
+        for (List<Integer> indexes : thread) {
+            int first = indexes.get(0);
+            if (message.length() > 0) {
+                message.append(THREAD_SEPARATOR);
+            }
+            message.append(render(first, buffer));
+            if (indexes.size() > 1) {
+                appendOccurrences(message, indexes, originalLines);
+            }
+            int partLevel = ReviewUtils.thresholdToValue(severities.get(severityOrdinals[first]));
+            if (partLevel > maxPartLevel) {
+                maxPartLevel = partLevel;
+                severityOrdinal = severityOrdinals[first];
+            }
+        }
+        ruleOrdinals[target] = NO_ORDINAL;
+        severityOrdinals[target] = severityOrdinal;
+        newIssues[target] = false;
+        messages[target] = message.toString();
+    }
+
+    private void appendOccurrences(StringBuilder message, List<Integer> indexes, int[] originalLines) {
+        message.append(" (").append(indexes.size()).append(" occurrences");
+        int previous = 0;
+        String separator = ", lines ";
+        for (Integer index : indexes) {
+            if (originalLines[index] > previous) {
+                message.append(separator).append(originalLines[index]);
+                previous = originalLines[index];
+                separator = ", ";
+            }
+        }
+        message.append(')');
+    }
+
+    private void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        fileOrdinals[to] = fileOrdinals[from];
+        lines[to] = lines[from];
+        ruleOrdinals[to] = ruleOrdinals[from];
+        severityOrdinals[to] = severityOrdinals[from];
+        newIssues[to] = newIssues[from];
+        messages[to] = messages[from];
+    }
+
+    private void countLevel(int level) {
+        maxLevel = Math.max(maxLevel, level);
+        if (level >= 0 && level < levelCounts.length) {
+            levelCounts[level]++;
+        }
+    }
+
+    private int append(String file, int line, String message) {
+        if (size == lines.length) {
+            int capacity = size * 2;
+            fileOrdinals = Arrays.copyOf(fileOrdinals, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            ruleOrdinals = Arrays.copyOf(ruleOrdinals, capacity);
+            severityOrdinals = Arrays.copyOf(severityOrdinals, capacity);
+            newIssues = Arrays.copyOf(newIssues, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        int fileOrdinal = files.intern(file);
+        if (fileOrdinal == fileSizes.length) {
+            fileSizes = Arrays.copyOf(fileSizes, fileSizes.length * 2);
+        }
+        if (fileSizes[fileOrdinal]++ == 0) {
+            fileCount++;
+        }
+        int index = size++;
+        fileOrdinals[index] = fileOrdinal;
+        lines[index] = line;
+        ruleOrdinals[index] = NO_ORDINAL;
+        severityOrdinals[index] = NO_ORDINAL;
+        newIssues[index] = false;
+        messages[index] = message;
+        return index;
+    }
+
+    /**
+     * Write the rendered message through a reused char buffer, the generator
+     * escapes and copies it anyway.
+     */
+    private void writeMessage(JsonGenerator generator, StringBuilder buffer) throws IOException {
+        generator.writeFieldName("message");
+        generator.writeString(toChars(buffer), 0, buffer.length());
+    }
+
+    private char[] toChars(StringBuilder buffer) {
+        if (chars.length < buffer.length()) {
+            chars = new char[Math.max(buffer.length(), chars.length * 2)];
+        }
+        buffer.getChars(0, buffer.length(), chars, 0);
+        return chars;
+    }
+
+    private StringBuilder render(int index, StringBuilder buffer) {
+        buffer.setLength(0);
+        if (ruleOrdinals[index] == NO_ORDINAL) {
+            return buffer.append(messages[index]);
+        }
+        return buffer.append('[').append(newIssues[index]).append("] New: ")
+                .append(renderedRules.get(ruleOrdinals[index])).append(" Severity: ")
+                .append(severities.get(severityOrdinals[index])).append(", Message: ").append(messages[index]);
+    }
+
+    /**
+     * @return the comment indexes grouped by file ordinal, in insertion order
+     *         within a file
+     */
+    private int[] orderByFile() {
+        int[] starts = new int[files.size()];
+        for (int fileOrdinal = 1; fileOrdinal < starts.length; fileOrdinal++) {
+            starts[fileOrdinal] = starts[fileOrdinal - 1] + fileSizes[fileOrdinal - 1];
+        }
+        int[] order = new int[size];
+        for (int index = 0; index < size; index++) {
+            order[starts[fileOrdinals[index]]++] = index;
+        }
+        return order;
+    }
+
+    /**
+     * Jackson serializer streaming the store without building the comments.
+     */
+    public static class Serializer extends JsonSerializer<ReviewCommentStore> {
+        @Override
+        public void serialize(ReviewCommentStore store, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            store.writeTo(generator);
+        }
+    }
+
+    private static class Interner<T> {
+        private final Map<T, Integer> ordinals = new HashMap<T, Integer>();
+        private final List<T> values = new ArrayList<T>();
+
+        int intern(T value) {
+            Integer ordinal = ordinals.get(value);
+            if (ordinal == null) {
+                ordinal = values.size();
+                ordinals.put(value, ordinal);
+                values.add(value);
+            }
+            return ordinal;
+        }
+
+        T get(int ordinal) {
+            return values.get(ordinal);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        int indexOf(T value) {
+            Integer ordinal = ordinals.get(value);
+            return ordinal == null ? -1 : ordinal;
+        }
+
+        void clear() {
+            ordinals.clear();
+            values.clear();
+        }
+    }
+}
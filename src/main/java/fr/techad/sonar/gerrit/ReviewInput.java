@@ -5,6 +5,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 /**
  * Gerrit request for review input. Used with JSON marshaller only.
@@ -16,11 +23,20 @@ import org.jetbrains.annotations.NotNull;
  * "gerrit-server/src/main/java/com/google/gerrit/server/project/RefControl.java"
  * : [ { "line": 23, "message": "[nit] trailing whitespace" }, { "line": 49,
  * "message": "[nit] s/conrtol/control" } ] } }
+ *
+ * The notify, notify_details, omit_duplicate_comments and tag fields are only
+ * sent when set. The comments are kept in a {@link ReviewCommentStore} and
+ * streamed when serialized.
  */
+@JsonPropertyOrder({ "message", "labels", "comments", "notify", "tag", "notify_details", "omit_duplicate_comments" })
 public class ReviewInput {
     private String message = "Looks good to me.";
     private Map<String, Integer> labels = new ConcurrentHashMap<String, Integer>();
-    private Map<String, List<ReviewFileComment>> comments = new ConcurrentHashMap<String, List<ReviewFileComment>>();
+    private final ReviewCommentStore comments = new ReviewCommentStore();
+    private String notify;
+    private Map<String, NotifyInfo> notifyDetails;
+    private Boolean omitDuplicateComments;
+    private String tag;
 
     public void setValueAndLabel(@NotNull int value, @NotNull String label) {
         labels.put(label, value);
@@ -42,28 +58,88 @@ public class ReviewInput {
         return message;
     }
 
-    public void addComments(String key, List<ReviewFileComment> reviewFileComments) {
-        comments.put(key, reviewFileComments);
+    /**
+     * Append comments to a file.
+     */
+    public void addComments(String key, List<? extends ReviewFileComment> reviewFileComments) {
+        comments.addComments(key, reviewFileComments);
     }
 
+    /**
+     * @return the number of files with comments
+     */
     public int size() {
-        return comments.size();
+        return comments.fileCount();
     }
 
     public void emptyComments() {
         comments.clear();
     }
 
+    public void emptyLabels() {
+        labels.clear();
+    }
+
     public Map<String, Integer> getLabels() {
         return labels;
     }
 
+    /**
+     * @return a copy of the comments by file name, expensive for large reviews
+     */
+    @JsonIgnore
     public Map<String, List<ReviewFileComment>> getComments() {
+        return comments.toMap();
+    }
+
+    @JsonProperty("comments")
+    @JsonSerialize(using = ReviewCommentStore.Serializer.class)
+    public ReviewCommentStore getCommentStore() {
         return comments;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNotify() {
+        return notify;
+    }
+
+    public void setNotify(@Nullable String notify) {
+        this.notify = notify;
+    }
+
+    @JsonProperty("notify_details")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<String, NotifyInfo> getNotifyDetails() {
+        return notifyDetails;
+    }
+
+    public void setNotifyDetails(@Nullable Map<String, NotifyInfo> notifyDetails) {
+        this.notifyDetails = notifyDetails;
+    }
+
+    @JsonProperty("omit_duplicate_comments")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Boolean getOmitDuplicateComments() {
+        return omitDuplicateComments;
+    }
+
+    public void setOmitDuplicateComments(@Nullable Boolean omitDuplicateComments) {
+        this.omitDuplicateComments = omitDuplicateComments;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(@Nullable String tag) {
+        this.tag = tag;
+    }
+
     @Override
     public String toString() {
-        return "ReviewInput [message=" + message + ", labels=" + labels + ", comments=" + comments + "]";
+        return "ReviewInput [message=" + message + ", labels=" + labels + ", comments=" + comments + ", notify="
+                + notify + ", notifyDetails=" + notifyDetails + ", omitDuplicateComments=" + omitDuplicateComments
+                + ", tag=" + tag + "]";
     }
 }
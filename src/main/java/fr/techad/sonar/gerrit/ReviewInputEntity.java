@@ -0,0 +1,93 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.jetbrains.annotations.NotNull;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Request body serializing a review while it is sent, so a review with
+ * spilled comments is streamed from its spill file instead of being built
+ * as a string. The body can be written again, e.g. for an authentication
+ * challenge.
+ */
+public class ReviewInputEntity extends AbstractHttpEntity {
+    private final ObjectMapper objectMapper;
+    private final ReviewInput reviewInput;
+    private long writtenBytes;
+
+    public ReviewInputEntity(@NotNull ObjectMapper objectMapper, @NotNull ReviewInput reviewInput) {
+        this.objectMapper = objectMapper;
+        this.reviewInput = reviewInput;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * Only meant for debugging, the whole review is built in memory.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ByteArrayInputStream(objectMapper.writeValueAsBytes(reviewInput));
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(countingStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper.writeValue(generator, reviewInput);
+        generator.flush();
+        writtenBytes = countingStream.count;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * @return the size of the last written body, in bytes
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.techad.sonar.GerritConfiguration;
+
+/**
+ * Partial review written by one shard of a sharded analysis: the comments on
+ * the files it analyzed and their number by severity. A shard never votes,
+ * the vote is computed once when the shards are merged.
+ *
+ * Example JSON:
+ *
+ * { "shard": "core", "changeId": "I8473b95934b5732ac55d26311a706c9c2bde9940",
+ * "revisionId": "674ac754f91e64a0efb8087e59a176484bd534d1", "severities": {
+ * "MAJOR": 1 }, "comments": { "core/src/main/java/Foo.java": [ { "message":
+ * "[true] New: Squid:S00112 Severity: MAJOR, Message: ...", "line": 12 } ] } }
+ */
+public class ReviewShard {
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String SHARD = "shard";
+    private static final String CHANGE_ID = "changeId";
+    private static final String REVISION_ID = "revisionId";
+    private static final String SEVERITIES = "severities";
+    private static final String COMMENTS = "comments";
+    private static final String LINE = "line";
+    private static final String MESSAGE = "message";
+
+    private final String shard;
+    private final String changeId;
+    private final String revisionId;
+    private final Map<String, Integer> severityCounts = new LinkedHashMap<String, Integer>();
+    private final Map<String, List<ReviewFileComment>> comments = new LinkedHashMap<String, List<ReviewFileComment>>();
+
+    public ReviewShard(@NotNull String shard, String changeId, String revisionId) {
+        this.shard = shard;
+        this.changeId = changeId;
+        this.revisionId = revisionId;
+    }
+
+    /**
+     * Write the comments of the review as a shard. The file is replaced
+     * atomically, so a merge never reads a partial shard.
+     */
+    public static void write(@NotNull File file, @NotNull String shard,
+            @NotNull GerritConfiguration gerritConfiguration, @NotNull ReviewInput reviewInput) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File tmp = new File(parent, file.getName() + "." + System.nanoTime() + TMP_SUFFIX);
+        ReviewCommentStore store = reviewInput.getCommentStore();
+        try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(tmp, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField(SHARD, shard);
+            generator.writeStringField(CHANGE_ID, gerritConfiguration.getChangeId());
+            generator.writeStringField(REVISION_ID, gerritConfiguration.getRevisionId());
+            generator.writeObjectFieldStart(SEVERITIES);
+            for (Map.Entry<String, Integer> count : store.severityCounts().entrySet()) {
+                generator.writeNumberField(count.getKey(), count.getValue());
+            }
+            generator.writeEndObject();
+            generator.writeFieldName(COMMENTS);
+            store.writeTo(generator);
+            generator.writeEndObject();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @NotNull
+    public static ReviewShard read(@NotNull File file) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(file);
+        if (root == null || !root.has(SHARD)) {
+            throw new IOException("Not a review shard: " + file);
+        }
+        ReviewShard reviewShard = new ReviewShard(root.path(SHARD).asText(), root.path(CHANGE_ID).asText(),
+                root.path(REVISION_ID).asText());
+        Iterator<Map.Entry<String, JsonNode>> severities = root.path(SEVERITIES).fields();
+        while (severities.hasNext()) {
+            Map.Entry<String, JsonNode> count = severities.next();
+            reviewShard.severityCounts.put(count.getKey(), count.getValue().asInt());
+        }
+        Iterator<Map.Entry<String, JsonNode>> files = root.path(COMMENTS).fields();
+        while (files.hasNext()) {
+            Map.Entry<String, JsonNode> fileNode = files.next();
+            List<ReviewFileComment> fileComments = new ArrayList<ReviewFileComment>();
+            for (JsonNode node : fileNode.getValue()) {
+                ReviewFileComment comment;
+                if (node.has(LINE)) {
+                    ReviewLineComment lineComment = new ReviewLineComment();
+                    lineComment.setLine(node.path(LINE).asInt());
+                    comment = lineComment;
+                } else {
+                    comment = new ReviewFileComment();
+                }
+                comment.setMessage(node.path(MESSAGE).asText());
+                fileComments.add(comment);
+            }
+            reviewShard.comments.put(fileNode.getKey(), fileComments);
+        }
+        return reviewShard;
+    }
+
+    @NotNull
+    public String getShard() {
+        return shard;
+    }
+
+    public String getChangeId() {
+        return changeId;
+    }
+
+    public String getRevisionId() {
+        return revisionId;
+    }
+
+    @NotNull
+    public Map<String, Integer> getSeverityCounts() {
+        return Collections.unmodifiableMap(severityCounts);
+    }
+
+    @NotNull
+    public Map<String, List<ReviewFileComment>> getComments() {
+        return Collections.unmodifiableMap(comments);
+    }
+
+    @Override
+    public String toString() {
+        return "ReviewShard [shard=" + shard + ", changeId=" + changeId + ", revisionId=" + revisionId
+                + ", severities=" + severityCounts + ", files=" + comments.size() + "]";
+    }
+}
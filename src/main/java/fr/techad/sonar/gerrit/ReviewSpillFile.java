@@ -0,0 +1,250 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Append-only file of comments moved out of the heap. Comments are written as
+ * batches of one file, one JSON comment per line, prefixed by the digit of its
+ * severity level. Only the position and size of each batch and the count of
+ * comments by level are kept in memory, by file name, so the comments of a
+ * file can be streamed back in order.
+ */
+class ReviewSpillFile {
+    private static final Logger LOG = Loggers.get(ReviewSpillFile.class);
+    private static final String MESSAGE = "message";
+    private static final String LINE = "line";
+    private static final char LEVEL_ZERO = '0';
+    private static final String RETAINED_SUFFIX = ".top";
+
+    private final File file;
+    private final Map<String, List<long[]>> batches = new LinkedHashMap<String, List<long[]>>();
+    private FileOutputStream output;
+    private JsonGenerator generator;
+    private long[] batch;
+    private final int[] levelCounts;
+    private int size;
+
+    /**
+     * @param levels
+     *            the number of severity levels, at most 10
+     */
+    ReviewSpillFile(@NotNull File file, int levels) {
+        this.file = file;
+        this.levelCounts = new int[levels];
+    }
+
+    void beginBatch(@NotNull String fileName) throws IOException {
+        if (generator == null) {
+            output = new FileOutputStream(file);
+            generator = new JsonFactory().createGenerator(new BufferedOutputStream(output), JsonEncoding.UTF8);
+            generator.setRootValueSeparator(null);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Spilling review comments to {}", file);
+            }
+        }
+        generator.flush();
+        batch = new long[] { output.getChannel().position(), 0 };
+        List<long[]> fileBatches = batches.get(fileName);
+        if (fileBatches == null) {
+            fileBatches = new ArrayList<long[]>();
+            batches.put(fileName, fileBatches);
+        }
+        fileBatches.add(batch);
+    }
+
+    /**
+     * @param line
+     *            the line of the comment, negative for a file comment
+     * @param level
+     *            the severity level of the comment, from 0
+     */
+    void writeComment(int line, int level, char[] message, int length) throws IOException {
+        generator.writeRaw((char) (LEVEL_ZERO + level));
+        generator.writeStartObject();
+        if (message == null) {
+            generator.writeNullField(MESSAGE);
+        } else {
+            generator.writeFieldName(MESSAGE);
+            generator.writeString(message, 0, length);
+        }
+        if (line >= 0) {
+            generator.writeNumberField(LINE, line);
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        batch[1]++;
+        size++;
+        levelCounts[level]++;
+    }
+
+    private void writeLine(int level, @NotNull String line) throws IOException {
+        generator.writeRaw(line);
+        generator.writeRaw('\n');
+        batch[1]++;
+        size++;
+        levelCounts[level]++;
+    }
+
+    /**
+     * @return the names of the files with spilled comments, in spill order
+     */
+    @NotNull
+    Set<String> files() {
+        return Collections.unmodifiableSet(batches.keySet());
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of spilled comments by severity level
+     */
+    @NotNull
+    int[] levelCounts() {
+        return levelCounts.clone();
+    }
+
+    /**
+     * Copy the comments with a level above the cutoff, and the first ones of
+     * the cutoff level, to a new spill file. This file is deleted.
+     *
+     * @param quota
+     *            the number of comments of the cutoff level to keep
+     * @return the new spill file
+     */
+    @NotNull
+    ReviewSpillFile retain(int cutoff, int quota) throws IOException {
+        String name = file.getName();
+        ReviewSpillFile retained = new ReviewSpillFile(new File(file.getParentFile(),
+                name.endsWith(RETAINED_SUFFIX) ? name.substring(0, name.length() - RETAINED_SUFFIX.length())
+                        : name + RETAINED_SUFFIX), levelCounts.length);
+        int remaining = quota;
+        generator.flush();
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (Map.Entry<String, List<long[]>> entry : batches.entrySet()) {
+                boolean begun = false;
+                for (long[] fileBatch : entry.getValue()) {
+                    BufferedReader reader = reader(input, fileBatch[0]);
+                    for (long count = 0; count < fileBatch[1]; count++) {
+                        String line = reader.readLine();
+                        int level = line.charAt(0) - LEVEL_ZERO;
+                        if (level < cutoff || (level == cutoff && remaining-- <= 0)) {
+                            continue;
+                        }
+                        if (!begun) {
+                            retained.beginBatch(entry.getKey());
+                            begun = true;
+                        }
+                        retained.writeLine(level, line);
+                    }
+                }
+            }
+        }
+        delete();
+        return retained;
+    }
+
+    /**
+     * Copy the spilled comments of a file as raw values of the current JSON
+     * array.
+     */
+    void writeTo(@NotNull String fileName, @NotNull JsonGenerator target) throws IOException {
+        List<long[]> fileBatches = batches.get(fileName);
+        if (fileBatches == null) {
+            return;
+        }
+        generator.flush();
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (long[] fileBatch : fileBatches) {
+                BufferedReader reader = reader(input, fileBatch[0]);
+                for (long count = 0; count < fileBatch[1]; count++) {
+                    String line = reader.readLine();
+                    target.writeRawValue(line, 1, line.length() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read back the spilled comments of a file. Expensive, only meant for
+     * tests and debugging.
+     */
+    @NotNull
+    List<ReviewFileComment> read(@NotNull String fileName) throws IOException {
+        List<ReviewFileComment> result = new ArrayList<ReviewFileComment>();
+        List<long[]> fileBatches = batches.get(fileName);
+        if (fileBatches == null) {
+            return result;
+        }
+        generator.flush();
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (long[] fileBatch : fileBatches) {
+                BufferedReader reader = reader(input, fileBatch[0]);
+                for (long count = 0; count < fileBatch[1]; count++) {
+                    JsonNode node = objectMapper.readTree(reader.readLine().substring(1));
+                    ReviewFileComment comment;
+                    if (node.has(LINE)) {
+                        ReviewLineComment lineComment = new ReviewLineComment();
+                        lineComment.setLine(node.path(LINE).asInt());
+                        comment = lineComment;
+                    } else {
+                        comment = new ReviewFileComment();
+                    }
+                    comment.setMessage(node.path(MESSAGE).isNull() ? null : node.path(MESSAGE).asText());
+                    result.add(comment);
+                }
+            }
+        }
+        return result;
+    }
+
+    void delete() {
+        try {
+            if (generator != null) {
+                generator.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("[GERRIT PLUGIN] Unable to close the spill file " + file, e);
+        }
+        generator = null;
+        batches.clear();
+        Arrays.fill(levelCounts, 0);
+        size = 0;
+        if (file.exists() && !file.delete()) {
+            LOG.warn("[GERRIT PLUGIN] Unable to delete the spill file {}", file);
+        }
+    }
+
+    private static BufferedReader reader(RandomAccessFile input, long position) throws IOException {
+        input.seek(position);
+        return new BufferedReader(new InputStreamReader(Channels.newInputStream(input.getChannel()),
+                StandardCharsets.UTF_8));
+    }
+}
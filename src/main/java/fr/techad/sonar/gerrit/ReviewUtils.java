@@ -1,8 +1,10 @@
 package fr.techad.sonar.gerrit;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sonar.api.config.Settings;
@@ -10,6 +12,8 @@ import org.sonar.api.rule.Severity;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import fr.techad.sonar.GerritConfiguration;
+
 public final class ReviewUtils {
     private static final Logger LOG = Loggers.get(ReviewUtils.class);
     private static final String LOG_MESSAGE = "[GERRIT PLUGIN] Got review level {}, level is now {}";
@@ -18,6 +22,8 @@ public final class ReviewUtils {
     private static final String PROP_START = "${";
     private static final int PROP_START_LENGTH = PROP_START.length();
     private static final char PROP_END = '}';
+    private static final String NOTIFY_SEPARATOR = ",";
+    private static final char RECIPIENT_SEPARATOR = ':';
 
     private static final int INFO_VALUE = 0;
     private static final int MINOR_VALUE = 1;
@@ -31,7 +37,7 @@ public final class ReviewUtils {
     }
 
     public static boolean isEmpty(ReviewInput ri) {
-        return ri.getComments().isEmpty();
+        return ri.getCommentStore().isEmpty();
     }
 
     public static int thresholdToValue(String threshold) {
@@ -82,43 +88,106 @@ public final class ReviewUtils {
     }
 
     public static int maxLevel(ReviewInput reviewInput) {
-        int lvl = 0;
-
-        for (Iterator<List<ReviewFileComment>> i = reviewInput.getComments().values().iterator(); i.hasNext();) {
-            List<ReviewFileComment> lrfc = i.next();
-            for (ReviewFileComment review : lrfc) {
-                if (StringUtils.contains(review.getMessage(), Severity.INFO)) {
-                    lvl = Math.max(lvl, thresholdToValue(Severity.INFO));
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(LOG_MESSAGE, Severity.INFO, lvl);
-                    }
-                } else if (StringUtils.contains(review.getMessage(), Severity.MINOR)) {
-                    lvl = Math.max(lvl, thresholdToValue(Severity.MINOR));
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(LOG_MESSAGE, Severity.MINOR, lvl);
-                    }
-                } else if (StringUtils.contains(review.getMessage(), Severity.MAJOR)) {
-                    lvl = Math.max(lvl, thresholdToValue(Severity.MAJOR));
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(LOG_MESSAGE, Severity.MAJOR, lvl);
-                    }
-                } else if (StringUtils.contains(review.getMessage(), Severity.CRITICAL)) {
-                    lvl = Math.max(lvl, thresholdToValue(Severity.CRITICAL));
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(LOG_MESSAGE, Severity.CRITICAL, lvl);
-                    }
-                } else if (StringUtils.contains(review.getMessage(), Severity.BLOCKER)) {
-                    lvl = Math.max(lvl, thresholdToValue(Severity.BLOCKER));
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(LOG_MESSAGE, Severity.BLOCKER, lvl);
-                    }
-                }
+        return reviewInput.getCommentStore().maxLevel();
+    }
+
+    /**
+     * Compute the vote of a review from its highest severity level.
+     *
+     * @param noIssue
+     *            true if the review has no comment
+     */
+    public static int vote(GerritConfiguration gerritConfiguration, boolean noIssue, int maxLevel) {
+        int vote;
+        if (noIssue) {
+            vote = gerritConfiguration.getVoteNoIssue();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] No issues ! Vote {} for the label : {}", vote,
+                        gerritConfiguration.getLabel());
+            }
+        } else if (maxLevel < thresholdToValue(gerritConfiguration.getThreshold())) {
+            vote = gerritConfiguration.getVoteBelowThreshold();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Issues below threshold. Vote {} for the label : {}", vote,
+                        gerritConfiguration.getLabel());
+            }
+        } else {
+            vote = gerritConfiguration.getVoteAboveThreshold();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("[GERRIT PLUGIN] Issues above threshold. Vote {} for the label : {}", vote,
+                        gerritConfiguration.getLabel());
             }
         }
+        return vote;
+    }
 
+    /**
+     * @return the highest severity level found in a rendered comment message,
+     *         which holds several for merged issues, or -1
+     */
+    public static int messageLevel(String message) {
+        int lvl = UNKNOWN_VALUE;
+        if (StringUtils.contains(message, Severity.BLOCKER)) {
+            lvl = thresholdToValue(Severity.BLOCKER);
+        } else if (StringUtils.contains(message, Severity.CRITICAL)) {
+            lvl = thresholdToValue(Severity.CRITICAL);
+        } else if (StringUtils.contains(message, Severity.MAJOR)) {
+            lvl = thresholdToValue(Severity.MAJOR);
+        } else if (StringUtils.contains(message, Severity.MINOR)) {
+            lvl = thresholdToValue(Severity.MINOR);
+        } else if (StringUtils.contains(message, Severity.INFO)) {
+            lvl = thresholdToValue(Severity.INFO);
+        }
+        if (LOG.isDebugEnabled() && lvl != UNKNOWN_VALUE) {
+            LOG.debug(LOG_MESSAGE, valueToThreshold(lvl), lvl);
+        }
         return lvl;
     }
 
+    /**
+     * Set the options limiting the load of a review on Gerrit: notification,
+     * duplicate comments and tag.
+     *
+     * @param inProgress
+     *            true for the transient review posted while the analysis runs
+     */
+    public static void setServerOptions(ReviewInput ri, GerritConfiguration gerritConfiguration, boolean inProgress) {
+        if (inProgress) {
+            ri.setNotify(StringUtils.trimToNull(gerritConfiguration.getNotifyInProgress()));
+        } else {
+            ri.setNotify(StringUtils.trimToNull(gerritConfiguration.getNotify()));
+            ri.setNotifyDetails(parseNotifyDetails(gerritConfiguration.getNotifyDetails()));
+        }
+        ri.setOmitDuplicateComments(gerritConfiguration.shouldOmitDuplicateComments() ? Boolean.TRUE : null);
+        ri.setTag(StringUtils.trimToNull(gerritConfiguration.getTag()));
+    }
+
+    /**
+     * @param notifyDetails
+     *            comma separated recipients, as RECIPIENT_TYPE:account, e.g.
+     *            TO:jdoe,CC:jane@example.com
+     * @return the accounts by recipient type
+     */
+    public static Map<String, NotifyInfo> parseNotifyDetails(String notifyDetails) {
+        Map<String, NotifyInfo> result = new LinkedHashMap<String, NotifyInfo>();
+        for (String recipient : StringUtils.split(StringUtils.defaultString(notifyDetails), NOTIFY_SEPARATOR)) {
+            int index = recipient.indexOf(RECIPIENT_SEPARATOR);
+            String account = recipient.substring(index + 1).trim();
+            if (index <= 0 || account.isEmpty()) {
+                LOG.warn("[GERRIT PLUGIN] Ignoring notify recipient {}, expecting RECIPIENT_TYPE:account", recipient);
+                continue;
+            }
+            String recipientType = recipient.substring(0, index).trim().toUpperCase(Locale.ENGLISH);
+            NotifyInfo notifyInfo = result.get(recipientType);
+            if (notifyInfo == null) {
+                notifyInfo = new NotifyInfo();
+                result.put(recipientType, notifyInfo);
+            }
+            notifyInfo.addAccount(account);
+        }
+        return result;
+    }
+
 	public static String substituteProperties(String originalMessage, Settings settings) {
 	    String substitutedString = originalMessage;
 	
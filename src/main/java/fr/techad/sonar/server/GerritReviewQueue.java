@@ -0,0 +1,259 @@
+package fr.techad.sonar.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritLogPolicy;
+import fr.techad.sonar.GerritReviewReport;
+import fr.techad.sonar.PropertyKey;
+import fr.techad.sonar.gerrit.GerritConcurrencyLimiter;
+import fr.techad.sonar.gerrit.GerritConnector;
+import fr.techad.sonar.gerrit.GerritHttpException;
+import fr.techad.sonar.gerrit.GerritRateLimiter;
+import fr.techad.sonar.gerrit.GerritTimeBudget;
+
+/**
+ * Queue of the reviews handed to the SonarQube server by the analyses. A
+ * background thread sends them in batches: the reviews of a batch are grouped
+ * by Gerrit server and each group is sent on one connection. A review Gerrit
+ * could not take is sent again later, with an exponential backoff, unless
+ * Gerrit refused it for good.
+ *
+ * A review queued for a change and revision supersedes the ones queued before
+ * for them, e.g. the final review the review in progress: those are dropped
+ * instead of being sent, or sent again, after it and overwriting its vote.
+ *
+ * The Gerrit server, credentials and limits are the ones of the server
+ * settings when the review is queued. The thread is started and stopped with
+ * the server.
+ */
+@ServerSide
+public class GerritReviewQueue {
+    public static final int CAPACITY = 1000;
+
+    private static final Logger LOG = Loggers.get(GerritReviewQueue.class);
+    private static final int BATCH_SIZE = 20;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_MILLIS = 2000;
+    private static final long STOP_TIMEOUT_MILLIS = 10 * 1000L;
+    private static final int HTTP_ERROR_STATUS = 400;
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVER_ERROR_STATUS = 500;
+
+    private final Settings settings;
+    private final DelayQueue<QueuedReview> queue = new DelayQueue<QueuedReview>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Sequence of the last review queued, by change and revision
+    private final ConcurrentMap<String, Long> lastReviews = new ConcurrentHashMap<String, Long>();
+    private Thread worker;
+
+    public GerritReviewQueue(Settings settings) {
+        LOG.debug("[GERRIT PLUGIN] Instanciating GerritReviewQueue");
+        this.settings = settings;
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        sendNextBatch();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "gerrit-review-queue");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+        worker.interrupt();
+        try {
+            worker.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+        if (!queue.isEmpty()) {
+            LOG.warn("[GERRIT PLUGIN] {} reviews not sent to Gerrit before the server stopped", queue.size());
+        }
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             if the queue is full
+     */
+    public void enqueue(@NotNull String projectName, @NotNull String branchName, @NotNull String changeId,
+            @NotNull String revisionId, @NotNull String reviewInputAsJson) {
+        if (queue.size() >= CAPACITY) {
+            throw new IllegalStateException("The Gerrit review queue is full");
+        }
+        Settings reviewSettings = new Settings(settings);
+        reviewSettings.setProperty(PropertyKey.GERRIT_PROJECT, projectName);
+        reviewSettings.setProperty(PropertyKey.GERRIT_BRANCH, branchName);
+        reviewSettings.setProperty(PropertyKey.GERRIT_CHANGE_ID, changeId);
+        reviewSettings.setProperty(PropertyKey.GERRIT_REVISION_ID, revisionId);
+        QueuedReview review = new QueuedReview(new GerritConfiguration(reviewSettings), reviewInputAsJson,
+                sequence.incrementAndGet());
+        lastReviews.put(review.target, review.sequence);
+        queue.add(review);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("[GERRIT PLUGIN] Review of {} revision {} queued, {} waiting", new Object[] { changeId,
+                    revisionId, queue.size() });
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Wait for the reviews due, then send them.
+     */
+    void sendNextBatch() throws InterruptedException {
+        List<QueuedReview> batch = new ArrayList<QueuedReview>();
+        batch.add(queue.take());
+        queue.drainTo(batch, BATCH_SIZE - 1);
+
+        Map<String, List<QueuedReview>> byServer = new LinkedHashMap<String, List<QueuedReview>>();
+        for (QueuedReview review : batch) {
+            List<QueuedReview> group = byServer.get(review.server);
+            if (group == null) {
+                group = new ArrayList<QueuedReview>();
+                byServer.put(review.server, group);
+            }
+            group.add(review);
+        }
+        for (List<QueuedReview> group : byServer.values()) {
+            send(group);
+        }
+    }
+
+    private void send(List<QueuedReview> group) {
+        GerritConnector gerritConnector = createConnector(group.get(0).gerritConfiguration);
+        try {
+            for (QueuedReview review : group) {
+                send(gerritConnector, review);
+            }
+        } finally {
+            try {
+                gerritConnector.close();
+            } catch (IOException e) {
+                LOG.debug("[GERRIT PLUGIN] Unable to close the connections to Gerrit", e);
+            }
+        }
+    }
+
+    private void send(GerritConnector gerritConnector, QueuedReview review) {
+        if (isSuperseded(review)) {
+            LOG.info("[GERRIT PLUGIN] Review of {} dropped, a later review is queued", review);
+            return;
+        }
+        review.attempts++;
+        try {
+            gerritConnector.setReview(review.gerritConfiguration, review.reviewInputAsJson, true);
+            LOG.info("[GERRIT PLUGIN] Review of {} sent to Gerrit", review);
+            lastReviews.remove(review.target, review.sequence);
+        } catch (IOException e) {
+            if (!isRetryable(e) || review.attempts >= MAX_ATTEMPTS) {
+                LOG.error("[GERRIT PLUGIN] Review of " + review + " dropped after " + review.attempts + " attempts",
+                        e);
+                lastReviews.remove(review.target, review.sequence);
+                return;
+            }
+            long delay = retryDelayMillis(review.attempts);
+            LOG.warn("[GERRIT PLUGIN] Review of {} not sent ({}), retrying in {} ms", new Object[] { review,
+                    e.getMessage(), delay });
+            review.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            queue.add(review);
+        }
+    }
+
+    private boolean isSuperseded(QueuedReview review) {
+        Long lastReview = lastReviews.get(review.target);
+        return lastReview != null && lastReview > review.sequence;
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (!(e instanceof GerritHttpException)) {
+            return true;
+        }
+        int statusCode = ((GerritHttpException) e).getStatusCode();
+        return statusCode < HTTP_ERROR_STATUS || statusCode >= HTTP_SERVER_ERROR_STATUS
+                || statusCode == HTTP_REQUEST_TIMEOUT || statusCode == HTTP_TOO_MANY_REQUESTS;
+    }
+
+    protected long retryDelayMillis(int attempts) {
+        return RETRY_BASE_MILLIS << (attempts - 1);
+    }
+
+    @NotNull
+    protected GerritConnector createConnector(@NotNull GerritConfiguration gerritConfiguration) {
+        GerritReviewReport gerritReviewReport = new GerritReviewReport();
+        return new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                new GerritLogPolicy(gerritConfiguration, gerritReviewReport), new GerritTimeBudget(
+                        gerritConfiguration), new GerritConcurrencyLimiter(gerritConfiguration, gerritReviewReport));
+    }
+
+    private static class QueuedReview implements Delayed {
+        final GerritConfiguration gerritConfiguration;
+        final String reviewInputAsJson;
+        final String server;
+        final String target;
+        final long sequence;
+        int attempts;
+        long dueNanos = System.nanoTime();
+
+        QueuedReview(GerritConfiguration gerritConfiguration, String reviewInputAsJson, long sequence) {
+            this.gerritConfiguration = gerritConfiguration;
+            this.reviewInputAsJson = reviewInputAsJson;
+            this.server = gerritConfiguration.getScheme() + "://" + gerritConfiguration.getHost() + ":"
+                    + gerritConfiguration.getHttpPort();
+            this.target = gerritConfiguration.getChangeId() + " revision " + gerritConfiguration.getRevisionId()
+                    + " on " + server;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long difference = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+        }
+
+        @Override
+        public String toString() {
+            return target;
+        }
+    }
+}
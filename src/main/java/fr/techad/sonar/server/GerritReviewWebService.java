@@ -0,0 +1,80 @@
+package fr.techad.sonar.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.RequestHandler;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.PropertyKey;
+
+/**
+ * Web service receiving the reviews computed by the analyses, so they are
+ * sent to Gerrit by the server: <code>POST api/gerrit/review</code>. The
+ * review is only queued, the analysis does not wait for Gerrit. The caller
+ * must give the posting token of the server settings.
+ */
+public class GerritReviewWebService implements WebService, RequestHandler {
+    public static final String CONTROLLER = "api/gerrit";
+    public static final String ACTION = "review";
+    public static final String PARAM_PROJECT = "project";
+    public static final String PARAM_BRANCH = "branch";
+    public static final String PARAM_CHANGE_ID = "changeId";
+    public static final String PARAM_REVISION_ID = "revisionId";
+    public static final String PARAM_REVIEW = "review";
+    public static final String PARAM_TOKEN = "token";
+
+    private static final Logger LOG = Loggers.get(GerritReviewWebService.class);
+    private static final int HTTP_FORBIDDEN = 403;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private final Settings settings;
+    private final GerritReviewQueue gerritReviewQueue;
+
+    public GerritReviewWebService(Settings settings, GerritReviewQueue gerritReviewQueue) {
+        this.settings = settings;
+        this.gerritReviewQueue = gerritReviewQueue;
+    }
+
+    @Override
+    public void define(Context context) {
+        NewController controller = context.createController(CONTROLLER).setDescription("Gerrit reviews");
+        NewAction action = controller.createAction(ACTION).setPost(true).setHandler(this)
+                .setDescription("Queue a review to send to Gerrit");
+        action.createParam(PARAM_PROJECT).setRequired(true).setDescription("Gerrit project");
+        action.createParam(PARAM_BRANCH).setRequired(true).setDescription("Branch of the change");
+        action.createParam(PARAM_CHANGE_ID).setRequired(true).setDescription("Change-Id of the change");
+        action.createParam(PARAM_REVISION_ID).setRequired(true).setDescription("Reviewed revision");
+        action.createParam(PARAM_REVIEW).setRequired(true).setDescription("Review, as a Gerrit ReviewInput JSON");
+        action.createParam(PARAM_TOKEN).setRequired(true).setDescription("Posting token of the server settings");
+        controller.done();
+    }
+
+    @Override
+    public void handle(Request request, Response response) throws Exception {
+        String token = settings.getString(PropertyKey.GERRIT_POSTING_TOKEN);
+        if (StringUtils.isEmpty(token)
+                || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                        StringUtils.defaultString(request.param(PARAM_TOKEN)).getBytes(StandardCharsets.UTF_8))) {
+            LOG.warn("[GERRIT PLUGIN] Review refused: invalid posting token");
+            response.stream().setStatus(HTTP_FORBIDDEN);
+            return;
+        }
+        try {
+            gerritReviewQueue.enqueue(request.mandatoryParam(PARAM_PROJECT), request.mandatoryParam(PARAM_BRANCH),
+                    request.mandatoryParam(PARAM_CHANGE_ID), request.mandatoryParam(PARAM_REVISION_ID),
+                    request.mandatoryParam(PARAM_REVIEW));
+        } catch (IllegalStateException e) {
+            LOG.warn("[GERRIT PLUGIN] Review refused: {}", e.getMessage());
+            response.stream().setStatus(HTTP_SERVICE_UNAVAILABLE);
+            return;
+        }
+        response.noContent();
+    }
+}
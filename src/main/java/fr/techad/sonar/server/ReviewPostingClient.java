@@ -0,0 +1,83 @@
+package fr.techad.sonar.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.jetbrains.annotations.NotNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.gerrit.GerritHttpException;
+
+/**
+ * Hand a review to the {@link GerritReviewWebService} of the SonarQube
+ * server of the analysis. The analysis only waits for the review to be
+ * queued.
+ */
+public class ReviewPostingClient {
+    private static final Logger LOG = Loggers.get(ReviewPostingClient.class);
+    private static final int HTTP_ERROR_STATUS = 400;
+    private final GerritConfiguration gerritConfiguration;
+
+    public ReviewPostingClient(@NotNull GerritConfiguration gerritConfiguration) {
+        this.gerritConfiguration = gerritConfiguration;
+    }
+
+    /**
+     * @throws GerritHttpException
+     *             if the server refuses the review
+     */
+    public void post(@NotNull String reviewInputAsJson) throws IOException {
+        String postUri = gerritConfiguration.getSonarHostUrl() + "/" + GerritReviewWebService.CONTROLLER + "/"
+                + GerritReviewWebService.ACTION;
+
+        LOG.info("[GERRIT PLUGIN] Handing review to {}", postUri);
+
+        List<NameValuePair> params = new ArrayList<NameValuePair>();
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_PROJECT, gerritConfiguration.getProjectName()));
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_BRANCH, gerritConfiguration.getBranchName()));
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_CHANGE_ID, gerritConfiguration.getChangeId()));
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_REVISION_ID,
+                gerritConfiguration.getRevisionId()));
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_REVIEW, reviewInputAsJson));
+        params.add(new BasicNameValuePair(GerritReviewWebService.PARAM_TOKEN, StringUtils
+                .defaultString(gerritConfiguration.getPostingToken())));
+        HttpPost httpPost = new HttpPost(postUri);
+        httpPost.setEntity(new UrlEncodedFormEntity(params, StandardCharsets.UTF_8));
+
+        HttpClientBuilder builder = HttpClients.custom();
+        if (StringUtils.isNotEmpty(gerritConfiguration.getSonarLogin())) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(
+                    gerritConfiguration.getSonarLogin(), StringUtils.defaultString(gerritConfiguration
+                            .getSonarPassword())));
+            builder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        try (CloseableHttpClient httpClient = builder.build();
+                CloseableHttpResponse httpResponse = httpClient.execute(httpPost)) {
+            EntityUtils.consume(httpResponse.getEntity());
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (statusCode >= HTTP_ERROR_STATUS) {
+                throw new GerritHttpException(statusCode, "SonarQube did not queue the review: "
+                        + httpResponse.getStatusLine());
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package fr.techad.sonar;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Languages;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritFileClassifierTest {
+    @Mock
+    private Language java;
+    @Mock
+    private Language xml;
+
+    private Settings settings;
+    private GerritFileClassifier gerritFileClassifier;
+
+    @Before
+    public void setUp() {
+        when(java.getKey()).thenReturn("java");
+        when(java.getFileSuffixes()).thenReturn(new String[] { "java", ".jav" });
+        when(xml.getKey()).thenReturn("xml");
+        when(xml.getFileSuffixes()).thenReturn(new String[] { ".xml" });
+        settings = new Settings();
+        gerritFileClassifier = new GerritFileClassifier(settings, new Languages(java, xml));
+    }
+
+    @Test
+    public void shouldClassifyOnLanguageSuffixes() {
+        // given
+        // when
+        // then
+        assertThat(gerritFileClassifier.isAnalyzable("core/src/main/java/Foo.java")).isTrue();
+        assertThat(gerritFileClassifier.isAnalyzable("core/src/main/java/Foo.JAV")).isTrue();
+        assertThat(gerritFileClassifier.isAnalyzable("pom.xml")).isTrue();
+        assertThat(gerritFileClassifier.isAnalyzable("README.md")).isFalse();
+    }
+
+    @Test
+    public void shouldRestrictToForcedLanguage() {
+        // given
+        settings.setProperty(CoreProperties.PROJECT_LANGUAGE_PROPERTY, "java");
+        // when
+        // then
+        assertThat(gerritFileClassifier.isAnalyzable("pom.xml")).isFalse();
+        assertThat(gerritFileClassifier.isAnalyzable("src/Foo.java")).isTrue();
+    }
+
+    @Test
+    public void shouldApplyInclusionsOnSubPaths() {
+        // given
+        settings.setProperty(CoreProperties.PROJECT_INCLUSIONS_PROPERTY, "src/main/**");
+        settings.setProperty(CoreProperties.PROJECT_TEST_INCLUSIONS_PROPERTY, "src/test/**");
+        // when
+        // then
+        assertThat(gerritFileClassifier.isAnalyzable("core/src/main/java/Foo.java")).isTrue();
+        assertThat(gerritFileClassifier.isAnalyzable("core/src/test/java/FooTest.java")).isTrue();
+        assertThat(gerritFileClassifier.isAnalyzable("core/src/it/java/Foo.java")).isFalse();
+    }
+
+    @Test
+    public void shouldApplyExclusions() {
+        // given
+        settings.setProperty(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY, "**/generated/**");
+        settings.setProperty(CoreProperties.GLOBAL_TEST_EXCLUSIONS_PROPERTY, "**/generated/**");
+        // when
+        // then
+        assertThat(gerritFileClassifier.isAnalyzable("core/generated/Foo.java")).isFalse();
+        assertThat(gerritFileClassifier.hasAnalyzableFiles(Arrays.asList("README.md", "core/generated/Foo.java")))
+                .isFalse();
+        assertThat(gerritFileClassifier.hasAnalyzableFiles(Arrays.asList("README.md", "core/src/Foo.java")))
+                .isTrue();
+    }
+
+    @Test
+    public void shouldKeepMainExcludedFileAsPossibleTest() {
+        // given
+        settings.setProperty(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY, "**/generated/**");
+        // when
+        // then
+        assertThat(gerritFileClassifier.isAnalyzable("core/generated/Foo.java")).isTrue();
+    }
+
+    @Test
+    public void shouldConsiderEverythingAnalyzableWithoutLanguage() {
+        // given
+        gerritFileClassifier = new GerritFileClassifier(settings, new Languages());
+        // when
+        // then
+        assertThat(gerritFileClassifier.hasAnalyzableFiles(Arrays.asList("README.md"))).isTrue();
+    }
+}
@@ -0,0 +1,141 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.batch.fs.InputPath;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.rule.RuleKey;
+
+import fr.techad.sonar.gerrit.ReviewLineComment;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritIssueCacheTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private ActiveRules activeRules;
+    @Mock
+    private InputPath inputPath;
+    @Mock
+    private GerritLogPolicy gerritLogPolicy;
+
+    private File sourceFile;
+    private ReviewLineComment comment;
+
+    @Before
+    public void setUp() throws IOException {
+        sourceFile = temp.newFile("Foo.java");
+        write("class Foo {}");
+        when(inputPath.file()).thenReturn(sourceFile);
+        when(inputPath.relativePath()).thenReturn("src/main/java/Foo.java");
+        when(gerritConfiguration.getIssueCacheDir()).thenReturn(temp.newFolder("cache").getAbsolutePath());
+        mockActiveRule("MAJOR");
+
+        comment = new ReviewLineComment();
+        comment.setLine(12);
+        comment.setMessage("[true] New: Squid:S109 Severity: MAJOR, Message: magic number");
+    }
+
+    @Test
+    public void shouldReturnStoredComments() {
+        // given
+        GerritIssueCache cache = new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy);
+        // when
+        cache.put(inputPath, Arrays.asList(comment));
+        List<ReviewLineComment> cached = new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy)
+                .get(inputPath);
+        // then
+        assertThat(cached).hasSize(1);
+        assertThat(cached.get(0).getLine()).isEqualTo(12);
+        assertThat(cached.get(0).getMessage()).isEqualTo(comment.getMessage());
+    }
+
+    @Test
+    public void shouldStoreAndFindWithOneKey() throws IOException {
+        // given
+        GerritIssueCache cache = new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy);
+        String key = cache.key(inputPath);
+        // when
+        List<ReviewLineComment> missed = cache.get(inputPath, key);
+        cache.put(inputPath, key, Arrays.asList(comment));
+        // then
+        assertThat(key).isNotNull();
+        assertThat(missed).isNull();
+        assertThat(cache.get(inputPath, key)).hasSize(1);
+        assertThat(cache.get(inputPath)).hasSize(1);
+    }
+
+    @Test
+    public void shouldMissWhenContentChanges() throws IOException {
+        // given
+        GerritIssueCache cache = new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy);
+        cache.put(inputPath, Arrays.asList(comment));
+        // when
+        write("class Foo { int bar; }");
+        // then
+        assertThat(cache.get(inputPath)).isNull();
+    }
+
+    @Test
+    public void shouldMissWhenProfileChanges() {
+        // given
+        new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy).put(inputPath, Arrays.asList(comment));
+        // when
+        mockActiveRule("BLOCKER");
+        // then
+        assertThat(new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy).get(inputPath)).isNull();
+    }
+
+    @Test
+    public void shouldMissWhenGroupingChanges() {
+        // given
+        new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy).put(inputPath, Arrays.asList(comment));
+        // when
+        when(gerritConfiguration.shouldGroupIssues()).thenReturn(true);
+        // then
+        assertThat(new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy).get(inputPath)).isNull();
+    }
+
+    @Test
+    public void shouldDoNothingWhenDisabled() {
+        // given
+        when(gerritConfiguration.getIssueCacheDir()).thenReturn("");
+        GerritIssueCache cache = new GerritIssueCache(gerritConfiguration, activeRules, gerritLogPolicy);
+        // when
+        cache.put(inputPath, Arrays.asList(comment));
+        // then
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get(inputPath)).isNull();
+    }
+
+    private void mockActiveRule(String severity) {
+        ActiveRule activeRule = mock(ActiveRule.class);
+        when(activeRule.ruleKey()).thenReturn(RuleKey.of("squid", "S109"));
+        when(activeRule.severity()).thenReturn(severity);
+        when(activeRule.params()).thenReturn(Collections.<String, String> emptyMap());
+        when(activeRules.findAll()).thenReturn(Arrays.asList(activeRule));
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(sourceFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,96 @@
+package fr.techad.sonar;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.postjob.issue.Issue;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.config.Settings;
+import org.sonar.api.rule.RuleKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritIssueFilterTest {
+    @Mock
+    private InputFile mainFile;
+    @Mock
+    private InputFile generatedFile;
+
+    private Settings settings;
+
+    @Before
+    public void setUp() {
+        settings = new Settings().appendProperty(PropertyKey.GERRIT_CHANGE_ID, "changeid").appendProperty(
+                PropertyKey.GERRIT_REVISION_ID, "revisionid");
+        when(mainFile.relativePath()).thenReturn("src/main/java/Foo.java");
+        when(generatedFile.relativePath()).thenReturn("src/main/java/generated/Bar.java");
+    }
+
+    @Test
+    public void shouldAcceptEveryIssueByDefault() {
+        // given
+        GerritIssueFilter filter = new GerritIssueFilter(new GerritConfiguration(settings));
+        // when
+        // then
+        assertThat(filter.accept(issue("squid:S109", Severity.INFO, false, mainFile))).isTrue();
+    }
+
+    @Test
+    public void shouldFilterRules() {
+        // given
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_RULE_INCLUSIONS, "squid:*,common-java:DuplicatedBlocks");
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_RULE_EXCLUSIONS, "squid:S00117");
+        GerritIssueFilter filter = new GerritIssueFilter(new GerritConfiguration(settings));
+        // when
+        // then
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, mainFile))).isTrue();
+        assertThat(filter.accept(issue("common-java:DuplicatedBlocks", Severity.MAJOR, true, mainFile))).isTrue();
+        assertThat(filter.accept(issue("squid:S00117", Severity.MAJOR, true, mainFile))).isFalse();
+        assertThat(filter.accept(issue("findbugs:NP_NULL", Severity.MAJOR, true, mainFile))).isFalse();
+        // The verdicts are kept per rule
+        assertThat(filter.accept(issue("squid:S00117", Severity.MAJOR, true, mainFile))).isFalse();
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, mainFile))).isTrue();
+    }
+
+    @Test
+    public void shouldFilterSeverityAndNewness() {
+        // given
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_MIN_SEVERITY, "MAJOR");
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_NEW_ISSUES_ONLY, true);
+        GerritIssueFilter filter = new GerritIssueFilter(new GerritConfiguration(settings));
+        // when
+        // then
+        assertThat(filter.accept(issue("squid:S109", Severity.CRITICAL, true, mainFile))).isTrue();
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, mainFile))).isTrue();
+        assertThat(filter.accept(issue("squid:S109", Severity.MINOR, true, mainFile))).isFalse();
+        assertThat(filter.accept(issue("squid:S109", Severity.BLOCKER, false, mainFile))).isFalse();
+    }
+
+    @Test
+    public void shouldFilterPaths() {
+        // given
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_PATH_INCLUSIONS, "src/main/**");
+        settings.setProperty(PropertyKey.GERRIT_COMMENT_PATH_EXCLUSIONS, "**/generated/**");
+        GerritIssueFilter filter = new GerritIssueFilter(new GerritConfiguration(settings));
+        // when
+        // then
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, mainFile))).isTrue();
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, generatedFile))).isFalse();
+        assertThat(filter.accept(issue("squid:S109", Severity.MAJOR, true, generatedFile))).isFalse();
+    }
+
+    private Issue issue(String ruleKey, Severity severity, boolean isNew, InputFile inputFile) {
+        Issue issue = mock(Issue.class);
+        when(issue.ruleKey()).thenReturn(RuleKey.parse(ruleKey));
+        when(issue.severity()).thenReturn(severity);
+        when(issue.isNew()).thenReturn(isNew);
+        when(issue.inputComponent()).thenReturn(inputFile);
+        return issue;
+    }
+}
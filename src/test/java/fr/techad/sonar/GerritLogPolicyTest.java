@@ -0,0 +1,104 @@
+package fr.techad.sonar;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.utils.log.Logger;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritLogPolicyTest {
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private Logger log;
+
+    private GerritReviewReport gerritReviewReport;
+    private GerritLogPolicy gerritLogPolicy;
+
+    @Before
+    public void setUp() {
+        when(gerritConfiguration.getLogLimit()).thenReturn(2);
+        when(gerritConfiguration.getLogSampleRate()).thenReturn(3);
+        when(gerritConfiguration.getLogPayloadMaxLength()).thenReturn(10);
+        gerritReviewReport = new GerritReviewReport();
+        gerritLogPolicy = new GerritLogPolicy(gerritConfiguration, gerritReviewReport);
+    }
+
+    @Test
+    public void shouldLogFirstMessagesThenSample() {
+        // given
+        boolean[] logged = new boolean[8];
+        // when
+        for (int i = 0; i < logged.length; i++) {
+            logged[i] = gerritLogPolicy.shouldLog(GerritLogPolicy.CATEGORY_ISSUE);
+        }
+        // then
+        assertThat(logged).isEqualTo(new boolean[] { true, true, false, false, true, false, false, true });
+    }
+
+    @Test
+    public void shouldCountCategoriesSeparately() {
+        // given
+        gerritLogPolicy.shouldLog(GerritLogPolicy.CATEGORY_ISSUE);
+        gerritLogPolicy.shouldLog(GerritLogPolicy.CATEGORY_ISSUE);
+        // when
+        boolean logged = gerritLogPolicy.shouldLog(GerritLogPolicy.CATEGORY_ALERT);
+        // then
+        assertThat(logged).isTrue();
+    }
+
+    @Test
+    public void shouldLogDigestOfLargePayload() {
+        // given
+        String payload = "{\"message\":\"Looks good to me.\"}";
+        // when
+        gerritLogPolicy.payload(log, "Entity {}: {}", 1, payload);
+        // then
+        verify(log).info(eq("Entity {}: {}"), eq(1), startsWith("<31 bytes, sha1="));
+        verify(log, never()).info(anyString(), eq(1), eq(payload));
+    }
+
+    @Test
+    public void shouldLogDigestOfLargeSerializedPayload() {
+        // given
+        byte[] payload = "{\"message\":\"Looks good to me.\"}".getBytes(StandardCharsets.UTF_8);
+        // when
+        gerritLogPolicy.payload(log, "Entity {}: {}", 1, payload);
+        // then
+        verify(log).info(eq("Entity {}: {}"), eq(1), startsWith("<31 bytes, sha1="));
+    }
+
+    @Test
+    public void shouldLogSmallSerializedPayload() {
+        // given
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+        // when
+        gerritLogPolicy.payload(log, "Entity {}: {}", 1, payload);
+        // then
+        verify(log).info("Entity {}: {}", 1, "{}");
+    }
+
+    @Test
+    public void shouldReportSuppressedMessages() {
+        // given
+        for (int i = 0; i < 4; i++) {
+            gerritLogPolicy.shouldLog(GerritLogPolicy.CATEGORY_FILE_MATCH);
+        }
+        // when
+        gerritLogPolicy.summarize();
+        // then
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_LOGS_SUPPRESSED)).isEqualTo(2);
+    }
+}
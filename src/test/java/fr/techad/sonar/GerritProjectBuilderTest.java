@@ -0,0 +1,288 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.AnalysisMode;
+import org.sonar.api.batch.bootstrap.ProjectBuilder;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+
+import fr.techad.sonar.gerrit.GerritChangeQuery;
+import fr.techad.sonar.gerrit.GerritChangeSnapshot;
+import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritPreflight;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
+import fr.techad.sonar.gerrit.ReviewInput;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritProjectBuilderTest {
+    private static final File ROOT_DIR = new File("/work/repo");
+
+    @Mock
+    private Settings settings;
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritFacade gerritFacade;
+    @Mock
+    private GerritFileClassifier gerritFileClassifier;
+    @Mock
+    private GerritPreflight gerritPreflight;
+    @Mock
+    private GerritRevisionChecker gerritRevisionChecker;
+    @Mock
+    private GerritChangeQuery gerritChangeQuery;
+    @Mock
+    private AnalysisMode analysisMode;
+
+    private GerritProjectBuilder gerritProjectBuilder;
+    private ProjectDefinition root;
+    private ProjectDefinition core;
+    private ProjectDefinition web;
+    private ProjectDefinition webApi;
+
+    @Before
+    public void setUp() {
+        gerritProjectBuilder = new GerritProjectBuilder(settings, gerritConfiguration, gerritFacade,
+                gerritFileClassifier, new GerritReviewReport(), gerritPreflight, gerritRevisionChecker,
+                gerritChangeQuery, analysisMode);
+
+        root = ProjectDefinition.create().setKey("root").setBaseDir(ROOT_DIR);
+        core = ProjectDefinition.create().setKey("core").setBaseDir(new File(ROOT_DIR, "core"));
+        web = ProjectDefinition.create().setKey("web").setBaseDir(new File(ROOT_DIR, "web"));
+        webApi = ProjectDefinition.create().setKey("web-api").setBaseDir(new File(ROOT_DIR, "web/api"));
+        root.addSubProject(core);
+        root.addSubProject(web);
+        web.addSubProject(webApi);
+    }
+
+    @After
+    public void tearDown() {
+        ReviewHolder.setReviewSent(false);
+    }
+
+    @Test
+    public void shouldRemoveModulesWithoutModifiedFiles() {
+        // given
+        List<String> gerritFiles = Arrays.asList("core/src/main/java/Foo.java");
+        // when
+        int removed = gerritProjectBuilder.skipUnchangedModules(root, gerritFiles);
+        // then
+        assertThat(removed).isEqualTo(1);
+        assertThat(root.getSubProjects()).containsOnly(core);
+    }
+
+    @Test
+    public void shouldKeepParentOfModifiedModule() {
+        // given
+        List<String> gerritFiles = Arrays.asList("web/api/src/main/java/Foo.java");
+        // when
+        int removed = gerritProjectBuilder.skipUnchangedModules(root, gerritFiles);
+        // then
+        assertThat(removed).isEqualTo(1);
+        assertThat(root.getSubProjects()).containsOnly(web);
+        assertThat(web.getSubProjects()).containsOnly(webApi);
+    }
+
+    @Test
+    public void shouldNotMatchModuleNamePrefix() {
+        // given
+        List<String> gerritFiles = Arrays.asList("webapp/index.html");
+        // when
+        gerritProjectBuilder.skipUnchangedModules(root, gerritFiles);
+        // then
+        assertThat(root.getSubProjects()).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepUnchangedModulesInPublishMode() {
+        // given
+        when(analysisMode.isPublish()).thenReturn(true);
+        List<String> gerritFiles = Arrays.asList("core/src/main/java/Foo.java");
+        // when
+        int removed = gerritProjectBuilder.skipUnchangedModules(root, gerritFiles);
+        // then
+        assertThat(removed).isZero();
+        assertThat(root.getSubProjects()).containsOnly(core, web);
+    }
+
+    @Test
+    public void shouldVoteAndSkipAnalysisWithoutAnalyzableFile() throws GerritPluginException {
+        // given
+        Map<String, String> gerritFiles = Collections.singletonMap("README.md", "README.md");
+        when(gerritFacade.listFiles()).thenReturn(gerritFiles);
+        when(gerritFileClassifier.hasAnalyzableFiles(gerritFiles.values())).thenReturn(false);
+        when(gerritConfiguration.getVoteNoIssue()).thenReturn(1);
+        when(gerritConfiguration.getLabel()).thenReturn("Code-Review");
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        boolean skipped = gerritProjectBuilder.skipUnanalyzableChange(context);
+        // then
+        assertThat(skipped).isTrue();
+        assertThat(ReviewHolder.isReviewSent()).isTrue();
+        assertThat(root.getSubProjects()).isEmpty();
+        assertThat(root.properties().get(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY)).isEqualTo("**/*");
+        verify(gerritFacade).setReview(any(ReviewInput.class));
+    }
+
+    @Test
+    public void shouldAnalyzeChangeWithoutAnalyzableFileInPublishMode() throws GerritPluginException {
+        // given
+        when(analysisMode.isPublish()).thenReturn(true);
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        boolean skipped = gerritProjectBuilder.skipUnanalyzableChange(context);
+        // then
+        assertThat(skipped).isFalse();
+        assertThat(root.getSubProjects()).containsOnly(core, web);
+        assertThat(root.properties().get(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY)).isNull();
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    @Test
+    public void shouldAnalyzeChangeWithAnalyzableFile() throws GerritPluginException {
+        // given
+        Map<String, String> gerritFiles = Collections.singletonMap("src/Foo.java", "core/src/Foo.java");
+        when(gerritFacade.listFiles()).thenReturn(gerritFiles);
+        when(gerritFileClassifier.hasAnalyzableFiles(gerritFiles.values())).thenReturn(true);
+        // when
+        boolean skipped = gerritProjectBuilder.skipUnanalyzableChange(mock(ProjectBuilder.Context.class));
+        // then
+        assertThat(skipped).isFalse();
+        assertThat(ReviewHolder.isReviewSent()).isFalse();
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    @Test
+    public void shouldCopyReviewOfTrivialRebase() throws Exception {
+        // given
+        when(gerritChangeQuery.snapshot()).thenReturn(trivialRebase("Patch Set 1: Code-Review-1\\n\\nSonar review"));
+        when(gerritConfiguration.getRevisionId()).thenReturn("2");
+        when(gerritConfiguration.getTag()).thenReturn("autogenerated:sonar");
+        when(gerritConfiguration.getLabel()).thenReturn("Code-Review");
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        boolean copied = gerritProjectBuilder.copyTrivialRebaseReview(context);
+        // then
+        assertThat(copied).isTrue();
+        assertThat(ReviewHolder.isReviewSent()).isTrue();
+        assertThat(root.getSubProjects()).isEmpty();
+        ArgumentCaptor<ReviewInput> review = ArgumentCaptor.forClass(ReviewInput.class);
+        verify(gerritFacade).setReview(review.capture());
+        assertThat(review.getValue().getMessage()).isEqualTo("Sonar review");
+        assertThat(review.getValue().getLabels().get("Code-Review")).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldAnalyzeTrivialRebaseOfUnreviewedPatchSet() throws Exception {
+        // given
+        when(gerritChangeQuery.snapshot()).thenReturn(trivialRebase("Patch Set 1:\\n\\nSonar review in progress …"));
+        when(gerritConfiguration.getRevisionId()).thenReturn("2");
+        when(gerritConfiguration.getTag()).thenReturn("autogenerated:sonar");
+        // when
+        boolean copied = gerritProjectBuilder.copyTrivialRebaseReview(mock(ProjectBuilder.Context.class));
+        // then
+        assertThat(copied).isFalse();
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    @Test
+    public void shouldAnalyzeTrivialRebaseInPublishMode() throws Exception {
+        // given
+        when(analysisMode.isPublish()).thenReturn(true);
+        when(gerritChangeQuery.snapshot()).thenReturn(trivialRebase("Patch Set 1: Code-Review-1\\n\\nSonar review"));
+        when(gerritConfiguration.getRevisionId()).thenReturn("2");
+        when(gerritConfiguration.getTag()).thenReturn("autogenerated:sonar");
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        boolean copied = gerritProjectBuilder.copyTrivialRebaseReview(context);
+        // then
+        assertThat(copied).isFalse();
+        assertThat(root.getSubProjects()).containsOnly(core, web);
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    private GerritChangeSnapshot trivialRebase(String previousMessage) throws IOException {
+        return GerritChangeSnapshot.parse("{\"current_revision\": \"674ac754\", \"revisions\": {\"674ac754\": "
+                + "{\"_number\": 2, \"kind\": \"TRIVIAL_REBASE\"}}, \"messages\": [{\"tag\": "
+                + "\"autogenerated:sonar\", \"message\": \"" + previousMessage + "\", \"_revision_number\": 1}]}");
+    }
+
+    @Test
+    public void shouldSkipAnalysisOfSupersededRevision() throws GerritPluginException {
+        // given
+        when(gerritConfiguration.isEnabled()).thenReturn(true);
+        when(gerritRevisionChecker.isSuperseded()).thenReturn(true);
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        gerritProjectBuilder.build(context);
+        // then
+        assertThat(root.getSubProjects()).isEmpty();
+        assertThat(root.properties().get(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY)).isEqualTo("**/*");
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    @Test
+    public void shouldAnalyzeSupersededRevisionInPublishMode() throws GerritPluginException {
+        // given
+        when(gerritConfiguration.isEnabled()).thenReturn(true);
+        when(gerritRevisionChecker.isSuperseded()).thenReturn(true);
+        when(analysisMode.isPublish()).thenReturn(true);
+        ProjectBuilder.Context context = mock(ProjectBuilder.Context.class);
+        when(context.projectReactor()).thenReturn(new ProjectReactor(root));
+        // when
+        gerritProjectBuilder.build(context);
+        // then
+        assertThat(root.getSubProjects()).containsOnly(core, web);
+        assertThat(root.properties().get(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY)).isNull();
+        verify(gerritFacade, never()).setReview(any(ReviewInput.class));
+    }
+
+    @Test(expected = MessageException.class)
+    public void shouldFailOnSupersededRevision() {
+        // given
+        when(gerritConfiguration.isEnabled()).thenReturn(true);
+        when(gerritRevisionChecker.isSuperseded()).thenReturn(true);
+        when(gerritRevisionChecker.shouldFail()).thenReturn(true);
+        // when
+        gerritProjectBuilder.build(mock(ProjectBuilder.Context.class));
+        // then
+    }
+
+    @Test
+    public void shouldBuildRelativeModulePath() {
+        // given
+        // when
+        // then
+        assertThat(gerritProjectBuilder.relativeModulePath(ROOT_DIR, new File(ROOT_DIR, "web/api"))).isEqualTo(
+                "web/api/");
+        assertThat(gerritProjectBuilder.relativeModulePath(ROOT_DIR, ROOT_DIR)).isEqualTo("");
+        assertThat(gerritProjectBuilder.relativeModulePath(ROOT_DIR, new File("/elsewhere"))).isNull();
+    }
+}
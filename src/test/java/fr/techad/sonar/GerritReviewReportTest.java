@@ -0,0 +1,65 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class GerritReviewReportTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private GerritReviewReport gerritReviewReport;
+
+    @Before
+    public void setUp() {
+        gerritReviewReport = new GerritReviewReport();
+    }
+
+    @Test
+    public void shouldAccumulateCounters() {
+        // given
+        // when
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_ISSUES, 3);
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_ISSUES, 4);
+        // then
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_ISSUES)).isEqualTo(7);
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_COMMENTS)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldSummarizePhasesAndCounters() {
+        // given
+        gerritReviewReport.stop(GerritReviewReport.PHASE_LIST_FILES, gerritReviewReport.start());
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_PAYLOAD_BYTES, 42);
+        // when
+        String summary = gerritReviewReport.summary();
+        // then
+        assertThat(summary).contains("listFiles=").contains("payloadBytes=42");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldWriteJsonReport() throws IOException {
+        // given
+        File dir = temp.newFolder();
+        gerritReviewReport.stop(GerritReviewReport.PHASE_SET_REVIEW, gerritReviewReport.start());
+        gerritReviewReport.increment(GerritReviewReport.COUNTER_COMMENTS, 5);
+        // when
+        gerritReviewReport.publish(dir);
+        // then
+        Map<String, Object> report = new ObjectMapper().readValue(new File(dir, GerritReviewReport.REPORT_FILE_NAME),
+                Map.class);
+        assertThat((Map<String, Object>) report.get("phasesMs")).includes(entry("setReview", 0));
+        assertThat((Map<String, Object>) report.get("counters")).includes(entry("comments", 5));
+    }
+}
@@ -0,0 +1,95 @@
+package fr.techad.sonar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.config.Settings;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+
+import fr.techad.sonar.gerrit.GerritFacade;
+import fr.techad.sonar.gerrit.GerritRevisionChecker;
+import fr.techad.sonar.gerrit.ReviewInput;
+import fr.techad.sonar.gerrit.ReviewShard;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritShardMergerTest {
+    private static final String LABEL = "Code-Review";
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritFacade gerritFacade;
+    @Mock
+    private GerritRevisionChecker gerritRevisionChecker;
+
+    private GerritShardMerger gerritShardMerger;
+
+    @Before
+    public void setUp() {
+        when(gerritConfiguration.getChangeId()).thenReturn("I1");
+        when(gerritConfiguration.getRevisionId()).thenReturn("abc");
+        when(gerritConfiguration.getLabel()).thenReturn(LABEL);
+        when(gerritConfiguration.getMessage()).thenReturn("Sonar review");
+        when(gerritConfiguration.getThreshold()).thenReturn(Severity.CRITICAL);
+        when(gerritConfiguration.getVoteNoIssue()).thenReturn(1);
+        when(gerritConfiguration.getVoteBelowThreshold()).thenReturn(0);
+        when(gerritConfiguration.getVoteAboveThreshold()).thenReturn(-1);
+        gerritShardMerger = new GerritShardMerger(new Settings(), gerritConfiguration, gerritFacade,
+                gerritRevisionChecker);
+    }
+
+    @Test
+    public void shouldMergeShardsIntoOneVote() throws IOException, GerritPluginException {
+        // given
+        File core = writeShard("core.json", "core/Foo.java", Severity.MINOR);
+        File web = writeShard("web.json", "web/Bar.java", Severity.BLOCKER);
+        // when
+        ReviewInput reviewInput = gerritShardMerger.merge(Arrays.asList(core, web));
+        // then
+        assertThat(reviewInput.getComments().keySet()).containsOnly("core/Foo.java", "web/Bar.java");
+        assertThat(reviewInput.getLabels().get(LABEL)).isEqualTo(-1);
+        assertThat(reviewInput.getMessage()).isEqualTo("Sonar review");
+    }
+
+    @Test
+    public void shouldVoteBelowThresholdAndIgnoreDuplicateShard() throws IOException, GerritPluginException {
+        // given
+        File core = writeShard("core.json", "core/Foo.java", Severity.MINOR);
+        // when
+        ReviewInput reviewInput = gerritShardMerger.merge(Arrays.asList(core, core));
+        // then
+        assertThat(reviewInput.getCommentStore().size()).isEqualTo(1);
+        assertThat(reviewInput.getLabels().get(LABEL)).isEqualTo(0);
+    }
+
+    @Test(expected = GerritPluginException.class)
+    public void shouldRefuseShardOfAnotherRevision() throws IOException, GerritPluginException {
+        // given
+        File core = writeShard("core.json", "core/Foo.java", Severity.MINOR);
+        when(gerritConfiguration.getRevisionId()).thenReturn("def");
+        // when
+        gerritShardMerger.merge(Arrays.asList(core));
+        // then
+    }
+
+    private File writeShard(String name, String file, String severity) throws IOException {
+        ReviewInput reviewInput = new ReviewInput();
+        reviewInput.getCommentStore().addIssue(file, 12, true, RuleKey.of("squid", "S00112"), severity, "Fix it");
+        File shardFile = new File(temp.getRoot(), name);
+        ReviewShard.write(shardFile, name, gerritConfiguration, reviewInput);
+        return shardFile;
+    }
+}
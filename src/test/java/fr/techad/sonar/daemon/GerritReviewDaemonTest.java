@@ -0,0 +1,44 @@
+package fr.techad.sonar.daemon;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritReviewDaemonTest {
+    private static final String EVENTS = "{\"type\":\"patchset-created\",\"change\":{\"project\":\"project\","
+            + "\"branch\":\"master\",\"id\":\"I1\",\"number\":\"42\"},\"patchSet\":{\"number\":\"2\","
+            + "\"revision\":\"abc\"}}\n"
+            + "{\"type\":\"comment-added\",\"change\":{\"project\":\"project\",\"branch\":\"master\",\"id\":\"I1\"}}\n"
+            + "not json\n" + "\n"
+            + "{\"type\":\"change-abandoned\",\"change\":{\"project\":\"project\",\"branch\":\"master\",\"id\":\"I1\","
+            + "\"number\":\"42\"}}\n";
+    @Mock
+    private ReviewScheduler reviewScheduler;
+
+    @Test
+    public void shouldSubmitChangeEvents() throws IOException {
+        // given
+        GerritReviewDaemon gerritReviewDaemon = new GerritReviewDaemon(reviewScheduler);
+        ArgumentCaptor<PatchSetEvent> events = ArgumentCaptor.forClass(PatchSetEvent.class);
+        // when
+        gerritReviewDaemon.run(new StringReader(EVENTS));
+        // then
+        verify(reviewScheduler, times(2)).submit(events.capture());
+        PatchSetEvent created = events.getAllValues().get(0);
+        assertThat(created.isPatchSetCreated()).isTrue();
+        assertThat(created.getChangeKey()).isEqualTo("project~master~I1");
+        assertThat(created.getPatchSetNumber()).isEqualTo(2);
+        assertThat(created.getRevision()).isEqualTo("abc");
+        assertThat(events.getAllValues().get(1).getType()).isEqualTo(PatchSetEvent.CHANGE_ABANDONED);
+    }
+}
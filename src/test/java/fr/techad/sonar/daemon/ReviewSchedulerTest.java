@@ -0,0 +1,91 @@
+package fr.techad.sonar.daemon;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReviewSchedulerTest {
+    private final List<String> analysed = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Blocks the analysis of the first patch set of change I1 until released.
+     */
+    private final AnalysisLauncher analysisLauncher = new AnalysisLauncher() {
+        @Override
+        public void analyse(@NotNull PatchSetEvent event) throws IOException, InterruptedException {
+            analysed.add(event.getChangeId() + "/" + event.getPatchSetNumber());
+            if ("I1".equals(event.getChangeId()) && event.getPatchSetNumber() == 1) {
+                started.countDown();
+                release.await();
+            }
+        }
+    };
+
+    @Test
+    public void shouldCancelSupersededAnalysis() throws InterruptedException {
+        // given
+        ReviewScheduler reviewScheduler = new ReviewScheduler(2, analysisLauncher);
+        reviewScheduler.submit(patchSet("I1", 1));
+        started.await(10, TimeUnit.SECONDS);
+        // when
+        reviewScheduler.submit(patchSet("I1", 2));
+        reviewScheduler.shutdown(10, TimeUnit.SECONDS);
+        // then
+        assertThat(analysed).containsExactly("I1/1", "I1/2");
+        assertThat(reviewScheduler.getCancelledCount()).isEqualTo(1);
+        assertThat(reviewScheduler.getCompletedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldOnlyAnalyseLatestQueuedPatchSet() throws InterruptedException {
+        // given
+        ReviewScheduler reviewScheduler = new ReviewScheduler(1, analysisLauncher);
+        reviewScheduler.submit(patchSet("I1", 1));
+        started.await(10, TimeUnit.SECONDS);
+        // when
+        reviewScheduler.submit(patchSet("I2", 1));
+        reviewScheduler.submit(patchSet("I2", 3));
+        reviewScheduler.submit(patchSet("I2", 2));
+        release.countDown();
+        reviewScheduler.shutdown(10, TimeUnit.SECONDS);
+        // then
+        assertThat(analysed).containsExactly("I1/1", "I2/3");
+        assertThat(reviewScheduler.getDeduplicatedCount()).isEqualTo(2);
+        assertThat(reviewScheduler.getCompletedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDropAbandonedChange() throws InterruptedException {
+        // given
+        ReviewScheduler reviewScheduler = new ReviewScheduler(1, analysisLauncher);
+        reviewScheduler.submit(patchSet("I1", 1));
+        started.await(10, TimeUnit.SECONDS);
+        reviewScheduler.submit(patchSet("I2", 1));
+        // when
+        reviewScheduler.submit(event(PatchSetEvent.CHANGE_ABANDONED, "I2", 0));
+        reviewScheduler.submit(event(PatchSetEvent.CHANGE_MERGED, "I1", 0));
+        reviewScheduler.shutdown(10, TimeUnit.SECONDS);
+        // then
+        assertThat(analysed).containsExactly("I1/1");
+        assertThat(reviewScheduler.getCancelledCount()).isEqualTo(1);
+        assertThat(reviewScheduler.getPendingCount()).isEqualTo(0);
+    }
+
+    private static PatchSetEvent patchSet(String changeId, int patchSetNumber) {
+        return event(PatchSetEvent.PATCHSET_CREATED, changeId, patchSetNumber);
+    }
+
+    private static PatchSetEvent event(String type, String changeId, int patchSetNumber) {
+        return new PatchSetEvent(type, "project", "master", changeId, "42", patchSetNumber, "rev" + patchSetNumber);
+    }
+}
@@ -0,0 +1,77 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GerritChangeSnapshotTest {
+    private static final String CHANGE_RESPONSE = ")]}'\n{\"id\": \"project~master~I1\", "
+            + "\"total_comment_count\": 4, \"unresolved_comment_count\": 1, "
+            + "\"labels\": {\"Code-Review\": {\"all\": [{\"value\": 1, \"_account_id\": 1000}], \"values\": {}}}, "
+            + "\"permitted_labels\": {\"Code-Review\": [\"-1\", \" 0\", \"+1\"], \"Verified\": []}, "
+            + "\"current_revision\": \"674ac754f91e64a0efb8087e59a176484bd534d1\", "
+            + "\"revisions\": {\"674ac754f91e64a0efb8087e59a176484bd534d1\": {\"kind\": \"TRIVIAL_REBASE\", "
+            + "\"_number\": 3, \"ref\": \"refs/changes/01/1/3\", \"files\": {\"src/Foo.java\": "
+            + "{\"lines_inserted\": 5}, \"src/Bar.java\": {\"status\": \"D\"}}}}}";
+
+    @Test
+    public void shouldParseChange() throws IOException {
+        // given
+        // when
+        GerritChangeSnapshot snapshot = GerritChangeSnapshot.parse(CHANGE_RESPONSE);
+        // then
+        assertThat(snapshot.getCurrentRevision()).isEqualTo("674ac754f91e64a0efb8087e59a176484bd534d1");
+        assertThat(snapshot.getCurrentPatchSet()).isEqualTo("3");
+        assertThat(snapshot.getCurrentKind()).isEqualTo("TRIVIAL_REBASE");
+        assertThat(snapshot.getCurrentFiles()).containsOnly("src/Foo.java", "src/Bar.java");
+        assertThat(snapshot.getPermittedValues("Code-Review")).containsExactly("-1", " 0", "+1");
+        assertThat(snapshot.getPermittedValues("Verified")).isEmpty();
+        assertThat(snapshot.getPermittedValues("Other")).isNull();
+        assertThat(snapshot.getTotalCommentCount()).isEqualTo(4);
+        assertThat(snapshot.getUnresolvedCommentCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecognizeCurrentRevision() throws IOException {
+        // given
+        // when
+        GerritChangeSnapshot snapshot = GerritChangeSnapshot.parse(CHANGE_RESPONSE);
+        // then
+        assertThat(snapshot.isCurrent("674ac754f91e64a0efb8087e59a176484bd534d1")).isTrue();
+        assertThat(snapshot.isCurrent("3")).isTrue();
+        assertThat(snapshot.isCurrent("current")).isTrue();
+        assertThat(snapshot.isCurrent("2")).isFalse();
+        assertThat(snapshot.isCurrent(null)).isFalse();
+    }
+
+    @Test
+    public void shouldFindLastTaggedMessageOfPatchSet() throws IOException {
+        // given
+        String response = ")]}'\n{\"current_revision\": \"674ac754\", \"revisions\": {\"674ac754\": "
+                + "{\"_number\": 3}}, \"messages\": ["
+                + "{\"tag\": \"autogenerated:sonar\", \"message\": \"Patch Set 2:\\n\\nSonar review in progress\", "
+                + "\"_revision_number\": 2}, "
+                + "{\"tag\": \"autogenerated:sonar\", \"message\": \"Patch Set 2: Code-Review-1 Verified+1\\n\\n"
+                + "(2 comments)\\n\\nSonar review at http://sonar\", \"_revision_number\": 2}, "
+                + "{\"message\": \"Patch Set 2: Code-Review+2\", \"_revision_number\": 2}]}";
+        // when
+        GerritChangeSnapshot snapshot = GerritChangeSnapshot.parse(response);
+        GerritChangeSnapshot.ChangeMessage message = snapshot.getLastMessage("autogenerated:sonar", 2);
+        // then
+        assertThat(message.getVote("Code-Review")).isEqualTo(-1);
+        assertThat(message.getVote("Verified")).isEqualTo(1);
+        assertThat(message.getVote("Other")).isEqualTo(0);
+        assertThat(message.getSummary()).isEqualTo("Sonar review at http://sonar");
+        assertThat(snapshot.getLastMessage("autogenerated:sonar", 1)).isNull();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWithoutCurrentRevision() throws IOException {
+        // given
+        // when
+        GerritChangeSnapshot.parse(")]}'\n{\"id\": \"project~master~I1\"}");
+        // then
+    }
+}
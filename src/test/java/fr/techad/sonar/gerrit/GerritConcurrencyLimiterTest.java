@@ -0,0 +1,104 @@
+package fr.techad.sonar.gerrit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritReviewReport;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritConcurrencyLimiterTest {
+    private static final long LATENCY = 100L * 1000 * 1000;
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+
+    private GerritReviewReport gerritReviewReport;
+    private GerritConcurrencyLimiter gerritConcurrencyLimiter;
+    private long now = 1000L * LATENCY;
+
+    @Before
+    public void setUp() {
+        when(gerritConfiguration.getAdaptiveConcurrency()).thenReturn(8);
+        gerritReviewReport = new GerritReviewReport();
+        gerritConcurrencyLimiter = new GerritConcurrencyLimiter(gerritConfiguration, gerritReviewReport) {
+            @Override
+            protected long nanoTime() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void shouldRaiseLimitWhileLatencyIsStable() {
+        // given
+        // when
+        for (int round = 0; round < 50; round++) {
+            sendRound(LATENCY, 200);
+        }
+        // then
+        assertThat(gerritConcurrencyLimiter.currentLimit()).isEqualTo(8);
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_CONCURRENCY_LIMIT)).isEqualTo(8);
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_CONCURRENCY_INCREASES)).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldHalveLimitOnceForBurstOfOverloadAnswers() {
+        // given
+        for (int round = 0; round < 50; round++) {
+            sendRound(LATENCY, 200);
+        }
+        // when
+        sendRound(LATENCY, 503);
+        // then
+        assertThat(gerritConcurrencyLimiter.currentLimit()).isEqualTo(4);
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_CONCURRENCY_DECREASES)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCutLimitWhenLatencyRises() {
+        // given
+        for (int round = 0; round < 50; round++) {
+            sendRound(LATENCY, 200);
+        }
+        // when
+        for (int round = 0; round < 5; round++) {
+            sendRound(5 * LATENCY, 200);
+        }
+        // then
+        assertThat(gerritConcurrencyLimiter.currentLimit()).isLessThan(8);
+    }
+
+    @Test
+    public void shouldDoNothingWhenDisabled() {
+        // given
+        when(gerritConfiguration.getAdaptiveConcurrency()).thenReturn(0);
+        // when
+        long ticket = gerritConcurrencyLimiter.acquire(0);
+        gerritConcurrencyLimiter.release(ticket, 503);
+        // then
+        assertThat(ticket).isEqualTo(GerritConcurrencyLimiter.NO_TICKET);
+        assertThat(gerritReviewReport.getCounter(GerritReviewReport.COUNTER_CONCURRENCY_DECREASES)).isEqualTo(0);
+    }
+
+    /**
+     * Send as many requests as the limit allows, all answered after the same
+     * latency.
+     */
+    private void sendRound(long latency, int statusCode) {
+        int limit = Math.max(1, gerritConcurrencyLimiter.currentLimit());
+        long[] tickets = new long[limit];
+        for (int index = 0; index < limit; index++) {
+            tickets[index] = gerritConcurrencyLimiter.acquire(0);
+        }
+        now += latency;
+        for (long ticket : tickets) {
+            gerritConcurrencyLimiter.release(ticket, statusCode);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GerritConcurrentTransportTest extends GerritTransportContractTest {
+    @Override
+    protected GerritTransport createTransport(GerritConnector connector) {
+        return new GerritConcurrentTransport(connector);
+    }
+
+    @Test
+    public void shouldSendAsyncGetsInParallel() throws Exception {
+        // given
+        final CountDownLatch latch = new CountDownLatch(2);
+        server.createContext("/parallel", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                latch.countDown();
+                try {
+                    // Only answers once both requests are received
+                    boolean both = latch.await(5, TimeUnit.SECONDS);
+                    send(exchange, 200, String.valueOf(both));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        GerritTransport transport = createTransport(gerritConnector);
+        // when
+        Future<String> first = transport.getAsync("/parallel/1");
+        Future<String> second = transport.getAsync("/parallel/2");
+        // then
+        assertThat(first.get()).isEqualTo("true");
+        assertThat(second.get()).isEqualTo("true");
+    }
+}
@@ -0,0 +1,155 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritLogPolicy;
+import fr.techad.sonar.GerritReviewReport;
+import fr.techad.sonar.PropertyKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GerritConnectorReplicaTest {
+    private static final String CHANGE_PATH = "/changes/project~branch~changeid";
+    private static final String REVISION_PATH = CHANGE_PATH + "/revisions/revisionid";
+
+    private HttpServer primary;
+    private HttpServer replica;
+    private final CountDownLatch slowReplica = new CountDownLatch(1);
+    private volatile boolean replicaSlow;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = start();
+        replica = start();
+        respond(primary, REVISION_PATH + "/files/", 200, "primary files");
+        respond(primary, REVISION_PATH + "/review", 200, "{}");
+        respond(primary, CHANGE_PATH, 200, "primary change");
+        respond(replica, "/replica" + REVISION_PATH + "/files/", 200, "replica files");
+        respond(replica, "/replica" + REVISION_PATH + "/review", 500, "read only");
+        respond(replica, "/replica" + CHANGE_PATH, 404, "Not found");
+    }
+
+    @After
+    public void tearDown() {
+        slowReplica.countDown();
+        primary.stop(0);
+        replica.stop(0);
+    }
+
+    @Test
+    public void shouldReadFromReplicaAndWriteToPrimary() throws IOException {
+        // given
+        GerritConnector gerritConnector = connector(false);
+        // when
+        String files = gerritConnector.listFiles();
+        String review = gerritConnector.setReview("{}");
+        // then
+        assertThat(files).isEqualTo("replica files");
+        assertThat(review).isEqualTo("{}");
+    }
+
+    @Test
+    public void shouldReadFromPrimaryWhenReplicaIsBehind() throws IOException {
+        // given
+        GerritConnector gerritConnector = connector(false);
+        // when
+        String change = gerritConnector.get("/changes/project~branch~changeid?o=CURRENT_REVISION");
+        // then
+        assertThat(change).isEqualTo("primary change");
+    }
+
+    @Test
+    public void shouldHedgeSlowReadToPrimary() throws IOException {
+        // given
+        GerritConnector gerritConnector = connector(true);
+        for (int read = 0; read < 10; read++) {
+            assertThat(gerritConnector.listFiles()).isEqualTo("replica files");
+        }
+        replicaSlow = true;
+        long start = System.currentTimeMillis();
+        // when
+        String files = gerritConnector.listFiles();
+        // then
+        assertThat(files).isEqualTo("primary files");
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    }
+
+    @Test
+    public void shouldReadFromPrimaryWhenReplicaTimesOut() throws IOException {
+        // given
+        GerritConnector gerritConnector = connector(false, "4");
+        replicaSlow = true;
+        // when
+        String files = gerritConnector.listFiles();
+        // then
+        assertThat(files).isEqualTo("primary files");
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    private GerritConnector connector(boolean hedging) {
+        return connector(hedging, "0");
+    }
+
+    private GerritConnector connector(boolean hedging, String timeBudget) {
+        Settings settings = new Settings().appendProperty(PropertyKey.GERRIT_SCHEME, "http")
+                .appendProperty(PropertyKey.GERRIT_HOST, "localhost")
+                .appendProperty(PropertyKey.GERRIT_HTTP_PORT, String.valueOf(primary.getAddress().getPort()))
+                .appendProperty(PropertyKey.GERRIT_BASE_PATH, "")
+                .appendProperty(PropertyKey.GERRIT_READ_REPLICAS,
+                        "http://localhost:" + replica.getAddress().getPort() + "/replica/")
+                .appendProperty(PropertyKey.GERRIT_READ_HEDGING, String.valueOf(hedging))
+                .appendProperty(PropertyKey.GERRIT_TIME_BUDGET, timeBudget)
+                .appendProperty(PropertyKey.GERRIT_PROJECT, "project")
+                .appendProperty(PropertyKey.GERRIT_BRANCH, "branch")
+                .appendProperty(PropertyKey.GERRIT_CHANGE_ID, "changeid")
+                .appendProperty(PropertyKey.GERRIT_REVISION_ID, "revisionid");
+        GerritConfiguration gerritConfiguration = new GerritConfiguration(settings);
+        GerritReviewReport gerritReviewReport = new GerritReviewReport();
+        return new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                new GerritLogPolicy(gerritConfiguration, gerritReviewReport), new GerritTimeBudget(
+                        gerritConfiguration), new GerritConcurrencyLimiter(gerritConfiguration, gerritReviewReport));
+    }
+
+    private static HttpServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private void respond(final HttpServer server, String path, final int status, final String body) {
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (server == replica && replicaSlow) {
+                    try {
+                        slowReplica.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, bytes.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(bytes);
+                }
+            }
+        });
+    }
+}
@@ -10,7 +10,9 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 
 import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritLogPolicy;
 import fr.techad.sonar.GerritPluginException;
+import fr.techad.sonar.GerritReviewReport;
 import fr.techad.sonar.PropertyKey;
 import fr.techad.sonar.gerrit.GerritConnector;
 import static org.fest.assertions.Assertions.assertThat;
@@ -25,6 +27,8 @@ public class GerritConnectorTest {
     private GerritConnector gerritConnector;
     @Mock
     private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritLogPolicy gerritLogPolicy;
 
     private Settings settings;
 
@@ -48,7 +52,9 @@ public class GerritConnectorTest {
     public void shouldAggregateBasicParamsWhenAuthenticated() throws GerritPluginException {
         // given
         // when
-        gerritConnector = new GerritConnector(gerritConfiguration);
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                gerritLogPolicy, new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, new GerritReviewReport()));
         // then
         assertThat(gerritConnector.rootUriBuilder()).isEqualTo(
                 "/a/changes/project~branch~changeid/revisions/revisionid");
@@ -69,7 +75,9 @@ public class GerritConnectorTest {
                 .appendProperty(PropertyKey.GERRIT_LABEL, "Code-Review");
         gerritConfiguration = new GerritConfiguration(settings);
         // when
-        gerritConnector = new GerritConnector(gerritConfiguration);
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                gerritLogPolicy, new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, new GerritReviewReport()));
         // then
         assertThat(gerritConnector.rootUriBuilder()).isEqualTo(
                 "/a/changes/project~branch%2Fsubbranch~changeid/revisions/revisionid");
@@ -91,7 +99,9 @@ public class GerritConnectorTest {
                 .appendProperty(PropertyKey.GERRIT_LABEL, "Code-Review");
         gerritConfiguration = new GerritConfiguration(settings);
         // when
-        gerritConnector = new GerritConnector(gerritConfiguration);
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                gerritLogPolicy, new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, new GerritReviewReport()));
         // then
         assertThat(gerritConnector.rootUriBuilder()).isEqualTo(
                 "/r/a/changes/project~branch%2Fsubbranch~changeid/revisions/revisionid");
@@ -112,7 +122,9 @@ public class GerritConnectorTest {
                 .appendProperty(PropertyKey.GERRIT_LABEL, "Code-Review");
         gerritConfiguration = new GerritConfiguration(settings);
         // when
-        gerritConnector = new GerritConnector(gerritConfiguration);
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                gerritLogPolicy, new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, new GerritReviewReport()));
         // then
         assertThat(gerritConnector.rootUriBuilder()).isEqualTo(
                 "/changes/project~branch%2Fsubbranch~changeid/revisions/revisionid");
@@ -134,7 +146,9 @@ public class GerritConnectorTest {
                 .appendProperty(PropertyKey.GERRIT_LABEL, "Code-Review");
         gerritConfiguration = new GerritConfiguration(settings);
         // when
-        gerritConnector = new GerritConnector(gerritConfiguration);
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                gerritLogPolicy, new GerritTimeBudget(gerritConfiguration), new GerritConcurrencyLimiter(
+                        gerritConfiguration, new GerritReviewReport()));
         // then
         assertThat(gerritConnector.rootUriBuilder()).isEqualTo(
                 "/r/changes/project~branch%2Fsubbranch~changeid/revisions/revisionid");
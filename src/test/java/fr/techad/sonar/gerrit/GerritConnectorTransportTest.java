@@ -0,0 +1,8 @@
+package fr.techad.sonar.gerrit;
+
+public class GerritConnectorTransportTest extends GerritTransportContractTest {
+    @Override
+    protected GerritTransport createTransport(GerritConnector connector) {
+        return connector;
+    }
+}
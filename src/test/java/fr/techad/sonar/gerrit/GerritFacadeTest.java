@@ -6,12 +6,15 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import fr.techad.sonar.GerritConfiguration;
 import fr.techad.sonar.GerritPluginException;
+import fr.techad.sonar.GerritReviewReport;
 import fr.techad.sonar.gerrit.GerritConnector;
 import fr.techad.sonar.gerrit.GerritFacade;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -29,12 +32,27 @@ public class GerritFacadeTest {
             + "      \"lines_inserted\": 5,\n" + "      \"lines_deleted\": 3\n" + "    }\n" + "  }";
     @Mock
     private GerritConnector gerritConnectorMock;
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritChangeQuery gerritChangeQuery;
 
     private GerritFacade gerritFacade;
 
     @Before
     public void setUp() {
-        gerritFacade = new GerritFacade(gerritConnectorMock);
+        gerritFacade = new GerritFacade(new GerritTransportProvider(gerritConfiguration, gerritConnectorMock),
+                gerritConfiguration, new GerritReviewReport(), gerritChangeQuery);
+    }
+
+    @Test
+    public void shouldCountUtf8LengthWithoutEncoding() {
+        // given
+        String text = "a\u00e9\u2713\ud83d\ude00";
+        // when
+        long length = GerritFacade.utf8Length(text);
+        // then
+        assertThat(length).isEqualTo(text.getBytes(StandardCharsets.UTF_8).length);
     }
 
     @Test
@@ -0,0 +1,146 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import fr.techad.sonar.GerritConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritPreflightTest {
+    private static final String ACCOUNT_PATH = "/accounts/self";
+    private static final String REVIEW_PATH = "/changes/project~branch~changeid/revisions/revisionid/review";
+    private static final String REVIEW_RESPONSE = ")]}'\n"
+            + "{\"permitted_labels\": {\"Code-Review\": [\"-1\", \" 0\", \"+1\"]}}";
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritChangeQuery gerritChangeQuery;
+    @Mock
+    private GerritConnector gerritConnector;
+
+    private GerritPreflight gerritPreflight;
+
+    @Before
+    public void setUp() {
+        when(gerritConfiguration.getPreflightMode()).thenReturn(GerritPreflight.MODE_DEGRADE);
+        when(gerritConfiguration.getLabel()).thenReturn("Code-Review");
+        when(gerritConfiguration.getVoteNoIssue()).thenReturn(1);
+        when(gerritConfiguration.getVoteBelowThreshold()).thenReturn(0);
+        when(gerritConfiguration.getVoteAboveThreshold()).thenReturn(-1);
+        when(gerritConfiguration.getProjectName()).thenReturn("project");
+        when(gerritConfiguration.getBranchName()).thenReturn("branch");
+        when(gerritConfiguration.getChangeId()).thenReturn("changeid");
+        when(gerritConfiguration.getRevisionId()).thenReturn("revisionid");
+        when(gerritConnector.getAsync(anyString())).thenCallRealMethod();
+        gerritPreflight = new GerritPreflight(gerritConfiguration, new GerritTransportProvider(gerritConfiguration,
+                gerritConnector), gerritChangeQuery);
+    }
+
+    @Test
+    public void shouldPassWhenVotesArePermitted() throws IOException {
+        // given
+        when(gerritConnector.get(REVIEW_PATH)).thenReturn(REVIEW_RESPONSE);
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.OK);
+        verify(gerritConnector).getAsync(ACCOUNT_PATH);
+        verify(gerritConnector).getAsync(REVIEW_PATH);
+        assertThat(gerritPreflight.isVotePermitted(1)).isTrue();
+        assertThat(gerritPreflight.isVotePermitted(0)).isTrue();
+        assertThat(gerritPreflight.isVotePermitted(-1)).isTrue();
+    }
+
+    @Test
+    public void shouldReadPermittedLabelsFromChangeSnapshot() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("current");
+        when(gerritChangeQuery.isEnabled()).thenReturn(true);
+        when(gerritChangeQuery.snapshot()).thenReturn(GerritChangeSnapshot.parse(")]}'\n"
+                + "{\"current_revision\": \"abc\", \"permitted_labels\": {\"Code-Review\": [\"-1\", \" 0\"]}}"));
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.OK);
+        assertThat(gerritPreflight.isVotePermitted(1)).isFalse();
+        assertThat(gerritPreflight.isVotePermitted(-1)).isTrue();
+        verify(gerritConnector).getAsync(ACCOUNT_PATH);
+        verify(gerritConnector, never()).get(REVIEW_PATH);
+    }
+
+    @Test
+    public void shouldOnlyRefuseTheVoteThatIsNotPermitted() throws IOException {
+        // given
+        when(gerritConnector.get(REVIEW_PATH)).thenReturn(REVIEW_RESPONSE);
+        when(gerritConfiguration.getVoteAboveThreshold()).thenReturn(-2);
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.OK);
+        assertThat(gerritPreflight.isVotePermitted(-2)).isFalse();
+        assertThat(gerritPreflight.isVotePermitted(1)).isTrue();
+    }
+
+    @Test
+    public void shouldNotVoteWhenLabelIsNotPermitted() throws IOException {
+        // given
+        when(gerritConnector.get(REVIEW_PATH)).thenReturn(
+                ")]}'\n{\"permitted_labels\": {\"Verified\": [\" 0\"]}}");
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.NO_VOTE);
+    }
+
+    @Test
+    public void shouldBeFatalWhenAuthenticationIsRefused() throws IOException {
+        // given
+        when(gerritConnector.get(ACCOUNT_PATH)).thenThrow(new GerritHttpException(401, "Unauthorized"));
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.FATAL);
+    }
+
+    @Test
+    public void shouldBeFatalWhenRevisionIsNotFound() throws IOException {
+        // given
+        when(gerritConnector.get(REVIEW_PATH)).thenThrow(new GerritHttpException(404, "Not Found"));
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.FATAL);
+    }
+
+    @Test
+    public void shouldBeUnknownWhenGerritIsUnreachable() throws IOException {
+        // given
+        when(gerritConnector.get(ACCOUNT_PATH)).thenThrow(new IOException("Connection refused"));
+        // when
+        GerritPreflight.Status status = gerritPreflight.await();
+        // then
+        assertThat(status).isEqualTo(GerritPreflight.Status.UNKNOWN);
+    }
+
+    @Test
+    public void shouldDoNothingWhenOff() {
+        // given
+        when(gerritConfiguration.getPreflightMode()).thenReturn(GerritPreflight.MODE_OFF);
+        // when
+        gerritPreflight.start();
+        // then
+        assertThat(gerritPreflight.peek()).isNull();
+        assertThat(gerritPreflight.await()).isEqualTo(GerritPreflight.Status.UNKNOWN);
+    }
+}
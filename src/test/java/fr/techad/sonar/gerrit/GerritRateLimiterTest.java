@@ -0,0 +1,94 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import fr.techad.sonar.GerritConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritRateLimiterTest {
+    private static final long NOW = 1000000L;
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+
+    private GerritRateLimiter gerritRateLimiter;
+
+    @Before
+    public void setUp() throws IOException {
+        when(gerritConfiguration.getRateLimitStateFile()).thenReturn(temp.newFile().getAbsolutePath());
+        gerritRateLimiter = new GerritRateLimiter(gerritConfiguration);
+    }
+
+    @Test
+    public void shouldWaitForTokenWhenBucketIsEmpty() throws IOException {
+        // given
+        when(gerritConfiguration.getRequestsPerMinute()).thenReturn(60);
+        // when
+        GerritRateLimiter.Attempt first = gerritRateLimiter.tryAcquire(NOW);
+        GerritRateLimiter.Attempt second = gerritRateLimiter.tryAcquire(NOW);
+        GerritRateLimiter.Attempt third = gerritRateLimiter.tryAcquire(NOW + 1000);
+        // then
+        assertThat(first.lease).isNotEqualTo(GerritRateLimiter.NO_LEASE);
+        assertThat(second.lease).isEqualTo(GerritRateLimiter.NO_LEASE);
+        assertThat(second.waitMillis).isEqualTo(1000);
+        assertThat(third.lease).isNotEqualTo(GerritRateLimiter.NO_LEASE);
+    }
+
+    @Test
+    public void shouldShareStateBetweenInstances() throws IOException {
+        // given
+        when(gerritConfiguration.getRequestsPerMinute()).thenReturn(60);
+        gerritRateLimiter.tryAcquire(NOW);
+        // when
+        GerritRateLimiter.Attempt attempt = new GerritRateLimiter(gerritConfiguration).tryAcquire(NOW);
+        // then
+        assertThat(attempt.lease).isEqualTo(GerritRateLimiter.NO_LEASE);
+    }
+
+    @Test
+    public void shouldCapConcurrentRequests() throws IOException {
+        // given
+        when(gerritConfiguration.getMaxConcurrentRequests()).thenReturn(1);
+        GerritRateLimiter.Attempt first = gerritRateLimiter.tryAcquire(NOW);
+        // when
+        GerritRateLimiter.Attempt blocked = gerritRateLimiter.tryAcquire(NOW);
+        gerritRateLimiter.release(first.lease);
+        GerritRateLimiter.Attempt released = gerritRateLimiter.tryAcquire(NOW);
+        // then
+        assertThat(blocked.lease).isEqualTo(GerritRateLimiter.NO_LEASE);
+        assertThat(released.lease).isNotEqualTo(GerritRateLimiter.NO_LEASE);
+    }
+
+    @Test
+    public void shouldIgnoreExpiredLeases() throws IOException {
+        // given
+        when(gerritConfiguration.getMaxConcurrentRequests()).thenReturn(1);
+        GerritRateLimiter.Attempt first = gerritRateLimiter.tryAcquire(NOW);
+        // when
+        GerritRateLimiter.Attempt attempt = gerritRateLimiter.tryAcquire(first.lease + 1);
+        // then
+        assertThat(attempt.lease).isNotEqualTo(GerritRateLimiter.NO_LEASE);
+    }
+
+    @Test
+    public void shouldDoNothingWhenDisabled() {
+        // given
+        // when
+        long lease = gerritRateLimiter.acquire();
+        // then
+        assertThat(gerritRateLimiter.isEnabled()).isFalse();
+        assertThat(lease).isEqualTo(GerritRateLimiter.NO_LEASE);
+    }
+}
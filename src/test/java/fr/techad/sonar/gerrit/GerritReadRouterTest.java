@@ -0,0 +1,68 @@
+package fr.techad.sonar.gerrit;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GerritReadRouterTest {
+
+    @Test
+    public void shouldParseReplicaUrls() {
+        // given
+        // when
+        GerritReadRouter router = new GerritReadRouter(Arrays.asList("https://replica:8443/gerrit/", "not a url",
+                "http://other"));
+        // then
+        assertThat(router.endpoints()).hasSize(2);
+        assertThat(router.endpoints().get(0).getHost().toURI()).isEqualTo("https://replica:8443");
+        assertThat(router.endpoints().get(0).getBasePath()).isEqualTo("/gerrit");
+        assertThat(router.endpoints().get(1).getBasePath()).isEmpty();
+    }
+
+    @Test
+    public void shouldHaveNoReplica() {
+        // given
+        // when
+        GerritReadRouter router = new GerritReadRouter(Collections.<String> emptyList());
+        // then
+        assertThat(router.hasReplicas()).isFalse();
+    }
+
+    @Test
+    public void shouldPreferFastestAndAvoidFailedReplica() {
+        // given
+        GerritReadRouter router = new GerritReadRouter(Arrays.asList("http://slow", "http://fast"));
+        GerritReadRouter.Endpoint slow = router.endpoints().get(0);
+        GerritReadRouter.Endpoint fast = router.endpoints().get(1);
+        // when
+        router.record(slow, 200);
+        // then
+        assertThat(router.choose()).isSameAs(fast);
+        router.record(fast, 50);
+        assertThat(router.choose()).isSameAs(fast);
+        assertThat(router.alternative(fast)).isSameAs(slow);
+        router.penalize(fast);
+        assertThat(router.choose()).isSameAs(slow);
+    }
+
+    @Test
+    public void shouldHedgeAfterPercentileOfLatencies() {
+        // given
+        GerritReadRouter router = new GerritReadRouter(Arrays.asList("http://replica"));
+        GerritReadRouter.Endpoint replica = router.choose();
+        // when
+        for (int latency = 1; latency <= 9; latency++) {
+            router.record(replica, latency * 10);
+        }
+        // then
+        assertThat(router.hedgeDelayMillis(replica)).isEqualTo(GerritReadRouter.NO_HEDGE);
+        for (int latency = 10; latency <= 20; latency++) {
+            router.record(replica, latency * 10);
+        }
+        assertThat(router.hedgeDelayMillis(replica)).isEqualTo(190);
+        assertThat(router.alternative(replica)).isNull();
+    }
+}
@@ -0,0 +1,109 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import fr.techad.sonar.GerritConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritRevisionCheckerTest {
+    private static final String CHANGE_RESPONSE = ")]}'\n" + "{\"id\": \"project~master~I1\", "
+            + "\"current_revision\": \"674ac754f91e64a0efb8087e59a176484bd534d1\", "
+            + "\"revisions\": {\"674ac754f91e64a0efb8087e59a176484bd534d1\": {\"_number\": 3}}}";
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+    @Mock
+    private GerritChangeQuery gerritChangeQuery;
+    @Mock
+    private GerritConnector gerritConnector;
+
+    private GerritRevisionChecker gerritRevisionChecker;
+
+    @Before
+    public void setUp() throws IOException {
+        when(gerritConfiguration.getStaleRevisionPolicy()).thenReturn(GerritRevisionChecker.POLICY_SKIP);
+        when(gerritConfiguration.getProjectName()).thenReturn("project");
+        when(gerritConfiguration.getBranchName()).thenReturn("branch");
+        when(gerritConfiguration.getChangeId()).thenReturn("changeid");
+        when(gerritConnector.get(anyString())).thenReturn(CHANGE_RESPONSE);
+        gerritRevisionChecker = new GerritRevisionChecker(gerritConfiguration, new GerritTransportProvider(
+                gerritConfiguration, gerritConnector), gerritChangeQuery);
+    }
+
+    @Test
+    public void shouldAcceptCurrentRevision() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("674ac754f91e64a0efb8087e59a176484bd534d1");
+        // when
+        boolean superseded = gerritRevisionChecker.isSuperseded();
+        // then
+        assertThat(superseded).isFalse();
+    }
+
+    @Test
+    public void shouldAcceptCurrentPatchSetNumber() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("3");
+        // when
+        boolean superseded = gerritRevisionChecker.isSuperseded();
+        // then
+        assertThat(superseded).isFalse();
+    }
+
+    @Test
+    public void shouldDetectSupersededRevisionOnce() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("2");
+        // when
+        boolean superseded = gerritRevisionChecker.isSuperseded();
+        // then
+        assertThat(superseded).isTrue();
+        assertThat(gerritRevisionChecker.isSuperseded()).isTrue();
+        verify(gerritConnector, times(1)).get(anyString());
+    }
+
+    @Test
+    public void shouldCacheCurrentRevision() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("3");
+        // when
+        gerritRevisionChecker.isSuperseded();
+        gerritRevisionChecker.isSuperseded();
+        // then
+        verify(gerritConnector, times(1)).get(anyString());
+    }
+
+    @Test
+    public void shouldNotBeSupersededWhenGerritFails() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("2");
+        when(gerritConnector.get(anyString())).thenThrow(new GerritHttpException(500, "Internal Server Error"));
+        // when
+        boolean superseded = gerritRevisionChecker.isSuperseded();
+        // then
+        assertThat(superseded).isFalse();
+    }
+
+    @Test
+    public void shouldNotCallGerritWhenOff() throws IOException {
+        // given
+        when(gerritConfiguration.getStaleRevisionPolicy()).thenReturn(GerritRevisionChecker.POLICY_OFF);
+        // when
+        boolean superseded = gerritRevisionChecker.isSuperseded();
+        // then
+        assertThat(superseded).isFalse();
+        verify(gerritConnector, never()).get(anyString());
+    }
+}
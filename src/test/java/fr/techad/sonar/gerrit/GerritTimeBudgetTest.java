@@ -0,0 +1,122 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritPluginException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritTimeBudgetTest {
+    @Mock
+    private GerritConfiguration gerritConfiguration;
+
+    private GerritTimeBudget gerritTimeBudget;
+
+    @Before
+    public void setUp() {
+        when(gerritConfiguration.getTimeBudget()).thenReturn(10);
+        gerritTimeBudget = new GerritTimeBudget(gerritConfiguration);
+    }
+
+    @Test
+    public void shouldGiveHalfOfRemainingBudgetAsTimeout() throws IOException {
+        // given
+        gerritTimeBudget.spend(4000);
+        // when
+        int timeout = gerritTimeBudget.nextTimeoutMillis();
+        int timeoutAfterWait = gerritTimeBudget.nextTimeoutMillis(2000);
+        // then
+        assertThat(timeout).isEqualTo(3000);
+        assertThat(timeoutAfterWait).isEqualTo(2000);
+        assertThat(gerritTimeBudget.level()).isEqualTo(GerritTimeBudget.Level.FULL);
+    }
+
+    @Test
+    public void shouldLeaveBudgetForSmallerReviewsAfterTimeouts() throws IOException {
+        // given
+        gerritTimeBudget.spend(gerritTimeBudget.nextTimeoutMillis());
+        GerritTimeBudget.Level afterFullTimeout = gerritTimeBudget.level();
+        // when
+        gerritTimeBudget.spend(gerritTimeBudget.nextTimeoutMillis());
+        gerritTimeBudget.releaseReserve();
+        int voteOnlyTimeout = gerritTimeBudget.nextTimeoutMillis();
+        // then
+        assertThat(afterFullTimeout).isEqualTo(GerritTimeBudget.Level.CAPPED);
+        assertThat(gerritTimeBudget.remainingMillis()).isEqualTo(2500);
+        assertThat(voteOnlyTimeout).isEqualTo(2500);
+    }
+
+    @Test
+    public void shouldKeepReserveForVoteOnlyReview() throws IOException {
+        // given
+        gerritTimeBudget.spend(8500);
+        // when
+        int timeout = gerritTimeBudget.nextTimeoutMillis();
+        // then
+        assertThat(timeout).isEqualTo(500);
+    }
+
+    @Test
+    public void shouldDegradeAsBudgetRunsOut() {
+        // given
+        gerritTimeBudget.spend(6000);
+        // when
+        GerritTimeBudget.Level capped = gerritTimeBudget.level();
+        gerritTimeBudget.spend(3000);
+        GerritTimeBudget.Level voteOnly = gerritTimeBudget.level();
+        // then
+        assertThat(capped).isEqualTo(GerritTimeBudget.Level.CAPPED);
+        assertThat(voteOnly).isEqualTo(GerritTimeBudget.Level.VOTE_ONLY);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRefuseRequestsWhenExhausted() throws IOException {
+        // given
+        gerritTimeBudget.spend(12000);
+        // when
+        gerritTimeBudget.nextTimeoutMillis();
+        // then
+    }
+
+    @Test
+    public void shouldNotLimitWithoutBudget() throws IOException {
+        // given
+        when(gerritConfiguration.getTimeBudget()).thenReturn(0);
+        gerritTimeBudget.spend(12000);
+        // when
+        int timeout = gerritTimeBudget.nextTimeoutMillis();
+        // then
+        assertThat(timeout).isEqualTo(0);
+        assertThat(gerritTimeBudget.level()).isEqualTo(GerritTimeBudget.Level.FULL);
+    }
+
+    @Test
+    public void shouldOnlyRecognizeTimeoutsBeforeSending() {
+        // given
+        GerritPluginException connectTimeout = new GerritPluginException("Error setting review",
+                new ConnectTimeoutException());
+        GerritPluginException poolTimeout = new GerritPluginException("Error setting review",
+                new ConnectionPoolTimeoutException());
+        GerritPluginException socketTimeout = new GerritPluginException("Error setting review",
+                new SocketTimeoutException());
+        // when
+        // then
+        assertThat(GerritTimeBudget.isUnsentTimeout(connectTimeout)).isTrue();
+        assertThat(GerritTimeBudget.isUnsentTimeout(poolTimeout)).isTrue();
+        assertThat(GerritTimeBudget.isUnsentTimeout(socketTimeout)).isFalse();
+        assertThat(GerritTimeBudget.isUnsentTimeout(new GerritPluginException("Error", new IOException())))
+                .isFalse();
+    }
+}
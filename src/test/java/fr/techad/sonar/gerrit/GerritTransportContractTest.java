@@ -0,0 +1,170 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.GerritLogPolicy;
+import fr.techad.sonar.GerritReviewReport;
+import fr.techad.sonar.PropertyKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Behavior shared by every {@link GerritTransport}, checked against a local
+ * HTTP server.
+ */
+public abstract class GerritTransportContractTest {
+    protected static final String REVISION_PATH = "/changes/project~branch~changeid/revisions/revisionid";
+    private static final String FILES_RESPONSE = ")]}'\n{\"Foo.java\": {}}";
+
+    protected HttpServer server;
+    protected GerritConnector gerritConnector;
+    private GerritTransport gerritTransport;
+    private String postedBody;
+
+    protected abstract GerritTransport createTransport(GerritConnector connector);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        respond(REVISION_PATH + "/files/", 200, FILES_RESPONSE);
+        respond("/accounts/missing", 404, "Not found");
+        server.createContext(REVISION_PATH + "/review", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                postedBody = read(exchange.getRequestBody());
+                send(exchange, 200, "{}");
+            }
+        });
+        server.start();
+
+        Settings settings = new Settings().appendProperty(PropertyKey.GERRIT_SCHEME, "http")
+                .appendProperty(PropertyKey.GERRIT_HOST, "localhost")
+                .appendProperty(PropertyKey.GERRIT_HTTP_PORT, String.valueOf(server.getAddress().getPort()))
+                .appendProperty(PropertyKey.GERRIT_BASE_PATH, "").appendProperty(PropertyKey.GERRIT_PROJECT, "project")
+                .appendProperty(PropertyKey.GERRIT_BRANCH, "branch")
+                .appendProperty(PropertyKey.GERRIT_CHANGE_ID, "changeid")
+                .appendProperty(PropertyKey.GERRIT_REVISION_ID, "revisionid");
+        GerritConfiguration gerritConfiguration = new GerritConfiguration(settings);
+        GerritReviewReport gerritReviewReport = new GerritReviewReport();
+        gerritConnector = new GerritConnector(gerritConfiguration, new GerritRateLimiter(gerritConfiguration),
+                new GerritLogPolicy(gerritConfiguration, gerritReviewReport), new GerritTimeBudget(
+                        gerritConfiguration), new GerritConcurrencyLimiter(gerritConfiguration, gerritReviewReport));
+        gerritTransport = createTransport(gerritConnector);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldListFiles() throws IOException {
+        // given
+        // when
+        String response = gerritTransport.listFiles();
+        // then
+        assertThat(response).isEqualTo(FILES_RESPONSE);
+    }
+
+    @Test
+    public void shouldPostReview() throws IOException {
+        // given
+        String review = "{\"message\":\"Looks good to me.\"}";
+        // when
+        String response = gerritTransport.setReview(review);
+        // then
+        assertThat(response).isEqualTo("{}");
+        assertThat(postedBody).isEqualTo(review);
+    }
+
+    @Test
+    public void shouldPostSerializedReview() throws IOException {
+        // given
+        String review = "{\"message\":\"Looks good to me \u2713\"}";
+        // when
+        String response = gerritTransport.setReview(review.getBytes(StandardCharsets.UTF_8));
+        // then
+        assertThat(response).isEqualTo("{}");
+        assertThat(postedBody).isEqualTo(review);
+    }
+
+    @Test
+    public void shouldGetPath() throws Exception {
+        // given
+        respond("/accounts/self", 200, "{\"name\":\"sonar\"}");
+        // when
+        String response = gerritTransport.get("/accounts/self");
+        String asyncResponse = gerritTransport.getAsync("/accounts/self").get();
+        // then
+        assertThat(response).isEqualTo("{\"name\":\"sonar\"}");
+        assertThat(asyncResponse).isEqualTo(response);
+    }
+
+    @Test(expected = GerritHttpException.class)
+    public void shouldFailGetOnErrorStatus() throws IOException {
+        // given
+        // when
+        gerritTransport.get("/accounts/missing");
+        // then
+    }
+
+    @Test
+    public void shouldFailAsyncGetOnErrorStatus() throws InterruptedException {
+        // given
+        Throwable cause = null;
+        // when
+        try {
+            gerritTransport.getAsync("/accounts/missing").get();
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+        }
+        // then
+        assertThat(cause).isInstanceOf(GerritHttpException.class);
+        assertThat(((GerritHttpException) cause).getStatusCode()).isEqualTo(404);
+    }
+
+    protected void respond(String path, final int status, final String body) {
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, status, body);
+            }
+        });
+    }
+
+    protected static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = input.read(buffer)) > 0) {
+            output.write(buffer, 0, length);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.techad.sonar.GerritConfiguration;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GitFileListProviderTest {
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File repository;
+    private GerritConfiguration gerritConfiguration;
+
+    @Before
+    public void setUp() throws IOException {
+        repository = temp.newFolder("repository");
+        git("init", "-q");
+        write("src/main/java/Foo.java", "class Foo {\n    // a long enough body to be detected as renamed\n}\n");
+        write("README", "readme\n");
+        commit("initial");
+        gerritConfiguration = mock(GerritConfiguration.class);
+        when(gerritConfiguration.getProjectBaseDir()).thenReturn(repository);
+    }
+
+    @Test
+    public void shouldParseNameStatusOutput() {
+        // given
+        String output = "M\0a.java\0R087\0old.java\0new.java\0D\0gone.java\0";
+        // when
+        Set<String> files = GitFileListProvider.parse(output);
+        // then
+        assertThat(files).containsOnly("a.java", "new.java", "gone.java");
+    }
+
+    @Test
+    public void shouldListRevisionFilesWithRenames() throws IOException {
+        // given
+        git("mv", "src/main/java/Foo.java", "src/main/java/Bar.java");
+        write("src/main/java/Baz.java", "class Baz {}\n");
+        String revision = commit("rename");
+        when(gerritConfiguration.getRevisionId()).thenReturn(revision);
+        // when
+        Set<String> files = new GitFileListProvider(gerritConfiguration).listFiles();
+        // then
+        assertThat(files).containsOnly("src/main/java/Bar.java", "src/main/java/Baz.java");
+    }
+
+    @Test
+    public void shouldDiffMergeAgainstFirstParent() throws IOException {
+        // given
+        git("checkout", "-q", "-b", "topic");
+        write("topic.txt", "topic\n");
+        commit("topic");
+        git("checkout", "-q", "-");
+        write("README", "changed\n");
+        commit("main");
+        git("merge", "-q", "--no-ff", "-m", "merge", "topic");
+        when(gerritConfiguration.getRevisionId()).thenReturn(git("rev-parse", "HEAD"));
+        // when
+        Set<String> files = new GitFileListProvider(gerritConfiguration).listFiles();
+        // then
+        assertThat(files).containsOnly("topic.txt");
+    }
+
+    @Test
+    public void shouldDiffAgainstBaseCommit() throws IOException {
+        // given
+        String base = git("rev-parse", "HEAD");
+        write("one.txt", "one\n");
+        commit("one");
+        write("two.txt", "two\n");
+        String revision = commit("two");
+        when(gerritConfiguration.getRevisionId()).thenReturn(revision);
+        when(gerritConfiguration.getGitBaseCommit()).thenReturn(base);
+        // when
+        Set<String> files = new GitFileListProvider(gerritConfiguration).listFiles();
+        // then
+        assertThat(files).containsOnly("one.txt", "two.txt");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnUnknownRevision() throws IOException {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("0123456789012345678901234567890123456789");
+        // when
+        new GitFileListProvider(gerritConfiguration).listFiles();
+        // then
+    }
+
+    @Test
+    public void shouldReportGitErrorOutput() {
+        // given
+        when(gerritConfiguration.getRevisionId()).thenReturn("0123456789012345678901234567890123456789");
+        String message = null;
+        // when
+        try {
+            new GitFileListProvider(gerritConfiguration).listFiles();
+        } catch (IOException e) {
+            message = e.getMessage();
+        }
+        // then
+        assertThat(message).contains("exited with").contains("fatal:");
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(repository, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String commit(String message) throws IOException {
+        git("add", "-A");
+        git("commit", "-q", "-m", message);
+        return git("rev-parse", "HEAD");
+    }
+
+    private String git(String... arguments) throws IOException {
+        List<String> command = new ArrayList<String>(Arrays.asList("git", "-c", "user.name=sonar", "-c",
+                "user.email=sonar@example.com", "-c", "commit.gpgsign=false"));
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command).directory(repository).redirectErrorStream(true).start();
+        try (InputStream output = process.getInputStream()) {
+            String result = new String(readAll(output), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new IOException(StringUtils.join(command, ' ') + ": " + result);
+            }
+            return result.trim();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+}
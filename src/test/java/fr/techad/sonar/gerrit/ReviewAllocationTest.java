@@ -0,0 +1,176 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.rule.RuleKey;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated by the per-issue path, measured with the allocation counter
+ * of the current thread. The budgets are the recorded allocations with some
+ * headroom: a change exceeding one adds allocations or log message building
+ * for every issue, and should either be reworked or record a new budget.
+ *
+ * Skipped on a JVM without thread allocation counters.
+ */
+public class ReviewAllocationTest {
+    // Recorded budgets, in bytes per issue or comment. Adding an issue costs
+    // the amortized growth of the comment columns, about 70 bytes.
+    private static final double ADD_ISSUE_BUDGET = 80;
+    private static final double WRITE_BUDGET = 12;
+    private static final double SET_LINE_BUDGET = 0.5;
+    private static final double SET_MESSAGE_BUDGET = 0.5;
+    private static final double MAX_LEVEL_BUDGET = 0.5;
+
+    private static final int ISSUES = 20000;
+    private static final int FILES = 200;
+    private static final int RULES = 50;
+    private static final String[] SEVERITIES = { "INFO", "MINOR", "MAJOR", "CRITICAL", "BLOCKER" };
+    private static final int ROUNDS = 3;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private final String[] files = new String[FILES];
+    private final RuleKey[] rules = new RuleKey[RULES];
+    private final String[] messages = new String[ISSUES];
+    private final Integer[] lines = new Integer[ISSUES];
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < FILES; i++) {
+            files[i] = "src/main/java/fr/techad/Synthetic" + i + ".java";
+        }
+        for (int i = 0; i < RULES; i++) {
+            rules[i] = RuleKey.of("squid", "S" + (100 + i));
+        }
+        for (int i = 0; i < ISSUES; i++) {
+            messages[i] = "Synthetic issue " + i;
+            lines[i] = Integer.valueOf(i % 500 + 1);
+        }
+    }
+
+    @Test
+    public void shouldAddIssuesWithinBudget() {
+        // given
+        double perIssue = Double.MAX_VALUE;
+        // when
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            fill(new ReviewCommentStore());
+            perIssue = Math.min(perIssue, (double) (allocatedBytes() - before) / ISSUES);
+        }
+        // then
+        assertWithinBudget("ReviewCommentStore.addIssue, bytes per issue", perIssue, ADD_ISSUE_BUDGET);
+    }
+
+    @Test
+    public void shouldWriteCommentsWithinBudget() throws IOException {
+        // given
+        ReviewCommentStore store = fill(new ReviewCommentStore());
+        JsonGenerator generator = new JsonFactory().createGenerator(new NullWriter());
+        double perComment = Double.MAX_VALUE;
+        // when
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            store.writeTo(generator);
+            generator.flush();
+            perComment = Math.min(perComment, (double) (allocatedBytes() - before) / ISSUES);
+        }
+        // then
+        assertWithinBudget("ReviewCommentStore.writeTo, bytes per comment", perComment, WRITE_BUDGET);
+    }
+
+    @Test
+    public void shouldSetCommentsWithinBudget() {
+        // given
+        ReviewLineComment comment = new ReviewLineComment();
+        double perLine = Double.MAX_VALUE;
+        double perMessage = Double.MAX_VALUE;
+        // when
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < ISSUES; i++) {
+                comment.setLine(lines[i]);
+            }
+            long afterLines = allocatedBytes();
+            for (int i = 0; i < ISSUES; i++) {
+                comment.setMessage(messages[i]);
+            }
+            perLine = Math.min(perLine, (double) (afterLines - before) / ISSUES);
+            perMessage = Math.min(perMessage, (double) (allocatedBytes() - afterLines) / ISSUES);
+        }
+        // then
+        assertWithinBudget("ReviewLineComment.setLine, bytes per comment", perLine, SET_LINE_BUDGET);
+        assertWithinBudget("ReviewFileComment.setMessage, bytes per comment", perMessage, SET_MESSAGE_BUDGET);
+    }
+
+    @Test
+    public void shouldComputeMaxLevelWithinBudget() {
+        // given
+        ReviewInput reviewInput = new ReviewInput();
+        fill(reviewInput.getCommentStore());
+        double perCall = Double.MAX_VALUE;
+        int level = 0;
+        // when
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < ISSUES; i++) {
+                level = Math.max(level, ReviewUtils.maxLevel(reviewInput));
+            }
+            perCall = Math.min(perCall, (double) (allocatedBytes() - before) / ISSUES);
+        }
+        // then
+        assertThat(level).isEqualTo(ReviewUtils.thresholdToValue("BLOCKER"));
+        assertWithinBudget("ReviewUtils.maxLevel, bytes per call", perCall, MAX_LEVEL_BUDGET);
+    }
+
+    private ReviewCommentStore fill(ReviewCommentStore store) {
+        for (int i = 0; i < ISSUES; i++) {
+            store.addIssue(files[i % FILES], lines[i], (i & 1) == 0, rules[i % RULES],
+                    SEVERITIES[i % SEVERITIES.length], messages[i]);
+        }
+        return store;
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void assertWithinBudget(String measure, double actual, double budget) {
+        assertThat(actual).overridingErrorMessage(
+                String.format("%s: %.2f, budget %.2f (+%.2f, +%.0f%%)", measure, actual, budget, actual - budget,
+                        budget == 0 ? 0 : (actual - budget) * 100 / budget)).isLessThanOrEqualTo(budget);
+    }
+
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            // Discard
+        }
+
+        @Override
+        public void flush() {
+            // Nothing to flush
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package fr.techad.sonar.gerrit;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.rule.RuleKey;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReviewCommentStoreTest {
+    private static final String FOO = "src/main/java/Foo.java";
+    private static final String BAR = "src/main/java/Bar.java";
+    private static final RuleKey RULE = RuleKey.of("squid", "S109");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ReviewCommentStore store;
+
+    @Before
+    public void setUp() {
+        store = new ReviewCommentStore();
+    }
+
+    @Test
+    public void shouldRenderIssueMessage() {
+        // given
+        store.addIssue(FOO, 12, true, RULE, "MAJOR", "magic number");
+        // when
+        List<ReviewLineComment> comments = store.toLineComments(0, 1);
+        // then
+        assertThat(comments).hasSize(1);
+        assertThat(comments.get(0).getLine()).isEqualTo(12);
+        assertThat(comments.get(0).getMessage()).isEqualTo(
+                "[true] New: Squid:S109 Severity: MAJOR, Message: magic number");
+    }
+
+    @Test
+    public void shouldWriteCommentsGroupedByFile() throws IOException {
+        // given
+        ReviewFileComment alert = new ReviewFileComment();
+        alert.setMessage("[ALERT] Severity: ERROR, Message: coverage");
+        store.addIssue(FOO, 1, true, RULE, "MINOR", "one");
+        store.addIssue(BAR, 2, false, RULE, "MINOR", "two");
+        store.addComments(FOO, Arrays.asList(alert));
+        // when
+        String json = write();
+        // then
+        assertThat(json).isEqualTo("{\"" + FOO + "\":["
+                + "{\"message\":\"[true] New: Squid:S109 Severity: MINOR, Message: one\",\"line\":1},"
+                + "{\"message\":\"[ALERT] Severity: ERROR, Message: coverage\"}],\"" + BAR + "\":["
+                + "{\"message\":\"[false] New: Squid:S109 Severity: MINOR, Message: two\",\"line\":2}]}");
+        assertThat(store.fileCount()).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldTrackMaxLevel() {
+        // given
+        store.addIssue(FOO, 1, true, RULE, "MINOR", "one");
+        store.addIssue(FOO, 2, true, RULE, "CRITICAL", "two");
+        store.addIssue(BAR, 3, true, RULE, "INFO", "three");
+        // when
+        int maxLevel = store.maxLevel();
+        // then
+        assertThat(maxLevel).isEqualTo(ReviewUtils.thresholdToValue("CRITICAL"));
+    }
+
+    @Test
+    public void shouldBeEmptyAfterClear() throws IOException {
+        // given
+        store.addIssue(FOO, 1, true, RULE, "BLOCKER", "one");
+        // when
+        store.clear();
+        // then
+        assertThat(store.isEmpty()).isTrue();
+        assertThat(store.maxLevel()).isEqualTo(0);
+        assertThat(write()).isEqualTo("{}");
+    }
+
+    private String write() throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonGenerator generator = new JsonFactory().createGenerator(writer);
+        store.writeTo(generator);
+        generator.close();
+        return writer.toString();
+    }
+
+    @Test
+    public void shouldRetainCommentsWithHighestSeverities() {
+        // given
+        store.addIssue(FOO, 1, true, RULE, "MINOR", "one");
+        store.addIssue(BAR, 2, true, RULE, "BLOCKER", "two");
+        store.addIssue(FOO, 3, true, RULE, "MAJOR", "three");
+        store.addIssue(FOO, 4, true, RULE, "MAJOR", "four");
+        // when
+        int removed = store.retainTop(2);
+        // then
+        assertThat(removed).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.fileCount()).isEqualTo(2);
+        assertThat(store.toMap().get(FOO)).hasSize(1);
+        assertThat(store.toMap().get(FOO).get(0).getMessage()).endsWith("three");
+        assertThat(store.severityCounts().get("MAJOR")).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldGroupRepeatedIssuesAndIssuesOfSameLine() {
+        // given
+        RuleKey other = RuleKey.of("squid", "S1481");
+        store.addIssue(BAR, 1, true, RULE, "MINOR", "bar");
+        store.addIssue(FOO, 8, true, RULE, "MINOR", "magic number");
+        store.addIssue(FOO, 3, true, RULE, "MINOR", "magic number");
+        store.addIssue(FOO, 3, true, other, "MAJOR", "unused");
+        store.addIssue(FOO, 5, true, other, "MAJOR", "unused x");
+        // when
+        int removed = store.group(1);
+        // then
+        assertThat(removed).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(3);
+        List<ReviewFileComment> comments = store.toMap().get(FOO);
+        assertThat(comments).hasSize(2);
+        assertThat(((ReviewLineComment) comments.get(0)).getLine()).isEqualTo(3);
+        assertThat(comments.get(0).getMessage()).isEqualTo(
+                "[true] New: Squid:S109 Severity: MINOR, Message: magic number (2 occurrences, lines 3, 8)\n\n"
+                        + "[true] New: Squid:S1481 Severity: MAJOR, Message: unused");
+        assertThat(comments.get(1).getMessage()).endsWith("unused x");
+        assertThat(store.severityCounts().get("MAJOR")).isEqualTo(2);
+        assertThat(store.severityCounts().get("MINOR")).isEqualTo(1);
+        assertThat(store.maxLevel()).isEqualTo(ReviewUtils.thresholdToValue("MAJOR"));
+    }
+
+    @Test
+    public void shouldStreamSpilledComments() throws IOException {
+        // given
+        ReviewFileComment alert = new ReviewFileComment();
+        alert.setMessage("[ALERT] Severity: ERROR, Message: coverage");
+        store.addIssue(FOO, 1, true, RULE, "MINOR", "one");
+        store.addIssue(BAR, 2, false, RULE, "MINOR", "two");
+        // when
+        int spilled = store.spill(temp.newFile("spill.json"));
+        store.addComments(FOO, Arrays.asList(alert));
+        store.addIssue(FOO, 3, true, RULE, "BLOCKER", "three");
+        // then
+        assertThat(spilled).isEqualTo(2);
+        assertThat(store.isSpilled()).isTrue();
+        assertThat(store.size()).isEqualTo(4);
+        assertThat(store.bufferedSize()).isEqualTo(2);
+        assertThat(store.fileCount()).isEqualTo(2);
+        assertThat(store.toLineComments(3, 4).get(0).getMessage()).endsWith("three");
+        assertThat(store.toMap().get(FOO)).hasSize(3);
+        assertThat(write()).isEqualTo("{\"" + FOO + "\":["
+                + "{\"message\":\"[true] New: Squid:S109 Severity: MINOR, Message: one\",\"line\":1},"
+                + "{\"message\":\"[ALERT] Severity: ERROR, Message: coverage\"},"
+                + "{\"message\":\"[true] New: Squid:S109 Severity: BLOCKER, Message: three\",\"line\":3}],\""
+                + BAR + "\":[{\"message\":\"[false] New: Squid:S109 Severity: MINOR, Message: two\",\"line\":2}]}");
+    }
+
+    @Test
+    public void shouldRetainTopSpilledComments() throws IOException {
+        // given
+        store.addIssue(FOO, 1, true, RULE, "MINOR", "one");
+        store.addIssue(BAR, 2, true, RULE, "BLOCKER", "two");
+        store.addIssue(FOO, 3, true, RULE, "MINOR", "three");
+        store.spill(temp.newFile("spill.json"));
+        store.addIssue(FOO, 4, true, RULE, "MAJOR", "four");
+        store.addIssue(BAR, 5, true, RULE, "INFO", "five");
+        // when
+        int removed = store.retainTop(2);
+        // then
+        assertThat(removed).isEqualTo(3);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.fileCount()).isEqualTo(2);
+        assertThat(store.severityCounts().get("MINOR")).isEqualTo(2);
+        assertThat(write()).isEqualTo("{\"" + BAR + "\":["
+                + "{\"message\":\"[true] New: Squid:S109 Severity: BLOCKER, Message: two\",\"line\":2}],\""
+                + FOO + "\":[{\"message\":\"[true] New: Squid:S109 Severity: MAJOR, Message: four\",\"line\":4}]}");
+    }
+}
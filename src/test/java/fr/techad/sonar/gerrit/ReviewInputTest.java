@@ -29,6 +29,11 @@ public class ReviewInputTest {
     private static final String REVIEWINPUT_JSON = "{" + "\"message\":\"Not the default message.\","
             + "\"labels\":{\"Code-Review\":-1}," + "\"comments\":{}" + "}";
 
+    private static final String SERVER_OPTIONS_JSON = "{" + "\"message\":\"Not the default message.\","
+            + "\"labels\":{\"Code-Review\":-1}," + "\"comments\":{}," + "\"notify\":\"NONE\","
+            + "\"tag\":\"autogenerated:sonar\"," + "\"notify_details\":{\"CC\":{\"accounts\":[\"jdoe\"]}},"
+            + "\"omit_duplicate_comments\":true" + "}";
+
     private static final String REVIEWLINECOMMENT_JSON = "{\"message\":\"[nit] trailing whitespace\",\"line\":23}";
 
     private static final String REVIEWLINECOMMENTLIST_JSON = "[{\"message\":\"[nit] trailing whitespace\",\"line\":23},"
@@ -84,6 +89,20 @@ public class ReviewInputTest {
         assertThat(json).isEqualTo(REVIEWINPUT_JSON);
     }
 
+    @Test
+    public void shouldJSONServerOptions() throws GerritPluginException, JsonProcessingException {
+        // given
+        reviewInput.emptyComments();
+        reviewInput.setNotify("NONE");
+        reviewInput.setNotifyDetails(ReviewUtils.parseNotifyDetails("CC:jdoe"));
+        reviewInput.setOmitDuplicateComments(Boolean.TRUE);
+        reviewInput.setTag("autogenerated:sonar");
+        // when
+        String json = objectMapper.writeValueAsString(reviewInput);
+        // then
+        assertThat(json).isEqualTo(SERVER_OPTIONS_JSON);
+    }
+
     @Test
     public void shouldJSONReviewLineComment() throws GerritPluginException, JsonProcessingException {
         // given
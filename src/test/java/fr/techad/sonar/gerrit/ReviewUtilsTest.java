@@ -2,6 +2,7 @@ package fr.techad.sonar.gerrit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -10,6 +11,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sonar.api.config.Settings;
 
+import fr.techad.sonar.GerritConfiguration;
 import fr.techad.sonar.PropertyKey;
 import fr.techad.sonar.gerrit.ReviewFileComment;
 import fr.techad.sonar.gerrit.ReviewInput;
@@ -117,6 +119,16 @@ public class ReviewUtilsTest {
         // then
         assertThat(ReviewUtils.maxLevel(reviewInput)).isEqualTo(ReviewUtils.thresholdToValue("CRITICAL"));
     }
+
+    @Test
+    public void detectHighestLevelOfMergedComment() {
+        // given
+        String message = "Severity: INFO, Message: unused import\n\nSeverity: BLOCKER, Message: null dereference";
+        // when
+        int level = ReviewUtils.messageLevel(message);
+        // then
+        assertThat(level).isEqualTo(ReviewUtils.thresholdToValue("BLOCKER"));
+    }
     
     @Test
     public void validateSubstitution() {
@@ -128,4 +140,34 @@ public class ReviewUtilsTest {
     	assertThat(ReviewUtils.substituteProperties(settings.getString(PropertyKey.GERRIT_MESSAGE), settings))
     	.isEqualTo("Sonar review at http://sq.example.com/");
     }
+
+    @Test
+    public void parseNotifyDetails() {
+        // given
+        // when
+        Map<String, NotifyInfo> notifyDetails = ReviewUtils
+                .parseNotifyDetails("to:jdoe, CC:jane@example.com,TO:bob,bad");
+        // then
+        assertThat(notifyDetails.keySet()).containsOnly("TO", "CC");
+        assertThat(notifyDetails.get("TO").getAccounts()).containsExactly("jdoe", "bob");
+        assertThat(notifyDetails.get("CC").getAccounts()).containsExactly("jane@example.com");
+    }
+
+    @Test
+    public void notifyOnlyFinalReview() {
+        // given
+        settings = new Settings().appendProperty(PropertyKey.GERRIT_NOTIFY, "OWNER")
+                .appendProperty(PropertyKey.GERRIT_NOTIFY_IN_PROGRESS, "NONE")
+                .appendProperty(PropertyKey.GERRIT_NOTIFY_DETAILS, "CC:jdoe");
+        GerritConfiguration gerritConfiguration = new GerritConfiguration(settings);
+        ReviewInput inProgress = new ReviewInput();
+        // when
+        ReviewUtils.setServerOptions(reviewInput, gerritConfiguration, false);
+        ReviewUtils.setServerOptions(inProgress, gerritConfiguration, true);
+        // then
+        assertThat(reviewInput.getNotify()).isEqualTo("OWNER");
+        assertThat(reviewInput.getNotifyDetails()).hasSize(1);
+        assertThat(inProgress.getNotify()).isEqualTo("NONE");
+        assertThat(inProgress.getNotifyDetails()).isNull();
+    }
 }
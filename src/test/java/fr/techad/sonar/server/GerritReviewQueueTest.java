@@ -0,0 +1,140 @@
+package fr.techad.sonar.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
+
+import fr.techad.sonar.GerritConfiguration;
+import fr.techad.sonar.PropertyKey;
+import fr.techad.sonar.gerrit.GerritConnector;
+import fr.techad.sonar.gerrit.GerritHttpException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GerritReviewQueueTest {
+    private GerritConnector gerritConnector;
+    private List<String> connectedServers;
+    private GerritReviewQueue gerritReviewQueue;
+
+    @Before
+    public void setUp() {
+        Settings settings = new Settings().appendProperty(PropertyKey.GERRIT_SCHEME, "http")
+                .appendProperty(PropertyKey.GERRIT_HOST, "gerrit").appendProperty(PropertyKey.GERRIT_HTTP_PORT, "8080");
+        gerritConnector = mock(GerritConnector.class);
+        connectedServers = new ArrayList<String>();
+        gerritReviewQueue = new GerritReviewQueue(settings) {
+            @Override
+            protected GerritConnector createConnector(GerritConfiguration gerritConfiguration) {
+                connectedServers.add(gerritConfiguration.getHost());
+                return gerritConnector;
+            }
+
+            @Override
+            protected long retryDelayMillis(int attempts) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void shouldSendQueuedReviewsOnOneConnection() throws Exception {
+        // given
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{\"message\":\"one\"}");
+        gerritReviewQueue.enqueue("project", "master", "I2", "1", "{\"message\":\"two\"}");
+        // when
+        gerritReviewQueue.sendNextBatch();
+        // then
+        verify(gerritConnector).setReview(any(GerritConfiguration.class), eq("{\"message\":\"one\"}"), eq(true));
+        verify(gerritConnector).setReview(any(GerritConfiguration.class), eq("{\"message\":\"two\"}"), eq(true));
+        assertThat(connectedServers).containsExactly("gerrit");
+        assertThat(gerritReviewQueue.size()).isZero();
+    }
+
+    @Test
+    public void shouldRetryUnavailableGerrit() throws Exception {
+        // given
+        when(gerritConnector.setReview(any(GerritConfiguration.class), eq("{}"), eq(true))).thenThrow(
+                new GerritHttpException(503, "Unavailable")).thenReturn("{}");
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{}");
+        // when
+        gerritReviewQueue.sendNextBatch();
+        // then
+        assertThat(gerritReviewQueue.size()).isEqualTo(1);
+        gerritReviewQueue.sendNextBatch();
+        verify(gerritConnector, times(2)).setReview(any(GerritConfiguration.class), eq("{}"), eq(true));
+        assertThat(gerritReviewQueue.size()).isZero();
+    }
+
+    @Test
+    public void shouldRetryReviewOnItsOwnChange() throws Exception {
+        // given
+        when(gerritConnector.setReview(any(GerritConfiguration.class), eq("{\"message\":\"one\"}"), eq(true)))
+                .thenThrow(new GerritHttpException(503, "Unavailable")).thenReturn("{}");
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{\"message\":\"one\"}");
+        gerritReviewQueue.enqueue("project", "master", "I2", "2", "{\"message\":\"two\"}");
+        // when
+        gerritReviewQueue.sendNextBatch();
+        gerritReviewQueue.sendNextBatch();
+        // then
+        ArgumentCaptor<GerritConfiguration> reviews = ArgumentCaptor.forClass(GerritConfiguration.class);
+        verify(gerritConnector, times(2)).setReview(reviews.capture(), eq("{\"message\":\"one\"}"), eq(true));
+        for (GerritConfiguration review : reviews.getAllValues()) {
+            assertThat(review.getChangeId()).isEqualTo("I1");
+            assertThat(review.getRevisionId()).isEqualTo("1");
+        }
+        verify(gerritConnector).setReview(reviews.capture(), eq("{\"message\":\"two\"}"), eq(true));
+        assertThat(reviews.getValue().getChangeId()).isEqualTo("I2");
+        assertThat(gerritReviewQueue.size()).isZero();
+    }
+
+    @Test
+    public void shouldNotSendReviewAfterLaterOneOfSameRevision() throws Exception {
+        // given
+        when(gerritConnector.setReview(any(GerritConfiguration.class), eq("{\"message\":\"in progress\"}"),
+                eq(true))).thenThrow(new GerritHttpException(503, "Unavailable")).thenReturn("{}");
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{\"message\":\"in progress\"}");
+        gerritReviewQueue.sendNextBatch();
+        // when
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{\"message\":\"done\"}");
+        gerritReviewQueue.sendNextBatch();
+        // then
+        verify(gerritConnector).setReview(any(GerritConfiguration.class), eq("{\"message\":\"in progress\"}"),
+                eq(true));
+        verify(gerritConnector).setReview(any(GerritConfiguration.class), eq("{\"message\":\"done\"}"), eq(true));
+        assertThat(gerritReviewQueue.size()).isZero();
+    }
+
+    @Test
+    public void shouldDropRefusedReview() throws Exception {
+        // given
+        when(gerritConnector.setReview(any(GerritConfiguration.class), eq("{}"), eq(true))).thenThrow(
+                new GerritHttpException(400, "Bad request"));
+        gerritReviewQueue.enqueue("project", "master", "I1", "1", "{}");
+        // when
+        gerritReviewQueue.sendNextBatch();
+        // then
+        assertThat(gerritReviewQueue.size()).isZero();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRefuseReviewWhenFull() throws IOException {
+        // given
+        for (int review = 0; review < GerritReviewQueue.CAPACITY; review++) {
+            gerritReviewQueue.enqueue("project", "master", "I" + review, "1", "{}");
+        }
+        // when
+        gerritReviewQueue.enqueue("project", "master", "I", "1", "{}");
+        // then
+    }
+}
@@ -0,0 +1,91 @@
+package fr.techad.sonar.server;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.server.ws.internal.SimpleGetRequest;
+
+import fr.techad.sonar.PropertyKey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GerritReviewWebServiceTest {
+    @Mock
+    private GerritReviewQueue gerritReviewQueue;
+    @Mock
+    private Response response;
+    @Mock
+    private Response.Stream stream;
+
+    private Settings settings;
+    private GerritReviewWebService webService;
+    private SimpleGetRequest request;
+
+    @Before
+    public void setUp() {
+        settings = new Settings().appendProperty(PropertyKey.GERRIT_POSTING_TOKEN, "secret");
+        webService = new GerritReviewWebService(settings, gerritReviewQueue);
+        when(response.stream()).thenReturn(stream);
+        request = new SimpleGetRequest().setParam(GerritReviewWebService.PARAM_PROJECT, "project")
+                .setParam(GerritReviewWebService.PARAM_BRANCH, "master")
+                .setParam(GerritReviewWebService.PARAM_CHANGE_ID, "I1")
+                .setParam(GerritReviewWebService.PARAM_REVISION_ID, "abc")
+                .setParam(GerritReviewWebService.PARAM_REVIEW, "{}");
+    }
+
+    @Test
+    public void shouldDefinePostAction() {
+        // given
+        WebService.Context context = new WebService.Context();
+        // when
+        webService.define(context);
+        // then
+        WebService.Action action = context.controller(GerritReviewWebService.CONTROLLER).action(
+                GerritReviewWebService.ACTION);
+        assertThat(action.isPost()).isTrue();
+        assertThat(action.param(GerritReviewWebService.PARAM_REVIEW).isRequired()).isTrue();
+    }
+
+    @Test
+    public void shouldQueueReviewWithValidToken() throws Exception {
+        // given
+        request.setParam(GerritReviewWebService.PARAM_TOKEN, "secret");
+        // when
+        webService.handle(request, response);
+        // then
+        verify(gerritReviewQueue).enqueue("project", "master", "I1", "abc", "{}");
+        verify(response).noContent();
+    }
+
+    @Test
+    public void shouldRefuseReviewWithInvalidToken() throws Exception {
+        // given
+        request.setParam(GerritReviewWebService.PARAM_TOKEN, "guess");
+        // when
+        webService.handle(request, response);
+        // then
+        verify(gerritReviewQueue, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(stream).setStatus(403);
+    }
+
+    @Test
+    public void shouldRefuseReviewsWithoutServerToken() throws Exception {
+        // given
+        settings.removeProperty(PropertyKey.GERRIT_POSTING_TOKEN);
+        request.setParam(GerritReviewWebService.PARAM_TOKEN, "");
+        // when
+        webService.handle(request, response);
+        // then
+        verify(stream).setStatus(403);
+    }
+}